@@ -0,0 +1,166 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * One pass, streaming Huffman coding of bytes. Instead of counting the whole
+ * input up front, the encoder and decoder both start from the same flat model
+ * and update their counts after every byte. Every so often (every
+ * REBUILD_INTERVAL bytes once warmed up), both sides rebuild the same
+ * canonical code from the counts seen so far, so they stay in lockstep without
+ * the code ever being sent. Counts are halved once they get large, which keeps
+ * the model adapting to recent data and keeps memory constant.
+ */
+public class AdaptiveHuffman {
+
+	// Identifies an adaptive Huffman stream, "AHF" followed by a 0 byte
+	private static final int MAGIC = 0x41484600;
+	private static final int FORMAT_VERSION = 1;
+
+	// 256 byte values plus the end of stream marker
+	private static final int EOF = 256;
+	private static final int ALPHABET_SIZE = 257;
+
+	// Bytes between code rebuilds. Rebuilds start out more often so short
+	// streams move away from the flat starting code quickly.
+	static final int REBUILD_INTERVAL = 4096;
+	private static final int FIRST_REBUILD = 32;
+
+	// Codes are kept short enough to decode with a small table
+	private static final int MAX_CODE_LENGTH = 15;
+
+	// Once the counts add up to this, they are all halved
+	private static final int MAX_TOTAL = 1 << 16;
+
+	/**
+	 * The model shared by the encoder and decoder. Both sides feed it the same
+	 * symbols so their codes always match.
+	 */
+	private static class Model {
+		final int[] counts = new int[ALPHABET_SIZE];
+		int total;
+		int sinceRebuild;
+		int interval = FIRST_REBUILD;
+		CanonicalCode code;
+		HuffmanDecoder decoder;
+
+		Model() {
+			// Every symbol has to have a code, so start them all at 1
+			Arrays.fill(counts, 1);
+			total = ALPHABET_SIZE;
+			rebuild();
+		}
+
+		/**
+		 * Records one more occurrence of the byte, rebuilding the code when due.
+		 */
+		void update(int symbol) {
+			counts[symbol]++;
+			total++;
+			if (++sinceRebuild == interval) {
+				interval = Math.min(interval * 2, REBUILD_INTERVAL);
+				if (total >= MAX_TOTAL) {
+					total = 0;
+					for (int s = 0; s < ALPHABET_SIZE; s++) {
+						counts[s] = (counts[s] + 1) / 2;
+						total += counts[s];
+					}
+				}
+				rebuild();
+			}
+		}
+
+		void rebuild() {
+			code = new CanonicalCode(CodeLengths.limited(counts, MAX_CODE_LENGTH));
+			decoder = null;
+			sinceRebuild = 0;
+		}
+
+		HuffmanDecoder decoder() {
+			if (decoder == null) {
+				decoder = new HuffmanDecoder(code);
+			}
+			return decoder;
+		}
+	}
+
+	private AdaptiveHuffman() {
+	}
+
+	/**
+	 * Compresses everything in in, writing to out as it goes.
+	 */
+	public static void compress(InputStream in, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(FORMAT_VERSION);
+		data.flush();
+
+		Model model = new Model();
+		BitWriter writer = new BitWriter(out);
+		byte[] buffer = new byte[8192];
+		try {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				for (int i = 0; i < n; i++) {
+					int symbol = buffer[i] & 0xFF;
+					writer.write(model.code.code(symbol), model.code.length(symbol));
+					model.update(symbol);
+				}
+			}
+			writer.write(model.code.code(EOF), model.code.length(EOF));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Decompresses a stream written by compress, writing to out as it goes.
+	 *
+	 * @throws IOException if the stream is not adaptive Huffman data or is corrupt
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not an adaptive Huffman stream.");
+		}
+		int version = data.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported adaptive Huffman version: " + version);
+		}
+
+		Model model = new Model();
+		byte[] buffer = new byte[8192];
+		int n = 0;
+		try {
+			BitReader reader = new BitReader(in);
+			while (true) {
+				int symbol = model.decoder().decodeSymbol(reader);
+				if (reader.overrun()) {
+					throw new EOFException("Truncated adaptive Huffman stream.");
+				}
+				if (symbol == EOF) {
+					break;
+				}
+				buffer[n++] = (byte) symbol;
+				if (n == buffer.length) {
+					out.write(buffer, 0, n);
+					n = 0;
+				}
+				model.update(symbol);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt adaptive Huffman stream.", e);
+		}
+		out.write(buffer, 0, n);
+		out.flush();
+	}
+}
@@ -0,0 +1,48 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class AdaptiveHuffmanTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, long enough that the code gets rebuilt a few times
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("AABBCCCCDD\n");
+        }
+        byte[] text = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Compress and decompress in a single pass each
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        AdaptiveHuffman.compress(new ByteArrayInputStream(text), compressed);
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        AdaptiveHuffman.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+
+        System.out.println("Input length: " + text.length + " bytes");
+        System.out.println("Compressed length: " + compressed.size() + " bytes");
+
+        // Judge the correctness of the results
+        if (Arrays.equals(text, decompressed.toByteArray())) {
+            System.out.println("Decompressed text matches the original text.");
+        } else {
+            System.out.println("Decompressed text does not match the original text.");
+        }
+        if (compressed.size() < text.length / 3) {
+            System.out.println("OK!! Compressed to less than a third of the input.");
+        } else {
+            System.out.println("Wrong!! Expected better compression than that.");
+        }
+
+        // An empty stream should round trip too
+        compressed.reset();
+        AdaptiveHuffman.compress(new ByteArrayInputStream(new byte[0]), compressed);
+        decompressed.reset();
+        AdaptiveHuffman.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+        if (decompressed.size() == 0) {
+            System.out.println("OK!! Empty stream round trips.");
+        } else {
+            System.out.println("Wrong!! Empty stream decoded to " + decompressed.size() + " bytes.");
+        }
+    }
+}
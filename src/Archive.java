@@ -0,0 +1,419 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+/**
+ * An archive of many files in one, each compressed on its own with any Codec.
+ *
+ * The file is a short header, the compressed entries one after another, a
+ * central directory, and a fixed size footer pointing at the directory. The
+ * directory holds each entry's name, codec id, original and compressed sizes,
+ * offset and CRC32C. Opening an archive reads only the footer and directory,
+ * so a single entry can be extracted by seeking straight to it, without
+ * reading the entries around it. Entries are compressed concurrently, and the
+ * directory going last means they can be written as soon as each is ready.
+ *
+ * Entries are streamed in and out of the archive, but each one's compressed
+ * data is held in memory until its turn to be written, and codecs that code a
+ * whole input at once still hold the entry itself while coding it.
+ */
+public class Archive implements AutoCloseable {
+
+	static final String EXTENSION = ".a4a";
+
+	// Identifies an archive, "A4A" followed by a 0 byte, at both ends
+	private static final int MAGIC = 0x41344100;
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 5;
+
+	// The directory's offset and the magic number
+	private static final int FOOTER_BYTES = 12;
+
+	/**
+	 * One file in the archive.
+	 */
+	public static class Entry {
+		// Path within the archive, with / between directories
+		final String name;
+		final String codec;
+		final long size;
+		final long compressedSize;
+		// Where the compressed data starts in the archive
+		final long offset;
+		final int checksum;
+
+		Entry(String name, String codec, long size, long compressedSize, long offset, int checksum) {
+			this.name = name;
+			this.codec = codec;
+			this.size = size;
+			this.compressedSize = compressedSize;
+			this.offset = offset;
+			this.checksum = checksum;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private final FileChannel channel;
+	private final List<Entry> entries;
+
+	private Archive(FileChannel channel, List<Entry> entries) {
+		this.channel = channel;
+		this.entries = entries;
+	}
+
+	/**
+	 * Opens an archive, reading its directory.
+	 *
+	 * @throws IOException if the file is not an archive or is corrupt
+	 */
+	public static Archive open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new Archive(channel, readDirectory(channel));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static List<Entry> readDirectory(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size < HEADER_BYTES + FOOTER_BYTES) {
+			throw new IOException("Not an archive, it is too short.");
+		}
+
+		// Header
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(read(channel, 0, HEADER_BYTES)));
+		if (header.readInt() != MAGIC) {
+			throw new IOException("Not an archive.");
+		}
+		int version = header.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported archive version: " + version);
+		}
+
+		// Footer
+		DataInputStream footer = new DataInputStream(
+				new ByteArrayInputStream(read(channel, size - FOOTER_BYTES, FOOTER_BYTES)));
+		long directoryOffset = footer.readLong();
+		if (footer.readInt() != MAGIC) {
+			throw new IOException("The archive is truncated, it has no directory.");
+		}
+		long directoryEnd = size - FOOTER_BYTES;
+		if (directoryOffset < HEADER_BYTES || directoryOffset > directoryEnd
+				|| directoryEnd - directoryOffset > Integer.MAX_VALUE - 8) {
+			throw new IOException("Invalid archive directory offset: " + directoryOffset);
+		}
+
+		// Directory
+		DataInputStream directory = new DataInputStream(new ByteArrayInputStream(
+				read(channel, directoryOffset, (int) (directoryEnd - directoryOffset))));
+		int count = VarInt.readInt(directory);
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String name = readString(directory);
+			String codec = readString(directory);
+			long entrySize = VarInt.read(directory);
+			long compressedSize = VarInt.read(directory);
+			long offset = VarInt.read(directory);
+			int checksum = directory.readInt();
+			if (entrySize < 0 || compressedSize < 0) {
+				throw new IOException("Entry " + name + " has an invalid size.");
+			}
+			if (offset < HEADER_BYTES || offset > directoryOffset || compressedSize > directoryOffset - offset) {
+				throw new IOException("Entry " + name + " lies outside the archive's data.");
+			}
+			entries.add(new Entry(name, codec, entrySize, compressedSize, offset, checksum));
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Every entry, in the order they were added.
+	 */
+	public List<Entry> entries() {
+		return entries;
+	}
+
+	/**
+	 * The entry with the given name, or null.
+	 */
+	public Entry find(String name) {
+		for (Entry entry : entries) {
+			if (entry.name.equals(name)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decompresses an entry to out, checking it against its checksum. Streams
+	 * only that entry's bytes, and several entries can be extracted at once from
+	 * different threads.
+	 *
+	 * @throws IOException if the entry is corrupt
+	 */
+	public void extract(Entry entry, OutputStream out) throws IOException {
+		Codec codec;
+		try {
+			codec = Codec.forId(entry.codec);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Entry " + entry.name + " uses an unknown codec: " + entry.codec);
+		}
+
+		Checksum checksum = Checksums.newChecksum();
+		Checksums.CheckedOutputStream checked = new Checksums.CheckedOutputStream(out, checksum);
+		if (entry.size > 0) {
+			InputStream in = new BufferedInputStream(new EntryInputStream(channel, entry), FilePipeline.BUFFER_SIZE);
+			codec.decompress(in, checked);
+		}
+		checked.flush();
+		if (checked.count != entry.size || (int) checksum.getValue() != entry.checksum) {
+			throw new IOException("Checksum mismatch, entry " + entry.name + " is corrupt.");
+		}
+	}
+
+	/**
+	 * Extracts an entry to the file of the same name under directory, creating
+	 * any directories it needs.
+	 *
+	 * @return the file written
+	 * @throws IOException if the entry is corrupt, or its name would put it
+	 *                     outside the directory
+	 */
+	public Path extract(Entry entry, Path directory) throws IOException {
+		Path root = directory.toAbsolutePath().normalize();
+		Path target = root.resolve(entry.name).normalize();
+		if (!target.startsWith(root) || target.equals(root)) {
+			throw new IOException("Entry " + entry.name + " would be extracted outside " + directory);
+		}
+		if (target.getParent() != null) {
+			Files.createDirectories(target.getParent());
+		}
+		try (OutputStream out = FilePipeline.newOutputStream(target)) {
+			extract(entry, out);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(target);
+			throw e;
+		}
+		return target;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Writes a new archive of the files, each keyed by its name in the archive,
+	 * compressing them with the codec on the given number of threads. Entries
+	 * are written in order, each passed to written once it is. Files are read as
+	 * streams, and the compressed data of at most a couple of entries per thread
+	 * is held in memory at a time. If any file can't be read or compressed the
+	 * partly written archive is deleted.
+	 *
+	 * @return the entries, in the order written
+	 */
+	public static List<Entry> create(Path path, Map<String, Path> files, Codec codec, int threads,
+			Consumer<Entry> written) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Entry> entries = new ArrayList<>();
+		try (OutputStream file = FilePipeline.newOutputStream(path)) {
+			DataOutputStream out = new DataOutputStream(file);
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			long position = HEADER_BYTES;
+
+			// Compress ahead of the writing, but only so far
+			Deque<Future<Compressed>> pending = new ArrayDeque<>();
+			List<Map.Entry<String, Path>> queue = new ArrayList<>(files.entrySet());
+			int next = 0;
+			while (next < queue.size() || !pending.isEmpty()) {
+				while (next < queue.size() && pending.size() < 2 * threads) {
+					Map.Entry<String, Path> input = queue.get(next++);
+					pending.add(pool.submit(() -> compress(input.getKey(), input.getValue(), codec)));
+				}
+				Compressed compressed = get(pending.remove());
+				Entry entry = new Entry(compressed.name, codec.getId(), compressed.size, compressed.data.length,
+						position, compressed.checksum);
+				out.write(compressed.data);
+				position += compressed.data.length;
+				entries.add(entry);
+				written.accept(entry);
+			}
+
+			// Directory and footer
+			long directoryOffset = position;
+			VarInt.write(out, entries.size());
+			for (Entry entry : entries) {
+				writeString(out, entry.name);
+				writeString(out, entry.codec);
+				VarInt.write(out, entry.size);
+				VarInt.write(out, entry.compressedSize);
+				VarInt.write(out, entry.offset);
+				out.writeInt(entry.checksum);
+			}
+			out.writeLong(directoryOffset);
+			out.writeInt(MAGIC);
+			out.flush();
+		} catch (IOException | RuntimeException e) {
+			pool.shutdownNow();
+			Files.deleteIfExists(path);
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+		return entries;
+	}
+
+	/**
+	 * A file compressed in memory, waiting to be written.
+	 */
+	private static class Compressed {
+		final String name;
+		final long size;
+		final int checksum;
+		final byte[] data;
+
+		Compressed(String name, long size, int checksum, byte[] data) {
+			this.name = name;
+			this.size = size;
+			this.checksum = checksum;
+			this.data = data;
+		}
+	}
+
+	private static Compressed compress(String name, Path file, Codec codec) throws IOException {
+		Checksums.CountingChecksum checksum = new Checksums.CountingChecksum(Checksums.newChecksum());
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try (PushbackInputStream in = new PushbackInputStream(
+				new CheckedInputStream(FilePipeline.newInputStream(file), checksum))) {
+			// Empty files are stored as nothing, as not every codec takes empty input
+			int first = in.read();
+			if (first >= 0) {
+				in.unread(first);
+				codec.compress(in, data);
+				if (in.read() >= 0) {
+					throw new IOException("The " + codec.getName() + " codec didn't read all of " + file);
+				}
+			}
+		}
+		return new Compressed(name, checksum.count, (int) checksum.getValue(), data.toByteArray());
+	}
+
+	private static Compressed get(Future<Compressed> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing the archive.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Reads length bytes from position in the channel, without moving its
+	 * position so other threads can read at the same time.
+	 */
+	private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of archive.");
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Reads an entry's compressed bytes straight from the channel, without
+	 * moving its position so other threads can read at the same time.
+	 */
+	private static class EntryInputStream extends InputStream {
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		EntryInputStream(FileChannel channel, Entry entry) {
+			this.channel = channel;
+			this.position = entry.offset;
+			this.end = entry.offset + entry.compressedSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (position >= end) {
+				return -1;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+			int n = channel.read(buffer, position);
+			if (n < 0) {
+				throw new EOFException("Unexpected end of archive.");
+			}
+			position += n;
+			return n;
+		}
+	}
+
+	private static void writeString(OutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		VarInt.write(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(InputStream in) throws IOException {
+		int length = VarInt.readInt(in);
+		if (length > in.available()) {
+			throw new EOFException("Unexpected end of archive directory.");
+		}
+		byte[] bytes = new byte[length];
+		if (in.readNBytes(bytes, 0, length) != length) {
+			throw new EOFException("Unexpected end of archive directory.");
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,120 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ArchiveTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, some text, an empty file, text that compresses to several
+        // buffers, and a name that tries to escape the directory it is extracted to
+        Path directory = Files.createTempDirectory("archive-test");
+        byte[] text = "the cat sat on the mat, then the other cat sat there.\n".repeat(50)
+                .getBytes(StandardCharsets.UTF_8);
+        Map<String, Path> files = new LinkedHashMap<>();
+        files.put("cat.txt", write(directory.resolve("cat.txt"), text));
+        files.put("empty/nothing.txt", write(directory.resolve("nothing.txt"), new byte[0]));
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            big.append(i).append(i % 7 == 0 ? '\n' : ' ');
+        }
+        files.put("big.txt", write(directory.resolve("big.txt"), big.toString().getBytes(StandardCharsets.UTF_8)));
+        files.put("../escape.txt", write(directory.resolve("escape.txt"), text));
+        Path path = directory.resolve("test" + Archive.EXTENSION);
+
+        // Write the archive on several threads, and open it again
+        Archive.create(path, files, Codec.forId("huffman"), 3, entry -> {
+        });
+        try (Archive archive = Archive.open(path)) {
+            List<Archive.Entry> entries = archive.entries();
+            System.out.println("Archive length: " + Files.size(path) + " bytes, " + entries.size() + " entries");
+
+            // Judge the correctness of the results
+            for (String name : files.keySet()) {
+                Archive.Entry entry = archive.find(name);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                archive.extract(entry, out);
+                byte[] expected = Files.readAllBytes(files.get(name));
+                if (Arrays.equals(expected, out.toByteArray())) {
+                    System.out.println("OK!! Extracted " + name);
+                } else {
+                    System.out.println("Wrong!! Extracted " + name + " does not match the original");
+                }
+            }
+            try {
+                archive.extract(archive.find("../escape.txt"), directory.resolve("out"));
+                System.out.println("Wrong!! Extracted ../escape.txt outside the directory");
+            } catch (IOException e) {
+                System.out.println("OK!! Refused to extract ../escape.txt");
+            }
+        }
+
+        // Damage the first entry and check it is caught
+        byte[] damaged = Files.readAllBytes(path);
+        damaged[10] ^= 0x55;
+        Files.write(path, damaged);
+        try (Archive archive = Archive.open(path)) {
+            archive.extract(archive.find("cat.txt"), new ByteArrayOutputStream());
+            System.out.println("Wrong!! Damaged entry was not noticed");
+        } catch (IOException e) {
+            System.out.println("OK!! Damaged entry noticed: " + e.getMessage());
+        }
+
+        // Directories with negative or out of range sizes and offsets should be
+        // refused when the archive is opened
+        byte[] negative = new byte[10];
+        Arrays.fill(negative, (byte) 0xFF);
+        negative[9] = 0x01;
+        expectFailure(path, "a negative size", directory(negative, new byte[] { 4 }, new byte[] { 5 }));
+        expectFailure(path, "a negative compressed size", directory(new byte[] { 4 }, negative, new byte[] { 5 }));
+        expectFailure(path, "a negative offset", directory(new byte[] { 4 }, new byte[] { 4 }, negative));
+        expectFailure(path, "an entry past the data",
+                directory(new byte[] { 4 }, new byte[] { 0 }, new byte[] { 100 }));
+    }
+
+    /**
+     * An archive holding 4 bytes of data and one entry "a" whose size,
+     * compressed size and offset are the given variable length integers.
+     */
+    private static byte[] directory(byte[] size, byte[] compressedSize, byte[] offset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x41344100);
+        data.writeByte(1);
+        data.write(new byte[4]);
+        VarInt.write(data, 1);
+        VarInt.write(data, 1);
+        data.writeByte('a');
+        VarInt.write(data, 7);
+        data.write("huffman".getBytes(StandardCharsets.US_ASCII));
+        data.write(size);
+        data.write(compressedSize);
+        data.write(offset);
+        data.writeInt(0);
+        data.writeLong(9);
+        data.writeInt(0x41344100);
+        return bytes.toByteArray();
+    }
+
+    private static void expectFailure(Path path, String what, byte[] archive) throws IOException {
+        Files.write(path, archive);
+        try (Archive opened = Archive.open(path)) {
+            System.out.println("Wrong!! An archive with " + what + " was opened with "
+                    + opened.entries().size() + " entries");
+        } catch (IOException e) {
+            System.out.println("OK!! An archive with " + what + " was refused: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.out.println("Wrong!! An archive with " + what + " failed with " + e);
+        }
+    }
+
+    private static Path write(Path path, byte[] data) throws IOException {
+        Files.write(path, data);
+        return path;
+    }
+}
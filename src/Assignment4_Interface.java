@@ -1,5 +1,4 @@
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.KeyEventDispatcher;
 import java.awt.KeyboardFocusManager;
@@ -10,9 +9,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -24,10 +23,13 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.Border;
 
 /**
@@ -49,9 +51,9 @@ public class Assignment4_Interface {
     private static final String DEFAULT_EDITOR_TEXT = "../data/war_and_peace.txt not found, please load a file manually.";
 
     // The list of algorithms in the dropdown box.
-        // If you want to add another, you should include it here and add
-        // another case in the onAlgorithmRun method.
-    private static final String[] ALGORITHMS = { "Huffman coding", "Lempel Ziv" };
+        // If you want to add another, register it as a Codec (see
+        // Codec.CODECS) and it shows up here.
+    private static final String[] ALGORITHMS = CompressionTask.ALGORITHMS;
 
     private JFrame frame;
     private JFileChooser fileChooser;
@@ -59,93 +61,120 @@ public class Assignment4_Interface {
     // editor components.
     private JTextField searchField;
     private JTextArea textEditor;
+    private EditorSearch editorSearch;
 
     // compression components and state.
     private JComboBox<String> list;
+    private JComboBox<Checksums.Verification> verificationList;
     private JLabel compressionFileSelection;
     private JTextArea compressionOutput;
     private File compressionInputFile;
     private File compressionOutputFile;
+    private JButton runButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+    private CompressionWorker job;
 
     public Assignment4_Interface() {
         initialise();
     }
 
     /**
-     * Handles all the logic of setting up and running each algorithm,
-     * such as making input and output streams, and writing some useful
-     * information to the output area in the GUI.
+     * Checks the files are set up, then starts a background job that runs the
+     * selected algorithm, so the GUI stays responsive while it works.
      */
     private void onAlgorithmRun() {
-        try {
-            if (compressionInputFile == null || !compressionInputFile.exists()) {
-                JOptionPane.showMessageDialog(frame, "Input file does not exist or not selected.");
-                return;
-            }
-            if (compressionOutputFile == null) {
-                JOptionPane.showMessageDialog(frame, "Output file not unselected.");
-                return;
+        if (compressionInputFile == null || !compressionInputFile.exists()) {
+            JOptionPane.showMessageDialog(frame, "Input file does not exist or not selected.");
+            return;
+        }
+        if (compressionOutputFile == null) {
+            JOptionPane.showMessageDialog(frame, "Output file not unselected.");
+            return;
+        }
+        if (!compressionInputFile.getName().endsWith(".txt")) {
+            JOptionPane.showMessageDialog(frame, "This assignment only deals with compressing .txt files.");
+            // but let them do it anyway.
+        }
+
+        // clear the output area.
+        compressionOutput.setText("");
+
+        String algorithm = (String) list.getSelectedItem();
+        Checksums.Verification verification = (Checksums.Verification) verificationList.getSelectedItem();
+        job = new CompressionWorker(
+                new CompressionTask(algorithm, compressionInputFile, compressionOutputFile, verification),
+                compressionInputFile.length());
+        runButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        progressBar.setValue(0);
+        job.execute();
+    }
+
+    /**
+     * Runs a CompressionTask off the event thread. Progress from the codec is
+     * passed to the progress bar, and the report, timing and throughput are
+     * written to the output area when it finishes. Cancelling makes done() run
+     * straight away while the task may still be working towards its next
+     * progress report, so Run is only enabled again once the background thread
+     * has really finished with the task.
+     */
+    private class CompressionWorker extends SwingWorker<String, Void> {
+        private final CompressionTask task;
+        private final long inputLength;
+        private long startTime;
+        private long endTime;
+
+        // Claimed by whichever comes first: the task starting, or done() finding
+        // it was cancelled before it ever started
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        CompressionWorker(CompressionTask task, long inputLength) {
+            this.task = task;
+            this.inputLength = inputLength;
+            addPropertyChangeListener(event -> {
+                // a cancelled job may still report progress on its way out
+                if ("progress".equals(event.getPropertyName()) && !isCancelled()) {
+                    progressBar.setValue((Integer) event.getNewValue());
+                }
+            });
+        }
+
+        @Override
+        protected String doInBackground() throws IOException {
+            if (!started.compareAndSet(false, true)) {
+                return null;
             }
-            if (!compressionInputFile.getName().endsWith(".txt")) {
-                JOptionPane.showMessageDialog(frame, "This assignment only deals with compressing .txt files.");
-                // but let them do it anyway.
+            startTime = System.nanoTime();
+            try {
+                return task.run((done, total) -> setProgress((int) (total == 0 ? 100 : 100 * done / total)));
+            } finally {
+                endTime = System.nanoTime();
+                SwingUtilities.invokeLater(() -> runButton.setEnabled(true));
             }
+        }
 
-            // clear the output area.
-            compressionOutput.setText("");
-
-            String algorithm = (String) list.getSelectedItem();
-            if (algorithm.equals("Huffman coding")) {
-                // read in the file.
-                String text = readFile(compressionInputFile);
-
-                // run the algorithms.
-                HuffmanCoding huffman = new HuffmanCoding(text);
-                String encoded = huffman.encode(text);
-                String decoded = huffman.decode(encoded);
-
-                if (!encoded.matches("[01]*"))
-                    compressionOutput.append(
-                            "ERROR: Encoded string contains characters that are not 0 or 1. It is not a valid Huffman encoding.\n\n");
-
-                // write out the encoded text.
-                List<String> lines = Arrays.asList(encoded);
-                Files.write(compressionOutputFile.toPath(), lines, CHARSET);
-
-                // figure out file sizes. the encoded string represents bits,
-                // so we divide it by 8 to get the size in bytes.
-                compressionOutput.append("input length:  " + compressionInputFile.length() + " bytes \n");
-                compressionOutput.append("output length: " + encoded.length() / 8 + " bytes \n\n");
-
-                // check they're the same and display user output.
-                compressionOutput
-                        .append("original and decoded texts " + (text.equals(decoded) ? "" : "DO NOT ") + "match.\n");
-                compressionOutput.append(huffman.getInformation());
-
-            } else if (algorithm.equals("Lempel Ziv")) {
-                // read in the file.
-                String text = readFile(compressionInputFile);
-
-                // run the algorithms.
-                LempelZiv lz = new LempelZiv();
-                String compressed = lz.compress(text);
-                String decompressed = lz.decompress(compressed);
-
-                // write out the encoded text.
-                List<String> lines = Arrays.asList(compressed);
-                Files.write(compressionOutputFile.toPath(), lines, CHARSET);
-
-                // figure out file sizes, in characters this time.
-                compressionOutput.append("Input length:  " + text.length() + " characters \n");
-                compressionOutput.append("Output length: " + compressed.length() + " characters \n");
-
-                // check they're the same and display user output.
-                compressionOutput.append(
-                        "\nOriginal and decoded texts " + (text.equals(decompressed) ? "" : "DO NOT ") + "match!\n");
-                compressionOutput.append(lz.getInformation());
+        @Override
+        protected void done() {
+            cancelButton.setEnabled(false);
+            if (started.compareAndSet(false, true)) {
+                // Cancelled before it started, so nothing is left running
+                runButton.setEnabled(true);
+            }
+            try {
+                compressionOutput.append(get());
+                double seconds = (endTime - startTime) / 1e9;
+                compressionOutput.append(String.format("%ntime: %.2f s, throughput: %.2f MB/s%n", seconds,
+                        inputLength / 1e6 / Math.max(seconds, 1e-9)));
+            } catch (CancellationException e) {
+                progressBar.setValue(0);
+                compressionOutput.append("Cancelled.\n");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                compressionOutput.append("Failed: " + e.getCause() + "\n");
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
@@ -181,22 +210,30 @@ public class Assignment4_Interface {
         // next, add in the search box on the top right.
         searchField = new JTextField(SEARCH_COLS);
         searchField.setMaximumSize(new Dimension(0, 25));
+        // matches are highlighted as you type; enter goes to the next one,
+        // shift-enter to the previous one.
         searchField.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                String pattern = searchField.getText();
-                String text = textEditor.getText();
-                int index = KMP.search(pattern, text);
-
-                if (index == -1) {
-                    JOptionPane.showMessageDialog(frame, "Pattern not found.");
+                if ((e.getModifiers() & ActionEvent.SHIFT_MASK) != 0) {
+                    editorSearch.previous();
                 } else {
-                    textEditor.requestFocus();
-                    textEditor.setSelectionStart(index);
-                    textEditor.setSelectionEnd(index + pattern.length());
-                    textEditor.setSelectionColor(Color.YELLOW);
+                    editorSearch.next();
                 }
             }
         });
+        JButton previous = new JButton("<");
+        previous.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                editorSearch.previous();
+            }
+        });
+        JButton next = new JButton(">");
+        next.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                editorSearch.next();
+            }
+        });
+        JLabel searchStatus = new JLabel();
 
         // both of the previous components go in a 'controls' panel at the top
         // of the pane.
@@ -214,6 +251,10 @@ public class Assignment4_Interface {
         controls.add(new JLabel("Search"));
         controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
         controls.add(searchField);
+        controls.add(previous);
+        controls.add(next);
+        controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+        controls.add(searchStatus);
 
         // then, we need to make the editor area itself.
         textEditor = new JTextArea(EDITOR_ROWS, EDITOR_COLS);
@@ -227,6 +268,8 @@ public class Assignment4_Interface {
         else
             textEditor.setText(DEFAULT_EDITOR_TEXT);
 
+        editorSearch = new EditorSearch(textEditor, searchField, searchStatus);
+
         JScrollPane scroll = new JScrollPane(textEditor);
 
         // lastly, we need to put this all in a panel.
@@ -235,6 +278,57 @@ public class Assignment4_Interface {
         editor.add(controls, BorderLayout.NORTH);
         editor.add(scroll, BorderLayout.CENTER);
 
+        /*
+         * Next, the viewer tab, for files too big for the editor.
+         */
+
+        JButton open = new JButton("Open");
+        JTextField viewerSearch = new JTextField(SEARCH_COLS);
+        viewerSearch.setMaximumSize(new Dimension(0, 25));
+        JLabel viewerStatus = new JLabel();
+        LargeFileViewer viewer = new LargeFileViewer(viewerStatus);
+
+        open.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ev) {
+                // set up the file chooser
+                fileChooser.setCurrentDirectory(new File("."));
+                fileChooser.setDialogTitle("Select file to view.");
+                fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+                // run the file chooser and check the user didn't hit cancel
+                if (fileChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                    try {
+                        viewer.open(fileChooser.getSelectedFile().toPath());
+                    } catch (IOException e) {
+                        JOptionPane.showMessageDialog(frame, "Could not open file: " + e.getMessage());
+                    }
+                }
+            }
+        });
+
+        // enter finds the next match.
+        viewerSearch.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                viewer.findNext(viewerSearch.getText());
+            }
+        });
+
+        JPanel viewerControls = new JPanel();
+        viewerControls.setLayout(new BoxLayout(viewerControls, BoxLayout.LINE_AXIS));
+        viewerControls.setBorder(edge);
+        viewerControls.add(open);
+        viewerControls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+        viewerControls.add(viewerStatus);
+        viewerControls.add(Box.createHorizontalGlue());
+        viewerControls.add(new JLabel("Find"));
+        viewerControls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+        viewerControls.add(viewerSearch);
+
+        JPanel viewerPane = new JPanel();
+        viewerPane.setLayout(new BorderLayout());
+        viewerPane.add(viewerControls, BorderLayout.NORTH);
+        viewerPane.add(viewer, BorderLayout.CENTER);
+
         /*
          * Now let's make the second tabbed pane.
          */
@@ -287,23 +381,63 @@ public class Assignment4_Interface {
         list = new JComboBox<>(ALGORITHMS);
         list.setMaximumSize(list.getPreferredSize());
 
+        // and one for how to check the output: not at all, against the checksum
+        // stored in it, or against the whole input file.
+        verificationList = new JComboBox<>(Checksums.Verification.values());
+        verificationList.setSelectedItem(Checksums.Verification.CHECKSUM);
+        JPanel verificationChoice = new JPanel();
+        verificationChoice.setLayout(new BorderLayout(LAYOUT_GAP, 0));
+        verificationChoice.add(new JLabel("verify"), BorderLayout.WEST);
+        verificationChoice.add(verificationList, BorderLayout.CENTER);
+
+        JPanel choices = new JPanel();
+        BorderLayout layout = new BorderLayout();
+        layout.setVgap(LAYOUT_GAP);
+        choices.setLayout(layout);
+        choices.add(list, BorderLayout.NORTH);
+        choices.add(verificationChoice, BorderLayout.SOUTH);
+
         // put it all together.
         JPanel leftTop = new JPanel();
-        BorderLayout layout = new BorderLayout();
+        layout = new BorderLayout();
         layout.setVgap(LAYOUT_GAP);
         leftTop.setLayout(layout);
         leftTop.add(load, BorderLayout.NORTH);
         leftTop.add(save, BorderLayout.CENTER);
-        leftTop.add(list, BorderLayout.SOUTH);
+        leftTop.add(choices, BorderLayout.SOUTH);
 
         // a go button.
-        JButton run = new JButton("Run");
-        run.addActionListener(new ActionListener() {
+        runButton = new JButton("Run");
+        runButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent ev) {
                 onAlgorithmRun();
             }
         });
 
+        // a cancel button, which interrupts the running job.
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ev) {
+                if (job != null) {
+                    job.cancel(true);
+                }
+            }
+        });
+
+        // and a progress bar for the running job.
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+
+        JPanel runControls = new JPanel();
+        layout = new BorderLayout();
+        layout.setVgap(LAYOUT_GAP);
+        layout.setHgap(LAYOUT_GAP);
+        runControls.setLayout(layout);
+        runControls.add(progressBar, BorderLayout.NORTH);
+        runControls.add(runButton, BorderLayout.CENTER);
+        runControls.add(cancelButton, BorderLayout.EAST);
+
         compressionFileSelection = new JLabel("<html>input:<br>output:</html>");
 
         JPanel leftBottom = new JPanel();
@@ -311,7 +445,7 @@ public class Assignment4_Interface {
         layout.setVgap(LAYOUT_GAP);
         leftBottom.setLayout(layout);
         leftBottom.add(compressionFileSelection, BorderLayout.NORTH);
-        leftBottom.add(run, BorderLayout.SOUTH);
+        leftBottom.add(runControls, BorderLayout.SOUTH);
 
         // the left panel is just leftTop, a bunch of vertical space, and the
         // run button at the bottom.
@@ -361,6 +495,8 @@ public class Assignment4_Interface {
         JTabbedPane tabs = new JTabbedPane();
         tabs.add("editor", editor);
         tabs.add("compression", compression);
+        tabs.add("viewer", viewerPane);
+        tabs.add("benchmark", new BenchmarkPanel(fileChooser));
 
         // some convenience shortcuts for marking.
         KeyboardFocusManager manager = KeyboardFocusManager.getCurrentKeyboardFocusManager();
@@ -412,15 +548,22 @@ public class Assignment4_Interface {
      */
     private static String readFile(File file) {
         try {
-            byte[] encoded = Files.readAllBytes(file.toPath());
-            return new String(encoded, CHARSET);
+            return FilePipeline.readText(file.toPath(), CHARSET);
         } catch (IOException e) {
             e.printStackTrace();
             throw new RuntimeException();
         }
     }
 
+    /**
+     * Opens the GUI, or with arguments runs them as a command line batch job
+     * (see CompressionCli) without needing a display.
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            CompressionCli.main(args);
+            return;
+        }
         new Assignment4_Interface();
     }
 }
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Runs codecs over a set of files and measures them: a few untimed warm-up
+ * runs to let the JIT settle, then timed runs of compress followed by
+ * decompress. Knows nothing about Swing, so the GUI runs it on a worker thread
+ * and the main method runs it from the command line.
+ */
+public class Benchmark {
+
+	static final String[] DEFAULT_FILES = { "war_and_peace.txt", "pi.txt", "lenna.txt" };
+
+	static final int DEFAULT_WARMUP_RUNS = 2;
+	static final int DEFAULT_TIMED_RUNS = 10;
+
+	// Once the runs of one codec on one file have taken this long, stop after
+	// the current run, so slow codecs on big files don't hold everything up
+	private static final long TIME_BUDGET_NANOS = 20_000_000_000L;
+
+	static final String[] COLUMNS = { "Codec", "File", "Size", "Compressed", "Ratio", "Compress MB/s",
+			"Decompress MB/s", "Alloc MB/run", "p50 ms", "p99 ms", "Runs", "Verified" };
+
+	/**
+	 * The measurements of one codec on one file. Throughputs come from the
+	 * median timed run, and the latencies are of a whole compress and
+	 * decompress round trip.
+	 */
+	static class Result {
+		final String codec;
+		final String file;
+		final long size;
+		final long compressedSize;
+		final double compressMBps;
+		final double decompressMBps;
+		// Most bytes the benchmark thread allocated in one round trip, in total
+		// rather than live at once, or -1 if the JVM can't tell
+		final long allocationPerRun;
+		final double p50Millis;
+		final double p99Millis;
+		final int runs;
+		final boolean verified;
+
+		Result(String codec, String file, long size, long compressedSize, double compressMBps,
+				double decompressMBps, long allocationPerRun, double p50Millis, double p99Millis, int runs,
+				boolean verified) {
+			this.codec = codec;
+			this.file = file;
+			this.size = size;
+			this.compressedSize = compressedSize;
+			this.compressMBps = compressMBps;
+			this.decompressMBps = decompressMBps;
+			this.allocationPerRun = allocationPerRun;
+			this.p50Millis = p50Millis;
+			this.p99Millis = p99Millis;
+			this.runs = runs;
+			this.verified = verified;
+		}
+
+		/**
+		 * Compressed size as a fraction of the original.
+		 */
+		double ratio() {
+			return size == 0 ? 0 : (double) compressedSize / size;
+		}
+
+		/**
+		 * The values for each of the COLUMNS.
+		 */
+		Object[] row() {
+			return new Object[] { codec, file, size, compressedSize, ratio(), compressMBps, decompressMBps,
+					allocationPerRun < 0 ? Double.NaN : allocationPerRun / 1e6, p50Millis, p99Millis, runs, verified };
+		}
+	}
+
+	private final List<Codec> codecs;
+	private final List<Path> files;
+	private final int warmupRuns;
+	private final int timedRuns;
+
+	public Benchmark(List<Codec> codecs, List<Path> files, int warmupRuns, int timedRuns) {
+		// Handle obvious errors
+		if (warmupRuns < 0 || timedRuns < 1) {
+			throw new IllegalArgumentException("Need no negative warm-up runs and at least one timed run.");
+		}
+		this.codecs = codecs;
+		this.files = files;
+		this.warmupRuns = warmupRuns;
+		this.timedRuns = timedRuns;
+	}
+
+	/**
+	 * Runs every codec on every file, handing each result to results as soon as
+	 * it is ready. Progress is counted in runs. If the thread is interrupted the
+	 * benchmark stops at the next run with a CancellationException.
+	 */
+	public List<Result> run(ProgressListener listener, Consumer<Result> results) throws IOException {
+		ProgressListener progress = listener.interruptible();
+		long total = (long) codecs.size() * files.size() * (warmupRuns + timedRuns);
+		long done = 0;
+
+		List<Result> all = new ArrayList<>();
+		for (Path file : files) {
+			byte[] data;
+			try (InputStream in = FilePipeline.newInputStream(file)) {
+				data = in.readAllBytes();
+			}
+			for (Codec codec : codecs) {
+				Result result = measure(codec, file.getFileName().toString(), data,
+						progress.stage(done, done + warmupRuns + timedRuns, total));
+				done += warmupRuns + timedRuns;
+				progress.progress(done, total);
+				all.add(result);
+				results.accept(result);
+			}
+		}
+		return all;
+	}
+
+	private Result measure(Codec codec, String file, byte[] data, ProgressListener progress) throws IOException {
+		long started = System.nanoTime();
+		int steps = warmupRuns + timedRuns;
+
+		// let the JIT settle before timing anything
+		boolean verified = true;
+		for (int i = 0; i < warmupRuns; i++) {
+			verified &= Arrays.equals(data, codec.decompress(codec.compress(data)));
+			progress.progress(i + 1, steps);
+			if (System.nanoTime() - started > TIME_BUDGET_NANOS) {
+				break;
+			}
+		}
+
+		long[] compressTimes = new long[timedRuns];
+		long[] decompressTimes = new long[timedRuns];
+		long[] roundTrips = new long[timedRuns];
+		long allocation = -1;
+		long compressedSize = 0;
+		int runs = 0;
+		while (runs < timedRuns) {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			byte[] compressed = codec.compress(data);
+			long middle = System.nanoTime();
+			byte[] decompressed = codec.decompress(compressed);
+			long end = System.nanoTime();
+			if (allocated >= 0) {
+				allocation = Math.max(allocation, allocatedBytes() - allocated);
+			}
+
+			verified &= Arrays.equals(data, decompressed);
+			compressedSize = compressed.length;
+			compressTimes[runs] = middle - start;
+			decompressTimes[runs] = end - middle;
+			roundTrips[runs] = end - start;
+			runs++;
+			progress.progress(warmupRuns + runs, steps);
+
+			// always time at least one run, even if the warm-up used up the budget
+			if (end - started > TIME_BUDGET_NANOS) {
+				break;
+			}
+		}
+
+		compressTimes = Arrays.copyOf(compressTimes, runs);
+		decompressTimes = Arrays.copyOf(decompressTimes, runs);
+		roundTrips = Arrays.copyOf(roundTrips, runs);
+		return new Result(codec.getName(), file, data.length, compressedSize,
+				megabytesPerSecond(data.length, percentile(compressTimes, 0.5)),
+				megabytesPerSecond(data.length, percentile(decompressTimes, 0.5)), allocation,
+				percentile(roundTrips, 0.5) / 1e6, percentile(roundTrips, 0.99) / 1e6, runs, verified);
+	}
+
+	/**
+	 * The nearest rank percentile of the times, which are sorted in place.
+	 */
+	static long percentile(long[] times, double fraction) {
+		Arrays.sort(times);
+		int rank = (int) Math.ceil(fraction * times.length);
+		return times[Math.max(0, rank - 1)];
+	}
+
+	private static double megabytesPerSecond(long bytes, long nanos) {
+		return bytes / 1e6 / Math.max(nanos / 1e9, 1e-9);
+	}
+
+	/**
+	 * Bytes allocated so far by this thread, or -1 if the JVM doesn't count
+	 * them. Codecs that hand work to other threads (like Block Huffman) only
+	 * have their own thread's share counted.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+			if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+				return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The results as CSV, one line per result under a header line of the
+	 * COLUMNS.
+	 */
+	static String toCsv(List<Result> results) {
+		StringBuilder csv = new StringBuilder();
+		csv.append(String.join(",", COLUMNS)).append('\n');
+		for (Result result : results) {
+			Object[] row = result.row();
+			for (int i = 0; i < row.length; i++) {
+				if (i > 0) {
+					csv.append(',');
+				}
+				csv.append(csvField(row[i]));
+			}
+			csv.append('\n');
+		}
+		return csv.toString();
+	}
+
+	private static String csvField(Object value) {
+		if (value instanceof Double) {
+			double d = (Double) value;
+			return Double.isNaN(d) ? "" : String.format(Locale.ROOT, "%.4f", d);
+		}
+		String s = String.valueOf(value);
+		if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+			return '"' + s.replace("\"", "\"\"") + '"';
+		}
+		return s;
+	}
+
+	/**
+	 * Runs every codec over the files given as arguments, or the default files,
+	 * and prints the results as CSV.
+	 */
+	public static void main(String[] args) throws IOException {
+		String[] names = args.length > 0 ? args : DEFAULT_FILES;
+		List<Path> files = new ArrayList<>();
+		for (String name : names) {
+			files.add(Paths.get(name));
+		}
+		Benchmark benchmark = new Benchmark(Arrays.asList(Codec.CODECS), files, DEFAULT_WARMUP_RUNS,
+				DEFAULT_TIMED_RUNS);
+		System.out.print(toCsv(benchmark.run(ProgressListener.NONE, result -> {
+		})));
+	}
+}
@@ -0,0 +1,276 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * The benchmark tab: runs every codec over a set of files (see Benchmark) on a
+ * worker thread, and lists the results in a table that sorts on any column
+ * and can be saved as CSV.
+ */
+public class BenchmarkPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int LAYOUT_GAP = 5;
+
+	// Where to look for the default files, in order
+	private static final String[] DATA_DIRECTORIES = { "../data", "." };
+
+	private final JFileChooser fileChooser;
+	private final JLabel fileLabel = new JLabel();
+	private final JSpinner warmupRuns = new JSpinner(
+			new SpinnerNumberModel(Benchmark.DEFAULT_WARMUP_RUNS, 0, 100, 1));
+	private final JSpinner timedRuns = new JSpinner(new SpinnerNumberModel(Benchmark.DEFAULT_TIMED_RUNS, 1, 1000, 1));
+	private final JButton runButton = new JButton("Run");
+	private final JButton cancelButton = new JButton("Cancel");
+	private final JButton exportButton = new JButton("Export CSV");
+	private final JProgressBar progressBar = new JProgressBar(0, 100);
+	private final DefaultTableModel model;
+
+	private final List<Benchmark.Result> results = new ArrayList<>();
+	private List<Path> files = defaultFiles();
+	private BenchmarkWorker job;
+
+	public BenchmarkPanel(JFileChooser fileChooser) {
+		this.fileChooser = fileChooser;
+
+		// numbers sort as numbers rather than as text
+		model = new DefaultTableModel(Benchmark.COLUMNS, 0) {
+			@Override
+			public Class<?> getColumnClass(int column) {
+				if (getRowCount() == 0 || getValueAt(0, column) == null) {
+					return Object.class;
+				}
+				return getValueAt(0, column).getClass();
+			}
+
+			@Override
+			public boolean isCellEditable(int row, int column) {
+				return false;
+			}
+		};
+		JTable table = new JTable(model);
+		table.setAutoCreateRowSorter(true);
+
+		JButton choose = new JButton("Files");
+		choose.addActionListener(e -> chooseFiles());
+		runButton.addActionListener(e -> run());
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(e -> {
+			if (job != null) {
+				job.cancel(true);
+			}
+		});
+		exportButton.setEnabled(false);
+		exportButton.addActionListener(e -> export());
+		progressBar.setStringPainted(true);
+		updateFileLabel();
+
+		JPanel controls = new JPanel();
+		controls.setLayout(new BoxLayout(controls, BoxLayout.LINE_AXIS));
+		controls.setBorder(BorderFactory.createEmptyBorder(LAYOUT_GAP, LAYOUT_GAP, LAYOUT_GAP, LAYOUT_GAP));
+		controls.add(choose);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(fileLabel);
+		controls.add(Box.createHorizontalGlue());
+		controls.add(new JLabel("Warm-up"));
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(warmupRuns);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(new JLabel("Runs"));
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(timedRuns);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(runButton);
+		controls.add(cancelButton);
+		controls.add(exportButton);
+		warmupRuns.setMaximumSize(warmupRuns.getPreferredSize());
+		timedRuns.setMaximumSize(timedRuns.getPreferredSize());
+
+		JPanel bottom = new JPanel(new BorderLayout());
+		bottom.setBorder(BorderFactory.createEmptyBorder(LAYOUT_GAP, LAYOUT_GAP, LAYOUT_GAP, LAYOUT_GAP));
+		bottom.add(progressBar, BorderLayout.CENTER);
+
+		setLayout(new BorderLayout());
+		add(controls, BorderLayout.NORTH);
+		add(new JScrollPane(table), BorderLayout.CENTER);
+		add(bottom, BorderLayout.SOUTH);
+	}
+
+	/**
+	 * The default files that can be found, from the first data directory that
+	 * has any of them.
+	 */
+	private static List<Path> defaultFiles() {
+		for (String directory : DATA_DIRECTORIES) {
+			List<Path> found = new ArrayList<>();
+			for (String name : Benchmark.DEFAULT_FILES) {
+				File file = new File(directory, name);
+				if (file.isFile()) {
+					found.add(file.toPath());
+				}
+			}
+			if (!found.isEmpty()) {
+				return found;
+			}
+		}
+		return new ArrayList<>();
+	}
+
+	private void updateFileLabel() {
+		StringBuilder names = new StringBuilder();
+		for (Path file : files) {
+			names.append(names.length() == 0 ? "" : ", ").append(file.getFileName());
+		}
+		fileLabel.setText(files.isEmpty() ? "no files selected" : names.toString());
+	}
+
+	private void chooseFiles() {
+		fileChooser.setCurrentDirectory(new File("."));
+		fileChooser.setDialogTitle("Select files to benchmark.");
+		fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+		fileChooser.setMultiSelectionEnabled(true);
+		try {
+			if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+				files = new ArrayList<>();
+				for (File file : fileChooser.getSelectedFiles()) {
+					files.add(file.toPath());
+				}
+				updateFileLabel();
+			}
+		} finally {
+			// the chooser is shared with the other tabs
+			fileChooser.setMultiSelectionEnabled(false);
+		}
+	}
+
+	private void run() {
+		if (files.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "No files selected.");
+			return;
+		}
+		model.setRowCount(0);
+		results.clear();
+		Benchmark benchmark = new Benchmark(Arrays.asList(Codec.CODECS), files, (Integer) warmupRuns.getValue(),
+				(Integer) timedRuns.getValue());
+		job = new BenchmarkWorker(benchmark);
+		runButton.setEnabled(false);
+		cancelButton.setEnabled(true);
+		exportButton.setEnabled(false);
+		progressBar.setValue(0);
+		job.execute();
+	}
+
+	private void export() {
+		fileChooser.setCurrentDirectory(new File("."));
+		fileChooser.setDialogTitle("Save results as CSV.");
+		fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+		if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+			try (Writer out = Files.newBufferedWriter(fileChooser.getSelectedFile().toPath(),
+					StandardCharsets.UTF_8)) {
+				out.write(Benchmark.toCsv(results));
+			} catch (IOException e) {
+				JOptionPane.showMessageDialog(this, "Could not save results: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Runs the benchmark off the event thread, adding each result to the table
+	 * as soon as it is measured. Cancelling stops it after the current run, and
+	 * keeps the results so far. done() runs as soon as it is cancelled, while the
+	 * current run may still take seconds, so Run is only enabled again once the
+	 * background thread has really finished.
+	 */
+	private class BenchmarkWorker extends SwingWorker<Void, Benchmark.Result> {
+		private final Benchmark benchmark;
+
+		// Claimed by whichever comes first: the benchmark starting, or done()
+		// finding it was cancelled before it ever started
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		BenchmarkWorker(Benchmark benchmark) {
+			this.benchmark = benchmark;
+			addPropertyChangeListener(event -> {
+				if ("progress".equals(event.getPropertyName()) && !isCancelled()) {
+					progressBar.setValue((Integer) event.getNewValue());
+				}
+			});
+		}
+
+		@Override
+		protected Void doInBackground() throws IOException {
+			if (!started.compareAndSet(false, true)) {
+				return null;
+			}
+			try {
+				benchmark.run((done, total) -> setProgress((int) (total == 0 ? 100 : 100 * done / total)),
+						this::publish);
+			} finally {
+				SwingUtilities.invokeLater(() -> runButton.setEnabled(true));
+			}
+			return null;
+		}
+
+		@Override
+		protected void process(List<Benchmark.Result> measured) {
+			// results from a cancelled run can arrive after it was cancelled, or even
+			// after the next run has started
+			if (isCancelled() || job != this) {
+				return;
+			}
+			for (Benchmark.Result result : measured) {
+				results.add(result);
+				model.addRow(result.row());
+			}
+		}
+
+		@Override
+		protected void done() {
+			cancelButton.setEnabled(false);
+			if (started.compareAndSet(false, true)) {
+				// Cancelled before it started, so nothing is left running
+				runButton.setEnabled(true);
+			}
+			exportButton.setEnabled(!results.isEmpty());
+			try {
+				get();
+			} catch (CancellationException e) {
+				progressBar.setValue(0);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				JOptionPane.showMessageDialog(BenchmarkPanel.this, "Benchmark failed: " + e.getCause());
+			}
+		}
+	}
+}
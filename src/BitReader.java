@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads bits back out of bytes packed by {@link BitWriter}, first bit in the
+ * most significant position. Keeps up to 64 upcoming bits in a buffer so that a
+ * decoder can peek at several bits at once. Reading past the end gives 0 bits.
+ */
+public class BitReader {
+
+	// Where more data comes from in streaming mode, null when reading an array
+	private final InputStream in;
+
+	private final byte[] data;
+	private int end;
+
+	// Index of the next byte to load into the buffer
+	private int pos;
+
+	// Upcoming bits, left aligned, and how many of them are valid
+	private long buffer;
+	private int available;
+
+	public BitReader(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	/**
+	 * Reads the bits in data[offset, offset + length).
+	 */
+	public BitReader(byte[] data, int offset, int length) {
+		this.in = null;
+		this.data = data;
+		this.pos = offset;
+		this.end = offset + length;
+		refill();
+	}
+
+	/**
+	 * Reads the bits from a stream. The reader reads ahead, so the stream should
+	 * hold nothing but the bits.
+	 */
+	public BitReader(InputStream in) {
+		this.in = in;
+		this.data = new byte[8192];
+		refill();
+	}
+
+	/**
+	 * Tops up the buffer so at least 57 bits are available (unless the data runs
+	 * out).
+	 */
+	private void refill() {
+		while (available <= 56) {
+			if (pos == end && !readMore()) {
+				return;
+			}
+			buffer |= (data[pos++] & 0xFFL) << (56 - available);
+			available += 8;
+		}
+	}
+
+	/**
+	 * In streaming mode, loads the next chunk of the stream into the array.
+	 *
+	 * @return false if there is no more data
+	 */
+	private boolean readMore() {
+		if (in == null) {
+			return false;
+		}
+		try {
+			int n = in.read(data, 0, data.length);
+			if (n <= 0) {
+				return false;
+			}
+			pos = 0;
+			end = n;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The next n bits without consuming them, right aligned. Use peekLong for
+	 * more than fit in an int.
+	 *
+	 * @param n between 1 and 32
+	 */
+	public int peek(int n) {
+		return (int) (buffer >>> (64 - n));
+	}
+
+	/**
+	 * The next n bits without consuming them, right aligned.
+	 *
+	 * @param n between 1 and 57
+	 */
+	public long peekLong(int n) {
+		return buffer >>> (64 - n);
+	}
+
+	/**
+	 * Consumes n bits.
+	 *
+	 * @param n between 0 and 57
+	 */
+	public void skip(int n) {
+		buffer <<= n;
+		available -= n;
+		if (available <= 56) {
+			refill();
+		}
+	}
+
+	/**
+	 * Reads and consumes n bits, right aligned.
+	 *
+	 * @param n between 1 and 57
+	 */
+	public long read(int n) {
+		long bits = peekLong(n);
+		skip(n);
+		return bits;
+	}
+
+	/**
+	 * Whether more bits have been consumed than the data holds. Past the end the
+	 * reader reads zeros, so a decoder of corrupt or truncated data can check
+	 * this rather than decode zeros for ever.
+	 */
+	public boolean overrun() {
+		return available < 0;
+	}
+
+	/**
+	 * Reads and consumes a single bit.
+	 */
+	public int readBit() {
+		return (int) read(1);
+	}
+}
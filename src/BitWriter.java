@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Packs bits into 64-bit words, first bit in the most significant position.
+ * Used to build the compressed output of the Huffman coders as real bits rather
+ * than a String of '0' and '1' characters. It either collects the bits in
+ * memory, or streams them out to an OutputStream as the buffer fills.
+ */
+public class BitWriter {
+
+	// Where full buffers go in streaming mode, null when collecting in memory
+	private final OutputStream out;
+
+	// Completed words
+	private long[] words;
+	private int wordCount;
+
+	// Bits that haven't filled a whole word yet, right aligned
+	private long current;
+	private int used;
+
+	public BitWriter() {
+		this(1024);
+	}
+
+	/**
+	 * @param expectedBits rough number of bits that will be written, used to size
+	 *                     the buffer up front
+	 */
+	public BitWriter(long expectedBits) {
+		this.out = null;
+		this.words = new long[(int) Math.max(16, Math.min(Integer.MAX_VALUE - 8, expectedBits / 64 + 1))];
+	}
+
+	/**
+	 * A writer that streams its bits to out using a fixed size buffer. Call flush
+	 * once all the bits are written.
+	 */
+	public BitWriter(OutputStream out) {
+		this.out = out;
+		this.words = new long[1024];
+	}
+
+	/**
+	 * Appends the lowest length bits of bits, most significant first.
+	 *
+	 * @param bits   the bits to write, right aligned, with nothing set above them
+	 * @param length number of bits, between 0 and 63
+	 */
+	public void write(long bits, int length) {
+		int free = 64 - used;
+		if (length < free) {
+			current = (current << length) | bits;
+			used += length;
+			return;
+		}
+
+		// Fill up the current word with the top of the bits, keep the rest
+		int overflow = length - free;
+		addWord((current << free) | (bits >>> overflow));
+		current = bits & ((1L << overflow) - 1);
+		used = overflow;
+	}
+
+	/**
+	 * Appends a single bit.
+	 */
+	public void writeBit(int bit) {
+		write(bit & 1, 1);
+	}
+
+	/**
+	 * Total number of bits written so far (in memory mode).
+	 */
+	public long bitLength() {
+		return (long) wordCount * 64 + used;
+	}
+
+	/**
+	 * In streaming mode, writes out every bit written so far, padding the last
+	 * byte with 0s. No more bits should be written afterwards.
+	 */
+	public void flush() throws IOException {
+		out.write(toByteArray());
+		out.flush();
+		wordCount = 0;
+		current = 0;
+		used = 0;
+	}
+
+	/**
+	 * The written bits packed into bytes, first bit in the most significant bit of
+	 * the first byte. The last byte is padded with 0s.
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[(int) ((bitLength() + 7) / 8)];
+		int pos = 0;
+		for (int w = 0; w < wordCount; w++) {
+			long word = words[w];
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				bytes[pos++] = (byte) (word >>> shift);
+			}
+		}
+
+		// Left align what's left over and write out the bytes it touches
+		long last = used == 0 ? 0 : current << (64 - used);
+		for (int shift = 56; pos < bytes.length; shift -= 8) {
+			bytes[pos++] = (byte) (last >>> shift);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Joins the bits of several in-memory writers end to end and packs them into
+	 * bytes, exactly as if all the bits had gone through one writer. A prefix sum
+	 * over the parts' lengths gives each part its bit offset, and the parts are
+	 * then shifted into place in parallel. Each part writes every output word it
+	 * covers except its first, which may be shared with the part before it. Those
+	 * are merged in afterwards.
+	 */
+	public static byte[] join(BitWriter[] parts) {
+		long[] offsets = new long[parts.length + 1];
+		for (int i = 0; i < parts.length; i++) {
+			offsets[i + 1] = offsets[i] + parts[i].bitLength();
+		}
+		long totalBits = offsets[parts.length];
+		long[] joined = new long[(int) ((totalBits + 63) / 64)];
+		long[] firstWords = new long[parts.length];
+
+		IntStream.range(0, parts.length).parallel()
+				.forEach(i -> firstWords[i] = parts[i].placeAt(joined, offsets[i]));
+
+		for (int i = 0; i < parts.length; i++) {
+			if (parts[i].bitLength() > 0) {
+				joined[(int) (offsets[i] / 64)] |= firstWords[i];
+			}
+		}
+		return toBytes(joined, totalBits);
+	}
+
+	/**
+	 * Shifts this writer's bits into place starting at bit offset of dest. Every
+	 * word of dest the bits touch is written except the first, whose share of the
+	 * bits is returned instead.
+	 */
+	private long placeAt(long[] dest, long offset) {
+		long bits = bitLength();
+		if (bits == 0) {
+			return 0;
+		}
+		int base = (int) (offset / 64);
+		int last = (int) ((offset + bits - 1) / 64);
+		int shift = (int) (offset % 64);
+
+		// Word k of the output is the end of source word k - 1 and the start of
+		// source word k, the last (partial) source word being left aligned
+		int sourceWords = wordCount + (used > 0 ? 1 : 0);
+		long first = 0;
+		long previous = 0;
+		for (int k = 0; base + k <= last; k++) {
+			long word = k < wordCount ? words[k] : (k < sourceWords ? current << (64 - used) : 0);
+			long value = (word >>> shift) | (shift > 0 ? previous << (64 - shift) : 0);
+			if (k == 0) {
+				first = value;
+			} else {
+				dest[base + k] = value;
+			}
+			previous = word;
+		}
+		return first;
+	}
+
+	/**
+	 * Packs the first bitLength bits of the words into bytes.
+	 */
+	private static byte[] toBytes(long[] words, long bitLength) {
+		byte[] bytes = new byte[(int) ((bitLength + 7) / 8)];
+		int pos = 0;
+		for (int w = 0; pos < bytes.length; w++) {
+			long word = words[w];
+			for (int shift = 56; shift >= 0 && pos < bytes.length; shift -= 8) {
+				bytes[pos++] = (byte) (word >>> shift);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Adds a completed word, growing the buffer (or draining it to the stream)
+	 * when it is full.
+	 */
+	private void addWord(long word) {
+		if (wordCount == words.length) {
+			if (out != null) {
+				drain();
+			} else {
+				words = Arrays.copyOf(words, words.length * 2);
+			}
+		}
+		words[wordCount++] = word;
+	}
+
+	/**
+	 * Writes the completed words out to the stream and empties the buffer.
+	 */
+	private void drain() {
+		byte[] bytes = new byte[wordCount * 8];
+		int pos = 0;
+		for (int w = 0; w < wordCount; w++) {
+			long word = words[w];
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				bytes[pos++] = (byte) (word >>> shift);
+			}
+		}
+		try {
+			out.write(bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		wordCount = 0;
+	}
+}
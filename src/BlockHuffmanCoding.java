@@ -0,0 +1,378 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Block-wise Huffman coding over bytes, for data whose statistics change part
+ * way through (like an image file, where the header looks nothing like the
+ * pixels). The data is cut into blocks, and each block either gets a fresh code
+ * or reuses the code of the block before it, whichever comes out smaller once
+ * the cost of storing the code is counted. All the codes are written up front
+ * in a block directory along with the size of every block, so the blocks can
+ * be encoded and decoded in parallel.
+ */
+public class BlockHuffmanCoding {
+
+	// Identifies a block Huffman file, "BHF" followed by a 0 byte
+	private static final int MAGIC = 0x42484600;
+	private static final int FORMAT_VERSION = 1;
+
+	// Adaptive splitting works in whole segments, and stops growing a block at
+	// MAX_BLOCK so there are always blocks to spread across threads
+	static final int SEGMENT = 1 << 14;
+	static final int MAX_BLOCK = 1 << 20;
+
+	// Short enough codes that the decode table handles almost everything
+	private static final int MAX_CODE_LENGTH = 15;
+
+	// Rough cost of storing one code length in the directory: a delta and a length
+	private static final int TABLE_BITS_PER_SYMBOL = 16;
+
+	// Start of each block, with one extra entry for the end of the data
+	final int[] starts;
+
+	// Code for each block, the same object as the block before when reused
+	final CanonicalCode[] codes;
+
+	// Whether each block stores its own code
+	final boolean[] fresh;
+
+	// Statistics for getInformation
+	private long blockBits;
+	private long singleTableBits;
+
+	/**
+	 * Builds the block codes for the data, splitting it where the statistics
+	 * change.
+	 */
+	public BlockHuffmanCoding(byte[] data) {
+		this(data, 0);
+	}
+
+	/**
+	 * Builds the block codes for the data.
+	 *
+	 * @param blockSize length of every block, or 0 to split adaptively
+	 */
+	public BlockHuffmanCoding(byte[] data, int blockSize) {
+		// Handle obvious errors
+		if (data == null || data.length == 0) {throw new IllegalArgumentException("Empty / null data.");}
+		if (blockSize < 0) {throw new IllegalArgumentException("Negative block size.");}
+
+		starts = blockSize == 0 ? split(data) : fixedSplit(data.length, blockSize);
+		int blocks = starts.length - 1;
+		int[][] frequencies = new int[blocks][];
+		IntStream.range(0, blocks).parallel().forEach(b ->
+				frequencies[b] = ByteHuffmanCoding.countFrequencies(data, starts[b], starts[b + 1]));
+
+		// Fresh or reused code for each block, in order since reuse depends on the
+		// block before
+		codes = new CanonicalCode[blocks];
+		fresh = new boolean[blocks];
+		for (int b = 0; b < blocks; b++) {
+			CanonicalCode own = buildCode(frequencies[b]);
+			long freshBits = own.encodedBits(frequencies[b]) + (long) own.size() * TABLE_BITS_PER_SYMBOL;
+			CanonicalCode previous = b == 0 ? null : codes[b - 1];
+			if (previous != null && covers(previous, frequencies[b])
+					&& previous.encodedBits(frequencies[b]) <= freshBits) {
+				codes[b] = previous;
+				blockBits += previous.encodedBits(frequencies[b]);
+			} else {
+				codes[b] = own;
+				fresh[b] = true;
+				blockBits += freshBits;
+			}
+		}
+
+		// What one code for everything would have cost
+		int[] total = ByteHuffmanCoding.countFrequencies(data, 0, data.length);
+		CanonicalCode single = buildCode(total);
+		singleTableBits = single.encodedBits(total) + (long) single.size() * TABLE_BITS_PER_SYMBOL;
+	}
+
+	/**
+	 * Cuts the data into blocks of blockSize bytes, the last one possibly shorter.
+	 */
+	private static int[] fixedSplit(int length, int blockSize) {
+		int blocks = (length + blockSize - 1) / blockSize;
+		int[] starts = new int[blocks + 1];
+		for (int b = 0; b < blocks; b++) {
+			starts[b] = b * blockSize;
+		}
+		starts[blocks] = length;
+		return starts;
+	}
+
+	/**
+	 * Cuts the data into blocks by growing each block a segment at a time, and
+	 * starting a new block when coding the next segment on its own would be
+	 * cheaper than adding it to the current block.
+	 */
+	private static int[] split(byte[] data) {
+		int[] starts = new int[data.length / SEGMENT + 2];
+		int blocks = 0;
+
+		int[] block = ByteHuffmanCoding.countFrequencies(data, 0, Math.min(SEGMENT, data.length));
+		int blockLength = Math.min(SEGMENT, data.length);
+		long blockCost = estimatedBits(block);
+		for (int from = SEGMENT; from < data.length; from += SEGMENT) {
+			int to = Math.min(data.length, from + SEGMENT);
+			int[] segment = ByteHuffmanCoding.countFrequencies(data, from, to);
+			long segmentCost = estimatedBits(segment);
+
+			int[] merged = block.clone();
+			for (int s = 0; s < merged.length; s++) {
+				merged[s] += segment[s];
+			}
+			long mergedCost = estimatedBits(merged);
+
+			if (blockLength + (to - from) > MAX_BLOCK || mergedCost > blockCost + segmentCost) {
+				starts[++blocks] = from;
+				block = segment;
+				blockLength = to - from;
+				blockCost = segmentCost;
+			} else {
+				block = merged;
+				blockLength += to - from;
+				blockCost = mergedCost;
+			}
+		}
+		starts[++blocks] = data.length;
+		return Arrays.copyOf(starts, blocks + 1);
+	}
+
+	/**
+	 * Bits needed to code bytes with these frequencies using their own Huffman
+	 * code, including storing the code.
+	 */
+	private static long estimatedBits(int[] frequencies) {
+		int[] lengths = CodeLengths.huffman(frequencies);
+		long bits = 0;
+		for (int s = 0; s < lengths.length; s++) {
+			if (lengths[s] > 0) {
+				bits += (long) frequencies[s] * lengths[s] + TABLE_BITS_PER_SYMBOL;
+			}
+		}
+		return bits;
+	}
+
+	private static CanonicalCode buildCode(int[] frequencies) {
+		CanonicalCode code = new CanonicalCode(CodeLengths.huffman(frequencies));
+		if (code.maxLength > MAX_CODE_LENGTH) {
+			code = new CanonicalCode(CodeLengths.limited(frequencies, MAX_CODE_LENGTH));
+		}
+		return code;
+	}
+
+	/**
+	 * Whether the code has a code for every byte that appears.
+	 */
+	private static boolean covers(CanonicalCode code, int[] frequencies) {
+		for (int s = 0; s < frequencies.length; s++) {
+			if (frequencies[s] > 0 && code.length(s) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the data to out: a header with the length and checksum, the block
+	 * directory, then the packed bits of every block. The data must be the data
+	 * the coding was built from.
+	 */
+	public void write(byte[] data, OutputStream out) throws IOException {
+		write(data, out, ProgressListener.NONE);
+	}
+
+	/**
+	 * Writes the data to out, reporting progress in bytes encoded. The blocks are
+	 * encoded a batch at a time, with progress reported on the calling thread
+	 * between batches, so a listener can stop the encoding part way.
+	 */
+	public void write(byte[] data, OutputStream out, ProgressListener progress) throws IOException {
+		int blocks = codes.length;
+
+		// Encode the blocks in parallel, each into its own whole number of bytes
+		byte[][] packed = new byte[blocks][];
+		int batch = Runtime.getRuntime().availableProcessors();
+		for (int first = 0; first < blocks; first += batch) {
+			IntStream.range(first, Math.min(blocks, first + batch)).parallel().forEach(b -> {
+				CanonicalCode code = codes[b];
+				BitWriter writer = new BitWriter((long) (starts[b + 1] - starts[b]) * code.maxLength);
+				for (int i = starts[b]; i < starts[b + 1]; i++) {
+					int symbol = data[i] & 0xFF;
+					writer.write(code.codes[symbol], code.lengths[symbol]);
+				}
+				packed[b] = writer.toByteArray();
+			});
+			progress.progress(starts[Math.min(blocks, first + batch)], data.length);
+		}
+
+		// Header
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		DataOutputStream stream = new DataOutputStream(out);
+		stream.writeInt(MAGIC);
+		stream.writeByte(FORMAT_VERSION);
+		VarInt.write(stream, data.length);
+		stream.writeInt((int) crc.getValue());
+
+		// Block directory: length, whether the code is fresh, the code if it is,
+		// and the packed size
+		VarInt.write(stream, blocks);
+		for (int b = 0; b < blocks; b++) {
+			VarInt.write(stream, starts[b + 1] - starts[b]);
+			stream.writeByte(fresh[b] ? 1 : 0);
+			if (fresh[b]) {
+				CanonicalCode code = codes[b];
+				VarInt.write(stream, code.size());
+				int last = 0;
+				for (int s = 0; s < ByteHuffmanCoding.ALPHABET_SIZE; s++) {
+					if (code.length(s) > 0) {
+						VarInt.write(stream, s - last);
+						stream.writeByte(code.length(s));
+						last = s;
+					}
+				}
+			}
+			VarInt.write(stream, packed[b].length);
+		}
+
+		// Packed bits
+		for (byte[] block : packed) {
+			stream.write(block);
+		}
+		stream.flush();
+	}
+
+	/**
+	 * Reads a file written by write and decodes the blocks in parallel.
+	 *
+	 * @throws IOException if the file is not a block Huffman file or is corrupt
+	 */
+	public static byte[] decode(InputStream in) throws IOException {
+		DataInputStream stream = new DataInputStream(in);
+
+		// Header
+		if (stream.readInt() != MAGIC) {
+			throw new IOException("Not a block Huffman coded file.");
+		}
+		int version = stream.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported block Huffman file version: " + version);
+		}
+		int length = VarInt.readInt(stream);
+		int expectedChecksum = stream.readInt();
+
+		// Block directory. Every block holds at least one byte, and the arrays
+		// grow as blocks are read rather than trusting the count up front
+		int blocks = VarInt.readInt(stream);
+		if (blocks < 1 || blocks > length) {
+			throw new IOException("Invalid block count: " + blocks);
+		}
+		int capacity = Math.min(blocks, 1024);
+		int[] starts = new int[capacity + 1];
+		int[] packedSizes = new int[capacity];
+		HuffmanDecoder[] decoders = new HuffmanDecoder[capacity];
+		long packedLength = 0;
+		for (int b = 0; b < blocks; b++) {
+			if (b == capacity) {
+				capacity = (int) Math.min(blocks, 2L * capacity);
+				starts = Arrays.copyOf(starts, capacity + 1);
+				packedSizes = Arrays.copyOf(packedSizes, capacity);
+				decoders = Arrays.copyOf(decoders, capacity);
+			}
+			int size = VarInt.readInt(stream);
+			if (size < 1 || size > length - starts[b]) {
+				throw new IOException("Invalid length for block " + b + ": " + size);
+			}
+			starts[b + 1] = starts[b] + size;
+			if (stream.readUnsignedByte() != 0) {
+				int[] lengths = new int[ByteHuffmanCoding.ALPHABET_SIZE];
+				int count = VarInt.readInt(stream);
+				int symbol = 0;
+				for (int i = 0; i < count; i++) {
+					symbol += VarInt.readInt(stream);
+					if (symbol < 0 || symbol >= lengths.length) {
+						throw new IOException("Invalid symbol in block Huffman code: " + symbol);
+					}
+					lengths[symbol] = stream.readUnsignedByte();
+				}
+				try {
+					decoders[b] = new HuffmanDecoder(new CanonicalCode(lengths));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Corrupt block Huffman code.", e);
+				}
+			} else if (b == 0) {
+				throw new IOException("The first block has no code to reuse.");
+			} else {
+				decoders[b] = decoders[b - 1];
+			}
+			packedSizes[b] = VarInt.readInt(stream);
+			packedLength += packedSizes[b];
+			if (packedLength > Integer.MAX_VALUE - 8) {
+				throw new IOException("Block sizes add up to more than fits in memory.");
+			}
+		}
+		if (starts[blocks] != length) {
+			throw new IOException("Block lengths do not add up to the data length.");
+		}
+
+		// Packed bits, where every byte takes at least one bit
+		int[] offsets = new int[blocks + 1];
+		for (int b = 0; b < blocks; b++) {
+			offsets[b + 1] = offsets[b] + packedSizes[b];
+		}
+		byte[] packed = HuffmanCoding.readBytes(stream, offsets[blocks]);
+		if (length > 8L * packed.length) {
+			throw new IOException("Corrupt block Huffman header, " + length + " bytes can't fit in "
+					+ packed.length + " bytes of bits.");
+		}
+
+		// Decode the blocks in parallel
+		byte[] data = new byte[length];
+		int[] blockStarts = starts;
+		int[] blockSizes = packedSizes;
+		HuffmanDecoder[] blockDecoders = decoders;
+		try {
+			IntStream.range(0, blocks).parallel().forEach(b -> {
+				HuffmanDecoder decoder = blockDecoders[b];
+				BitReader reader = new BitReader(packed, offsets[b], blockSizes[b]);
+				for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+					data[i] = (byte) decoder.decodeSymbol(reader);
+				}
+			});
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt block Huffman data.", e);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if ((int) crc.getValue() != expectedChecksum) {
+			throw new IOException("Checksum mismatch, the block Huffman file is corrupt.");
+		}
+		return data;
+	}
+
+	/**
+	 * Some statistics about the blocks and their codes.
+	 */
+	public String getInformation() {
+		int freshCount = 0;
+		for (boolean f : fresh) {
+			if (f) {
+				freshCount++;
+			}
+		}
+		return "blocks: " + codes.length + "\n" + "fresh codes: " + freshCount + "\n"
+				+ "reused codes: " + (codes.length - freshCount) + "\n"
+				+ String.format("estimated size: %d bytes, %d bytes with one code%n", blockBits / 8,
+						singleTableBits / 8);
+	}
+}
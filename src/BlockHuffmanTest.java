@@ -0,0 +1,104 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BlockHuffmanTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, a single byte, one value repeated, all 256 byte values, and
+        // text followed by noise so the statistics change part way through
+        Random random = new Random(261);
+        byte[] allBytes = new byte[256 * 40];
+        for (int i = 0; i < allBytes.length; i++) {
+            allBytes[i] = (byte) i;
+        }
+        byte[] text = "the cat sat on the mat, then the other cat sat there.\n".repeat(2000)
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] noise = new byte[text.length];
+        random.nextBytes(noise);
+        byte[] mixed = Arrays.copyOf(text, text.length * 2);
+        System.arraycopy(noise, 0, mixed, text.length, noise.length);
+        byte[][] inputs = { { 42 }, new byte[100000], allBytes, text, mixed };
+
+        // Every input should come back, split adaptively and into fixed blocks
+        for (byte[] input : inputs) {
+            for (int blockSize : new int[] { 0, 4096 }) {
+                BlockHuffmanCoding coding = new BlockHuffmanCoding(input, blockSize);
+                byte[] file = write(coding, input);
+                boolean same = Arrays.equals(input, BlockHuffmanCoding.decode(new ByteArrayInputStream(file)));
+                System.out.println((same ? "OK!! " : "Wrong!! ") + input.length + " bytes in " + coding.codes.length
+                        + " blocks (" + freshCount(coding) + " fresh codes) -> " + file.length + " bytes and back");
+            }
+        }
+
+        // Blocks with the same statistics should share a code, and a change of
+        // statistics should get a fresh one
+        BlockHuffmanCoding uniform = new BlockHuffmanCoding(text, 4096);
+        System.out.println((freshCount(uniform) == 1 ? "OK!! " : "Wrong!! ") + "Repeated text used "
+                + freshCount(uniform) + " fresh code(s) for " + uniform.codes.length + " blocks");
+        BlockHuffmanCoding changing = new BlockHuffmanCoding(mixed);
+        System.out.println((freshCount(changing) >= 2 ? "OK!! " : "Wrong!! ") + "Text then noise used "
+                + freshCount(changing) + " fresh codes for " + changing.codes.length + " blocks");
+
+        // Damaged files should be refused with an IOException
+        byte[] file = write(new BlockHuffmanCoding(mixed), mixed);
+        expectFailure("truncated file", Arrays.copyOf(file, file.length - 10));
+        byte[] flipped = file.clone();
+        flipped[flipped.length - 100] ^= 0x10;
+        expectFailure("flipped bit", flipped);
+        expectFailure("block longer than the data", directory(100, 1, Integer.MAX_VALUE, 4));
+        expectFailure("huge block count", directory(100, Integer.MAX_VALUE, 100, 4));
+        expectFailure("huge packed block", directory(100, 1, 100, Integer.MAX_VALUE - 100));
+        expectFailure("too little packed data", directory(1 << 30, 1, 1 << 30, 4));
+    }
+
+    private static byte[] write(BlockHuffmanCoding coding, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        coding.write(data, out);
+        return out.toByteArray();
+    }
+
+    private static int freshCount(BlockHuffmanCoding coding) {
+        int count = 0;
+        for (boolean fresh : coding.fresh) {
+            count += fresh ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * A file of the given length whose directory starts with a block of the
+     * given size and packed size, coded with a one symbol code.
+     */
+    private static byte[] directory(int length, int blocks, int blockLength, int packedSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x42484600);
+        data.writeByte(1);
+        VarInt.write(data, length);
+        data.writeInt(0);
+        VarInt.write(data, blocks);
+        VarInt.write(data, blockLength);
+        data.writeByte(1);
+        VarInt.write(data, 1);
+        VarInt.write(data, 'a');
+        data.writeByte(1);
+        VarInt.write(data, packedSize);
+        data.write(new byte[16]);
+        return bytes.toByteArray();
+    }
+
+    private static void expectFailure(String what, byte[] file) {
+        try {
+            BlockHuffmanCoding.decode(new ByteArrayInputStream(file));
+            System.out.println("Wrong!! A " + what + " was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A " + what + " was refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " failed with " + e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.IOException;
+
+/**
+ * A reversible transform of a block of bytes, used as one stage of a
+ * PipelineCodec. Transforms don't compress anything themselves: they rearrange
+ * the data so that the stages after them, and finally an EntropyCoder, can.
+ * Like Codecs they hold no state between calls.
+ */
+public interface BlockTransform {
+
+	/**
+	 * Number identifying this transform in a stream.
+	 */
+	int id();
+
+	/**
+	 * Name to show to the user.
+	 */
+	String getName();
+
+	/**
+	 * Transforms a block.
+	 */
+	byte[] forward(byte[] block);
+
+	/**
+	 * Undoes forward.
+	 *
+	 * @throws IOException if the block is corrupt
+	 */
+	byte[] inverse(byte[] block) throws IOException;
+
+	/**
+	 * Most bytes forward can turn a block of the given length into.
+	 */
+	default long maxForwardLength(long length) {
+		return length;
+	}
+
+	/**
+	 * Undoes forward, failing rather than producing more than maxLength bytes,
+	 * the most that could have gone into forward. Transforms whose output can
+	 * be much bigger than their input should check as they go.
+	 *
+	 * @throws IOException if the block is corrupt
+	 */
+	default byte[] inverse(byte[] block, long maxLength) throws IOException {
+		byte[] result = inverse(block);
+		if (result.length > maxLength) {
+			throw new IOException(getName() + " block decoded to more bytes than went in.");
+		}
+		return result;
+	}
+}
@@ -12,28 +12,30 @@ public class BoyerMoore {
 
 	/**
 	 * Primary method for BoyerMoore string search. 
+	 * The text is read through charAt rather than copied into an array, so it can
+	 * be any CharSequence, such as a view of a Swing Document.
 	 * @param pattern
 	 * @param text
 	 * @return
 	 */
-	public static int search(String pattern, String text) {
+	public static int search(String pattern, CharSequence text) {
 
 		// Handle Empty / null String
 		if (pattern.length() == 0 || pattern == null) {
 			return 0;
 		}
 
-		// Create char arrays for easier handling
+		// Create a char array for the pattern for easier handling
 		char p[] = pattern.toCharArray();
-		char t[] = text.toCharArray();
+		int tLength = text.length();
 
 		// Create tables
 		int jumpTable[] = createJumpTable(p);
 		int badCharTable[] = createBadCharTable(p);
 
 		// Search loop
-		for (int i = p.length - 1, j; i < t.length;) {
-			for (j = p.length - 1; p[j] == t[i]; --i, --j) {
+		for (int i = p.length - 1, j; i < tLength;) {
+			for (j = p.length - 1; p[j] == text.charAt(i); --i, --j) {
 				if (j == 0) {
 					// If inner loop completes and j == 0 --> We found a match, return start index
 					return i;
@@ -41,7 +43,7 @@ public class BoyerMoore {
 			}
 			// If no match found, determine the max no of chars to jump ahead
 			// Based on badChar rule & goodSuffix rule
-			i += Math.max(badCharTable[p.length - 1 - j], jumpTable[t[i]]);
+			i += Math.max(badCharTable[p.length - 1 - j], jumpTable[text.charAt(i)]);
 		}
 		// We didn't find a match.
 		return -1;
@@ -66,8 +68,9 @@ public class BoyerMoore {
 		for (int i = 0; i < table.length; ++i) {
 			table[i] = p.length;
 		}
-		// Determine the jump value for each char in p
-		for (int i = 0; i < p.length; ++i) {
+		// Determine the jump value for each char in p, leaving out the last char,
+		// which would otherwise get a jump of 0
+		for (int i = 0; i < p.length - 1; ++i) {
 			table[p[i]] = p.length - 1 - i;
 		}
 
@@ -96,7 +99,7 @@ public class BoyerMoore {
 
 		for (int i = 0; i < p.length - 1; ++i) {
 			int suffixLen = suffixLen(p, i);
-			table[suffixLen] = p.length - 1 - 1 + suffixLen;
+			table[suffixLen] = p.length - 1 - i + suffixLen;
 		}
 		return table;
 	}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+
+public class BoyerMooreTest {
+    public static void main(String[] args) throws IOException, BadLocationException {
+        // Test cases, edge cases against String.indexOf, then random texts over
+        // small alphabets, where repeated suffixes and prefixes exercise the
+        // good suffix table
+        String[][] cases = { { "a", "" }, { "abc", "ab" }, { "a", "a" }, { "aa", "aaaa" }, { "aba", "abababa" },
+                { "abcab", "xxabcabcabxx" }, { "needle", "haystack" }, { "\uD83D\uDE00", "smile \uD83D\uDE00" } };
+        for (String[] c : cases) {
+            check(c[0], c[1]);
+        }
+        Random random = new Random(261);
+        int wrong = 0;
+        for (int i = 0; i < 40000; i++) {
+            String alphabet = i % 2 == 0 ? "ab" : "abcd";
+            String text = randomString(random, alphabet, random.nextInt(200));
+            String pattern = randomString(random, alphabet, 1 + random.nextInt(8));
+            if (BoyerMoore.search(pattern, text) != text.indexOf(pattern)) {
+                if (wrong++ < 5) {
+                    System.out.println("Wrong!! \"" + pattern + "\" in \"" + text + "\" found at "
+                            + BoyerMoore.search(pattern, text) + ", expected " + text.indexOf(pattern));
+                }
+            }
+        }
+        if (wrong == 0) {
+            System.out.println("OK!! 40000 random patterns found where indexOf finds them");
+        }
+
+        // A pattern whose last char repeats earlier, which the book showed the
+        // tables getting wrong, searched in the text and in a Swing document
+        Path book = Paths.get("war_and_peace.txt");
+        if (!Files.exists(book)) {
+            book = Paths.get("..", "war_and_peace.txt");
+        }
+        if (!Files.exists(book)) {
+            System.out.println("war_and_peace.txt not found, skipping the book searches");
+            return;
+        }
+        String text = new String(Files.readAllBytes(book), StandardCharsets.UTF_8);
+        PlainDocument document = new PlainDocument();
+        document.insertString(0, text, null);
+        DocumentCharSequence inPlace = new DocumentCharSequence(document);
+        for (String pattern : new String[] { "Prince Andrew", "Natasha", "Borodino", "Moscow.", "xyzzy" }) {
+            int expected = text.indexOf(pattern);
+            int match = BoyerMoore.search(pattern, text);
+            int documentMatch = BoyerMoore.search(pattern, inPlace);
+            if (match == expected && documentMatch == expected) {
+                System.out.println("OK!! \"" + pattern + "\" matched at a correct position " + match);
+            } else {
+                System.out.println("Wrong!! \"" + pattern + "\" matched at " + match + " and " + documentMatch
+                        + " in the document, expected at: " + expected);
+            }
+        }
+    }
+
+    private static void check(String pattern, String text) {
+        int expected = text.indexOf(pattern);
+        int match = BoyerMoore.search(pattern, text);
+        if (match == expected) {
+            System.out.println("OK!! \"" + pattern + "\" in \"" + text + "\" matched at " + match);
+        } else {
+            System.out.println("Wrong!! \"" + pattern + "\" in \"" + text + "\" matched at " + match
+                    + ", expected at: " + expected);
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * The Burrows-Wheeler transform: sorts every rotation of the block and keeps
+ * the last byte of each. Bytes that come before similar contexts end up next
+ * to each other, so the output is full of runs that move-to-front turns into
+ * small numbers. The sort is a suffix array of the block with a sentinel on the
+ * end (see SuffixArray), and the output is the row the sentinel lands in
+ * followed by the other rows' last bytes.
+ */
+public class BurrowsWheeler implements BlockTransform {
+
+	static final int ID = 1;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return "Burrows-Wheeler";
+	}
+
+	@Override
+	public byte[] forward(byte[] block) {
+		int[] sa = SuffixArray.build(block);
+
+		// The row of the suffix starting at 0 has the sentinel as its last byte, so
+		// it is left out and its position recorded instead
+		byte[] last = new byte[block.length];
+		int primary = 0;
+		for (int row = 0, i = 0; row < sa.length; row++) {
+			if (sa[row] == 0) {
+				primary = row;
+			} else {
+				last[i++] = block[sa[row] - 1];
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(block.length + 5);
+		try {
+			VarInt.write(out, primary);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		out.write(last, 0, last.length);
+		return out.toByteArray();
+	}
+
+	@Override
+	public long maxForwardLength(long length) {
+		// The primary index, as a VarInt
+		return length + 5;
+	}
+
+	@Override
+	public byte[] inverse(byte[] block) throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(block);
+		int primary = VarInt.readInt(in);
+		byte[] last = new byte[in.available()];
+		in.read(last, 0, last.length);
+		int n = last.length;
+		if (primary > n || (n > 0 && primary == 0)) {
+			throw new IOException("Invalid Burrows-Wheeler primary index: " + primary);
+		}
+
+		// Where each byte value's rows start in the sorted first column, after the
+		// sentinel's row
+		int[] starts = new int[257];
+		for (byte b : last) {
+			starts[(b & 0xFF) + 1]++;
+		}
+		starts[0] = 1;
+		for (int c = 1; c < starts.length; c++) {
+			starts[c] += starts[c - 1];
+		}
+
+		// The row each row's rotation moves to when shifted right by one (the
+		// last-to-first mapping), skipping the sentinel's row
+		int[] next = new int[n];
+		for (int i = 0; i < n; i++) {
+			next[i] = starts[last[i] & 0xFF]++;
+		}
+
+		// Row 0 is the sentinel followed by the whole block, so its last byte is
+		// the block's last byte; walk back from there
+		byte[] data = new byte[n];
+		int row = 0;
+		for (int k = n - 1; k >= 0; k--) {
+			int i = row < primary ? row : row - 1;
+			data[k] = last[i];
+			row = next[i];
+		}
+		return data;
+	}
+}
@@ -0,0 +1,112 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BwtPipelineTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, the classic banana example, long runs, empty input and
+        // random bytes
+        Random random = new Random(261);
+        byte[] noise = new byte[5000];
+        random.nextBytes(noise);
+        byte[] runs = new byte[20000];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = (byte) (i / 1000 % 3 == 0 ? 0 : 255 - i / 7000);
+        }
+        byte[][] inputs = { "banana".getBytes(StandardCharsets.US_ASCII),
+                "abracadabra abracadabra abracadabra".getBytes(StandardCharsets.US_ASCII), new byte[0],
+                new byte[] { 7 }, runs, noise };
+
+        // The suffix array should match a plain sort of the suffixes
+        for (byte[] input : inputs) {
+            int[] sa = SuffixArray.build(input);
+            Integer[] expected = new Integer[input.length + 1];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = i;
+            }
+            Arrays.sort(expected, (a, b) -> compareSuffixes(input, a, b));
+            if (Arrays.equals(sa, Arrays.stream(expected).mapToInt(Integer::intValue).toArray())) {
+                System.out.println("OK!! Suffix array of " + input.length + " bytes is sorted");
+            } else {
+                System.out.println("Wrong!! Suffix array of " + input.length + " bytes is not sorted");
+            }
+        }
+
+        // The transform of banana is the textbook one
+        byte[] bwt = new BurrowsWheeler().forward("banana".getBytes(StandardCharsets.US_ASCII));
+        String last = new String(bwt, 1, bwt.length - 1, StandardCharsets.US_ASCII);
+        System.out.println((last.equals("annbaa") && bwt[0] == 4 ? "OK!! " : "Wrong!! ")
+                + "Burrows-Wheeler of banana is " + last + " with the sentinel in row " + bwt[0]);
+
+        // Every input should come back from the whole pipeline, with small
+        // blocks so there are several of them
+        Codec codec = new PipelineCodec("test pipeline", "test", ".test", 4096, new HuffmanEntropyCoder(),
+                new BurrowsWheeler(), new MoveToFront(), new ZeroRunLength());
+        for (byte[] input : inputs) {
+            byte[] compressed = codec.compress(input);
+            if (Arrays.equals(input, codec.decompress(compressed))) {
+                System.out.println("OK!! " + input.length + " bytes -> " + compressed.length + " bytes and back");
+            } else {
+                System.out.println("Wrong!! " + input.length + " bytes did not decompress to the original");
+            }
+        }
+
+        // A corrupt run of a billion zeros should be refused, not decoded
+        byte[] hugeRun = new byte[31];
+        Arrays.fill(hugeRun, (byte) 1);
+        try {
+            new ZeroRunLength().inverse(hugeRun, 1000);
+            System.out.println("Wrong!! A zero run longer than the block was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A zero run longer than the block was refused");
+        }
+
+        // Damaged block directories should be refused with an IOException,
+        // before anything is allocated from them
+        byte[] header = Arrays.copyOf(codec.compress(inputs[0]), 9);
+        expectFailure(codec, "huge block count", directory(header, Integer.MAX_VALUE, 10, 4));
+        expectFailure(codec, "block longer than the block size", directory(header, 1, 4097, 4));
+        expectFailure(codec, "huge block length", directory(header, 1, Integer.MAX_VALUE, 4));
+        expectFailure(codec, "huge encoded size", directory(header, 1, 10, Integer.MAX_VALUE));
+        expectFailure(codec, "zero size encoded block", directory(header, 1, 10, 0));
+    }
+
+    /**
+     * The header followed by a directory of the given numbers, and a few bytes.
+     */
+    private static byte[] directory(byte[] header, int... numbers) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header);
+        for (int number : numbers) {
+            VarInt.write(out, number);
+        }
+        out.write(new byte[4]);
+        return out.toByteArray();
+    }
+
+    private static void expectFailure(Codec codec, String what, byte[] file) {
+        try {
+            codec.decompress(file);
+            System.out.println("Wrong!! A " + what + " was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A " + what + " was refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " failed with " + e);
+        }
+    }
+
+    private static int compareSuffixes(byte[] data, int a, int b) {
+        while (a < data.length && b < data.length) {
+            int difference = (data[a] & 0xFF) - (data[b] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+            a++;
+            b++;
+        }
+        // the shorter suffix hits the sentinel first
+        return (data.length - a) - (data.length - b);
+    }
+}
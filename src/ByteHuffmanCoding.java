@@ -0,0 +1,96 @@
+/**
+ * Huffman coding over a byte alphabet, for binary-ish data where each byte is a
+ * symbol. Works directly on byte arrays, with the frequencies, code table and
+ * decode table all indexed by the byte value, so there are no Strings or boxed
+ * values anywhere in the encode and decode loops.
+ */
+public class ByteHuffmanCoding {
+
+	static final int ALPHABET_SIZE = 256;
+
+	CanonicalCode code;
+	HuffmanDecoder decoder;
+	int[] frequencies;
+
+	/**
+	 * Builds the code for the data.
+	 */
+	public ByteHuffmanCoding(byte[] data) {
+		this(data, 0);
+	}
+
+	/**
+	 * Builds the code for the data with no code longer than maxCodeLength bits.
+	 *
+	 * @param maxCodeLength longest code allowed, or 0 for no limit
+	 */
+	public ByteHuffmanCoding(byte[] data, int maxCodeLength) {
+		// Handle obvious errors
+		if (data == null || data.length == 0) {throw new IllegalArgumentException("Empty / null data.");}
+
+		frequencies = countFrequencies(data, 0, data.length);
+		int[] lengths = CodeLengths.huffman(frequencies);
+		code = new CanonicalCode(lengths);
+		if (maxCodeLength > 0 && code.maxLength > maxCodeLength) {
+			code = new CanonicalCode(CodeLengths.limited(frequencies, maxCodeLength));
+		}
+	}
+
+	/**
+	 * Counts the bytes in data[from, to).
+	 */
+	static int[] countFrequencies(byte[] data, int from, int to) {
+		int[] frequencies = new int[ALPHABET_SIZE];
+		for (int i = from; i < to; i++) {
+			frequencies[data[i] & 0xFF]++;
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Encodes the data into packed bits, 8 to a byte.
+	 */
+	public byte[] encode(byte[] data) {
+		BitWriter writer = new BitWriter(code.encodedBits(countFrequencies(data, 0, data.length)));
+		long[] codes = code.codes;
+		int[] lengths = code.lengths;
+		for (byte b : data) {
+			int symbol = b & 0xFF;
+			if (lengths[symbol] == 0) {
+				throw new IllegalArgumentException("Symbol not in the code: " + symbol);
+			}
+			writer.write(codes[symbol], lengths[symbol]);
+		}
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Decodes packed bits produced by encode.
+	 *
+	 * @param packed the encoded bits
+	 * @param length number of bytes that were encoded
+	 */
+	public byte[] decode(byte[] packed, int length) {
+		if (decoder == null) {
+			decoder = new HuffmanDecoder(code);
+		}
+		byte[] data = new byte[length];
+		BitReader reader = new BitReader(packed);
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) decoder.decodeSymbol(reader);
+		}
+		return data;
+	}
+
+	/**
+	 * Some statistics about the code.
+	 */
+	public String getInformation() {
+		long total = 0;
+		for (int f : frequencies) {
+			total += f;
+		}
+		return "symbols: " + code.size() + "\n" + "longest code: " + code.maxLength + " bits\n"
+				+ String.format("average code: %.3f bits per byte%n", (double) code.encodedBits(frequencies) / total);
+	}
+}
@@ -0,0 +1,47 @@
+import java.util.Arrays;
+import java.util.Random;
+
+public class ByteHuffmanTest {
+    public static void main(String[] args) {
+        // Test cases, a single byte, one value repeated, all 256 byte values,
+        // random noise, and Fibonacci frequencies, whose codes get very long
+        Random random = new Random(261);
+        byte[] allBytes = new byte[256];
+        for (int i = 0; i < allBytes.length; i++) {
+            allBytes[i] = (byte) i;
+        }
+        byte[] noise = new byte[100000];
+        random.nextBytes(noise);
+        byte[] fibonacci = new byte[0];
+        for (int symbol = 0, a = 1, b = 1; symbol < 25; symbol++) {
+            int start = fibonacci.length;
+            fibonacci = Arrays.copyOf(fibonacci, start + a);
+            Arrays.fill(fibonacci, start, fibonacci.length, (byte) symbol);
+            int next = a + b;
+            a = b;
+            b = next;
+        }
+        byte[][] inputs = { { 42 }, new byte[1000], allBytes, noise, fibonacci };
+
+        // Every input should come back, with and without a length limit
+        for (byte[] input : inputs) {
+            for (int maxCodeLength : new int[] { 0, 12 }) {
+                ByteHuffmanCoding coding = new ByteHuffmanCoding(input, maxCodeLength);
+                byte[] packed = coding.encode(input);
+                boolean same = Arrays.equals(input, coding.decode(packed, input.length));
+                boolean limited = maxCodeLength == 0 || coding.code.maxLength <= maxCodeLength;
+                System.out.println((same && limited ? "OK!! " : "Wrong!! ") + input.length + " bytes, "
+                        + coding.code.size() + " symbols, longest code " + coding.code.maxLength + " bits -> "
+                        + packed.length + " bytes and back");
+            }
+        }
+
+        // A byte the code wasn't built for can't be encoded
+        try {
+            new ByteHuffmanCoding(new byte[] { 1, 2 }).encode(new byte[] { 3 });
+            System.out.println("Wrong!! A byte not in the code was encoded");
+        } catch (IllegalArgumentException e) {
+            System.out.println("OK!! A byte not in the code was refused: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * A canonical Huffman code. The code is fully described by the length of the
+ * code for each symbol: symbols are ordered by code length and then by value,
+ * and are handed consecutive codes in that order. This lets an encoder look up
+ * the bits for a symbol in O(1), and lets the code be stored or sent as just the
+ * list of lengths.
+ */
+public class CanonicalCode {
+
+	// Longest code allowed, the most bits BitReader can look ahead at once
+	static final int MAX_LENGTH = 57;
+
+	// Code length of each symbol, 0 if the symbol is not used
+	final int[] lengths;
+
+	// Code bits of each symbol, right aligned (the last bit of the code is bit 0)
+	final long[] codes;
+
+	// The used symbols in canonical order (by length, then by value)
+	final int[] symbols;
+
+	// Length of the longest code
+	final int maxLength;
+
+	/**
+	 * Assigns canonical codes to every symbol with a non-zero length.
+	 *
+	 * @param lengths code length of each symbol, indexed by symbol value
+	 */
+	public CanonicalCode(int[] lengths) {
+		this.lengths = lengths;
+		this.codes = new long[lengths.length];
+
+		// Count how many codes there are of each length
+		int max = 0;
+		int used = 0;
+		for (int len : lengths) {
+			if (len < 0 || len > MAX_LENGTH) {
+				throw new IllegalArgumentException("Invalid code length: " + len);
+			}
+			if (len > 0) {
+				max = Math.max(max, len);
+				used++;
+			}
+		}
+		int[] lengthCounts = new int[max + 1];
+		for (int len : lengths) {
+			if (len > 0) {
+				lengthCounts[len]++;
+			}
+		}
+		this.maxLength = max;
+
+		// Work out the first code of each length, and where that length starts in
+		// the canonical symbol order. Lengths that over-subscribe the code space
+		// can't form a prefix code; checking at every length also keeps the codes
+		// from overflowing.
+		long[] nextCode = new long[max + 1];
+		int[] nextIndex = new int[max + 1];
+		long code = 0;
+		int index = 0;
+		for (int len = 1; len <= max; len++) {
+			code = (code + lengthCounts[len - 1]) << 1;
+			if (code + lengthCounts[len] > (1L << len)) {
+				throw new IllegalArgumentException("Code lengths do not form a prefix code.");
+			}
+			nextCode[len] = code;
+			nextIndex[len] = index;
+			index += lengthCounts[len];
+		}
+
+		// Hand out codes to symbols in order of value within each length
+		this.symbols = new int[used];
+		for (int s = 0; s < lengths.length; s++) {
+			int len = lengths[s];
+			if (len > 0) {
+				codes[s] = nextCode[len]++;
+				symbols[nextIndex[len]++] = s;
+			}
+		}
+	}
+
+	/**
+	 * Number of symbols that have a code.
+	 */
+	public int size() {
+		return symbols.length;
+	}
+
+	/**
+	 * The code length of the symbol, or 0 if it has no code.
+	 */
+	public int length(int symbol) {
+		return lengths[symbol];
+	}
+
+	/**
+	 * The code bits of the symbol, right aligned.
+	 */
+	public long code(int symbol) {
+		return codes[symbol];
+	}
+
+	/**
+	 * Total number of bits needed to encode symbols with the given frequencies.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value
+	 */
+	public long encodedBits(int[] frequencies) {
+		long bits = 0;
+		for (int s = 0; s < frequencies.length; s++) {
+			bits += (long) frequencies[s] * lengths[s];
+		}
+		return bits;
+	}
+}
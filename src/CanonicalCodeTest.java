@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+public class CanonicalCodeTest {
+    public static void main(String[] args) {
+        // Complete and incomplete prefix codes, including the longest lengths
+        // allowed, should be accepted with consecutive codes in canonical order
+        int max = CanonicalCode.MAX_LENGTH;
+        int[][] valid = { { 1 }, { 1, 1 }, { 2, 1, 3, 3 }, { 3, 3, 3 }, { 1, max, max }, { 0, 2, 0, 2, 2, 2 } };
+        for (int[] lengths : valid) {
+            try {
+                CanonicalCode code = new CanonicalCode(lengths);
+                boolean prefixFree = true;
+                for (int a = 0; a < lengths.length; a++) {
+                    for (int b = 0; b < lengths.length; b++) {
+                        if (a != b && lengths[a] > 0 && lengths[b] >= lengths[a]) {
+                            prefixFree &= code.codes[b] >>> (lengths[b] - lengths[a]) != code.codes[a];
+                        }
+                    }
+                }
+                System.out.println((prefixFree ? "OK!! " : "Wrong!! ") + Arrays.toString(lengths)
+                        + " gave codes " + Arrays.toString(code.codes));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Wrong!! " + Arrays.toString(lengths) + " was refused: " + e.getMessage());
+            }
+        }
+
+        // Over-subscribed lengths, lengths too long for BitReader, and enough
+        // short codes that the codes of the longest length would overflow a long
+        int[] overflow = new int[1000001];
+        Arrays.fill(overflow, 1);
+        overflow[1000000] = max;
+        int[][] invalid = { { 1, 1, 1 }, { 2, 2, 2, 2, 2 }, { 1, 63, 63 }, { 64 }, { -1 }, { max + 1 }, overflow };
+        for (int[] lengths : invalid) {
+            String name = lengths.length > 10 ? lengths.length + " lengths" : Arrays.toString(lengths);
+            try {
+                new CanonicalCode(lengths);
+                System.out.println("Wrong!! " + name + " was accepted");
+            } catch (IllegalArgumentException e) {
+                System.out.println("OK!! " + name + " was refused: " + e.getMessage());
+            }
+        }
+    }
+}
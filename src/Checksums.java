@@ -0,0 +1,421 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum trailers on compressed files, so a file can be checked by decoding
+ * it once into a checksum rather than holding the original and the decoded
+ * copy side by side and comparing them.
+ *
+ * The trailer is 16 bytes after the codec's own output: TRAILER_MAGIC, the
+ * length of the original data and its CRC32C. The checksum is worked out as
+ * the original is read for encoding. CRC32C is used as the JVM computes it
+ * with the processor's CRC instructions where there are any. Files without a
+ * trailer still decompress, they just can't be checked.
+ */
+public class Checksums {
+
+	/**
+	 * How much checking to do after compressing: none, decode the output and
+	 * check the checksum, or decode the output and compare it with the original.
+	 */
+	public enum Verification {
+		OFF, CHECKSUM, FULL;
+
+		/**
+		 * The verification named on the command line.
+		 *
+		 * @throws IllegalArgumentException if there is no such verification
+		 */
+		static Verification parse(String name) {
+			for (Verification verification : values()) {
+				if (verification.toString().equals(name)) {
+					return verification;
+				}
+			}
+			throw new IllegalArgumentException("Unknown verification: " + name);
+		}
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	// Marks the trailer, "C32C"
+	private static final int TRAILER_MAGIC = 0x43333243;
+	static final int TRAILER_BYTES = 16;
+
+	private Checksums() {
+	}
+
+	/**
+	 * A new checksum of the kind the trailer holds.
+	 */
+	public static Checksum newChecksum() {
+		return new CRC32C();
+	}
+
+	/**
+	 * Compresses in to out with the codec, followed by a trailer.
+	 */
+	public static void compress(Codec codec, InputStream in, OutputStream out) throws IOException {
+		Checksum checksum = newChecksum();
+		CountingInputStream counted = new CountingInputStream(new CheckedInputStream(in, checksum));
+		codec.compress(counted, out);
+		// Anything the codec left unread wasn't encoded, so must not be counted
+		if (counted.read() >= 0) {
+			throw new IOException(codec.getName() + " did not read all of its input.");
+		}
+		writeTrailer(out, counted.count, checksum.getValue());
+	}
+
+	/**
+	 * Writes a trailer for original data of the given length and checksum.
+	 */
+	public static void writeTrailer(OutputStream out, long length, long checksum) throws IOException {
+		DataOutputStream stream = new DataOutputStream(out);
+		stream.writeInt(TRAILER_MAGIC);
+		stream.writeLong(length);
+		stream.writeInt((int) checksum);
+		stream.flush();
+	}
+
+	/**
+	 * Decompresses in, written by compress, to out with the codec. If verify is
+	 * set and the file has a trailer, the decoded data is checked against it.
+	 *
+	 * @return whether the data was checked
+	 * @throws IOException if the data is corrupt or doesn't match its checksum
+	 */
+	public static boolean decompress(Codec codec, InputStream in, OutputStream out, boolean verify)
+			throws IOException {
+		TrailerInputStream stream = new TrailerInputStream(in);
+		Checksum checksum = newChecksum();
+		CheckedOutputStream checked = new CheckedOutputStream(out, verify ? checksum : null);
+		codec.decompress(stream, checked);
+		checked.flush();
+
+		if (!verify || !stream.finish()) {
+			return false;
+		}
+		if (checked.count != stream.originalLength || (int) checksum.getValue() != stream.originalChecksum) {
+			throw new IOException("Checksum mismatch, the " + codec.getName() + " file is corrupt.");
+		}
+		return true;
+	}
+
+	/**
+	 * Decompresses in, written by compress, keeping nothing but the checksum of
+	 * the decoded data, and checks it against the trailer.
+	 *
+	 * @return whether the checksum matched
+	 * @throws IOException if the data is corrupt or has no trailer
+	 */
+	public static boolean verify(Codec codec, InputStream in) throws IOException {
+		TrailerInputStream stream = new TrailerInputStream(in);
+		Checksum checksum = newChecksum();
+		CheckedOutputStream checked = new CheckedOutputStream(OutputStream.nullOutputStream(), checksum);
+		codec.decompress(stream, checked);
+		if (!stream.finish()) {
+			throw new IOException("The " + codec.getName() + " file has no checksum.");
+		}
+		return checked.count == stream.originalLength && (int) checksum.getValue() == stream.originalChecksum;
+	}
+
+	/**
+	 * Decompresses in, written by compress, and compares the decoded data with
+	 * original, a byte at a time as both stream past.
+	 *
+	 * @return whether they match
+	 * @throws IOException if the data is corrupt
+	 */
+	public static boolean matches(Codec codec, InputStream in, InputStream original) throws IOException {
+		ComparingOutputStream compare = new ComparingOutputStream(original);
+		codec.decompress(new TrailerInputStream(in), compare);
+		return compare.matches && original.read() < 0;
+	}
+
+	/**
+	 * Passes everything through but the last TRAILER_BYTES bytes, which are held
+	 * back in case they are a trailer. If they turn out not to be, they are
+	 * passed on once the end of the stream is reached.
+	 */
+	static class TrailerInputStream extends FilterInputStream {
+		private final byte[] held = new byte[TRAILER_BYTES];
+		private final byte[] spare = new byte[TRAILER_BYTES];
+		private final byte[] one = new byte[1];
+		private int heldCount;
+
+		// Once the end is reached, the held bytes still to pass on
+		private boolean ended;
+		private int releasedFrom = TRAILER_BYTES;
+		private int releasedTo = TRAILER_BYTES;
+
+		// The trailer's contents, once found
+		private boolean found;
+		long originalLength;
+		int originalChecksum;
+
+		TrailerInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			while (!ended) {
+				// Fill the held bytes first, then read past them and pass on the oldest
+				if (heldCount < TRAILER_BYTES) {
+					int n = in.read(held, heldCount, TRAILER_BYTES - heldCount);
+					if (n < 0) {
+						end();
+					} else {
+						heldCount += n;
+					}
+					continue;
+				}
+				int n = in.read(buffer, offset, length);
+				if (n < 0) {
+					end();
+					continue;
+				}
+				if (n == 0) {
+					return 0;
+				}
+				// The n bytes just read go after the held ones, so pass on the first
+				// n of held + read and keep the last TRAILER_BYTES
+				if (n >= TRAILER_BYTES) {
+					System.arraycopy(buffer, offset + n - TRAILER_BYTES, spare, 0, TRAILER_BYTES);
+					System.arraycopy(buffer, offset, buffer, offset + TRAILER_BYTES, n - TRAILER_BYTES);
+					System.arraycopy(held, 0, buffer, offset, TRAILER_BYTES);
+					System.arraycopy(spare, 0, held, 0, TRAILER_BYTES);
+				} else {
+					System.arraycopy(buffer, offset, spare, 0, n);
+					System.arraycopy(held, 0, buffer, offset, n);
+					System.arraycopy(held, n, held, 0, TRAILER_BYTES - n);
+					System.arraycopy(spare, 0, held, TRAILER_BYTES - n, n);
+				}
+				return n;
+			}
+			if (releasedFrom == releasedTo) {
+				return -1;
+			}
+			int n = Math.min(length, releasedTo - releasedFrom);
+			System.arraycopy(held, releasedFrom, buffer, offset, n);
+			releasedFrom += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			long skipped = 0;
+			int read;
+			while (skipped < n && (read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length))) > 0) {
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return ended ? releasedTo - releasedFrom : Math.max(0, in.available() - (TRAILER_BYTES - heldCount));
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * Reads up to the end, and returns whether there was a trailer.
+		 */
+		boolean finish() throws IOException {
+			byte[] buffer = new byte[8192];
+			while (read(buffer, 0, buffer.length) >= 0) {
+				// Bytes the codec left unread
+			}
+			return found;
+		}
+
+		private void end() throws IOException {
+			ended = true;
+			if (heldCount == TRAILER_BYTES) {
+				DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(held));
+				if (trailer.readInt() == TRAILER_MAGIC) {
+					found = true;
+					originalLength = trailer.readLong();
+					originalChecksum = trailer.readInt();
+					return;
+				}
+			}
+			releasedFrom = 0;
+			releasedTo = heldCount;
+		}
+	}
+
+	/**
+	 * A checksum that also counts the bytes added to it, for when the bytes are
+	 * handed to a checksum rather than read through a stream.
+	 */
+	static class CountingChecksum implements Checksum {
+		private final Checksum checksum;
+		long count;
+
+		CountingChecksum(Checksum checksum) {
+			this.checksum = checksum;
+		}
+
+		@Override
+		public void update(int b) {
+			checksum.update(b);
+			count++;
+		}
+
+		@Override
+		public void update(byte[] buffer, int offset, int length) {
+			checksum.update(buffer, offset, length);
+			count += length;
+		}
+
+		@Override
+		public void update(ByteBuffer buffer) {
+			count += buffer.remaining();
+			checksum.update(buffer);
+		}
+
+		@Override
+		public long getValue() {
+			return checksum.getValue();
+		}
+
+		@Override
+		public void reset() {
+			checksum.reset();
+			count = 0;
+		}
+	}
+
+	/**
+	 * Counts the bytes read through it.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int n = super.read(buffer, offset, length);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Skipped bytes would be missed by the checksum
+			return 0;
+		}
+	}
+
+	/**
+	 * Counts, and optionally checksums, the bytes written through it.
+	 */
+	static class CheckedOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final Checksum checksum;
+		long count;
+
+		CheckedOutputStream(OutputStream out, Checksum checksum) {
+			this.out = out;
+			this.checksum = checksum;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (checksum != null) {
+				checksum.update(b);
+			}
+			count++;
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			out.write(buffer, offset, length);
+			if (checksum != null) {
+				checksum.update(buffer, offset, length);
+			}
+			count += length;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Compares the bytes written to it with the bytes of another stream.
+	 */
+	private static class ComparingOutputStream extends OutputStream {
+		private final InputStream expected;
+		private byte[] buffer = new byte[0];
+		boolean matches = true;
+
+		ComparingOutputStream(InputStream expected) {
+			this.expected = expected;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			if (!matches) {
+				return;
+			}
+			if (buffer.length < length) {
+				buffer = new byte[Math.min(length, 1 << 16)];
+			}
+			while (length > 0 && matches) {
+				int n = expected.readNBytes(buffer, 0, Math.min(length, buffer.length));
+				matches = n > 0 && Arrays.equals(buffer, 0, n, data, offset, offset + n);
+				offset += n;
+				length -= n;
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+public class ChecksumsTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, empty, shorter than a trailer, exactly a trailer long,
+        // random bytes, and data with the trailer's magic number in the middle
+        Random random = new Random(261);
+        byte[] noise = new byte[100000];
+        random.nextBytes(noise);
+        byte[] magic = new byte[64];
+        magic[20] = 'C';
+        magic[21] = '3';
+        magic[22] = '2';
+        magic[23] = 'C';
+        byte[][] inputs = { new byte[0], { 1, 2, 3 }, new byte[15], new byte[16], noise, magic };
+
+        // The trailer stream should hold back exactly a trailer, however it is read
+        for (byte[] input : inputs) {
+            byte[] withTrailer = withTrailer(input);
+            boolean same = true;
+            for (int chunk : new int[] { 1, 7, 16, 17, 8192 }) {
+                same &= Arrays.equals(input, readAll(new Checksums.TrailerInputStream(
+                        new ByteArrayInputStream(withTrailer)), chunk));
+            }
+            System.out.println((same ? "OK!! " : "Wrong!! ") + input.length + " bytes read back without their trailer");
+        }
+
+        // Old files without a trailer, including ones shorter than a trailer,
+        // should pass straight through
+        for (byte[] input : inputs) {
+            byte[] read = readAll(new Checksums.TrailerInputStream(new ByteArrayInputStream(input)), 5);
+            System.out.println((Arrays.equals(input, read) ? "OK!! " : "Wrong!! ") + input.length
+                    + " bytes without a trailer passed through");
+        }
+
+        // Round trips through a codec, and what happens when the trailer is damaged
+        Codec codec = Codec.forId("adaptive");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Checksums.compress(codec, new ByteArrayInputStream(noise), out);
+        byte[] file = out.toByteArray();
+        System.out.println((Checksums.verify(codec, new ByteArrayInputStream(file)) ? "OK!! " : "Wrong!! ")
+                + "Checksum matches the decoded data");
+        System.out.println((Checksums.matches(codec, new ByteArrayInputStream(file), new ByteArrayInputStream(noise))
+                ? "OK!! " : "Wrong!! ") + "Decoded data matches the original");
+
+        byte[] badChecksum = file.clone();
+        badChecksum[badChecksum.length - 1] ^= 1;
+        System.out.println((Checksums.verify(codec, new ByteArrayInputStream(badChecksum)) ? "Wrong!! " : "OK!! ")
+                + "A damaged checksum is noticed");
+        byte[] badLength = file.clone();
+        badLength[badLength.length - 5] ^= 1;
+        try {
+            Checksums.decompress(codec, new ByteArrayInputStream(badLength), new ByteArrayOutputStream(), true);
+            System.out.println("Wrong!! A damaged length was not noticed");
+        } catch (IOException e) {
+            System.out.println("OK!! A damaged length is noticed: " + e.getMessage());
+        }
+        ByteArrayOutputStream old = new ByteArrayOutputStream();
+        codec.compress(new ByteArrayInputStream(noise), old);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        boolean checked = Checksums.decompress(codec, new ByteArrayInputStream(old.toByteArray()), decoded, true);
+        System.out.println((!checked && Arrays.equals(noise, decoded.toByteArray()) ? "OK!! " : "Wrong!! ")
+                + "A file without a trailer decodes without being checked");
+
+        // Each verification mode of a compression job
+        File input = File.createTempFile("checksums", ".txt");
+        File output = new File(input.getPath() + ".huf");
+        input.deleteOnExit();
+        output.deleteOnExit();
+        Files.writeString(input.toPath(), "the cat sat on the mat, then the other cat sat there.\n".repeat(100));
+        String[] expected = { "not verified", "matches the CRC32C", "original and decoded texts match" };
+        for (Checksums.Verification verification : Checksums.Verification.values()) {
+            String report = new CompressionTask("Huffman coding", input, output, verification)
+                    .run(ProgressListener.NONE);
+            String wanted = expected[verification.ordinal()];
+            System.out.println((report.contains(wanted) ? "OK!! " : "Wrong!! ") + "verify " + verification
+                    + " reports " + wanted);
+        }
+
+        // Every algorithm should manage an empty file
+        Files.write(input.toPath(), new byte[0]);
+        for (String algorithm : CompressionTask.ALGORITHMS) {
+            try {
+                String report = new CompressionTask(algorithm, input, output).run(ProgressListener.NONE);
+                System.out.println((report.contains("matches the CRC32C") ? "OK!! " : "Wrong!! ") + algorithm
+                        + " runs on an empty file");
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Wrong!! " + algorithm + " failed on an empty file with " + e);
+            }
+        }
+    }
+
+    private static byte[] withTrailer(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(data);
+        Checksum checksum = Checksums.newChecksum();
+        checksum.update(data, 0, data.length);
+        Checksums.writeTrailer(out, data.length, checksum.getValue());
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in, int chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[chunk];
+        int n;
+        while ((n = chunk == 1 ? single(in, buffer) : in.read(buffer, 0, chunk)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static int single(InputStream in, byte[] buffer) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+        buffer[0] = (byte) b;
+        return 1;
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.Arrays;
+
+/**
+ * Works out code lengths for a prefix code from symbol frequencies.
+ */
+public class CodeLengths {
+
+	private CodeLengths() {
+	}
+
+	/**
+	 * Unrestricted Huffman code lengths for the frequencies. Symbols with a
+	 * frequency of 0 get a length of 0, and a lone symbol gets a length of 1.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value
+	 * @return code length of each symbol, indexed by symbol value
+	 */
+	public static int[] huffman(int[] frequencies) {
+		return huffman(frequencies, 2);
+	}
+
+	/**
+	 * Unrestricted Huffman code lengths for a code with the given number of
+	 * digits (2 for bits, 128 for 7-bit digits and so on). The length is the
+	 * number of digits.
+	 *
+	 * The tree is built in flat arrays rather than out of node objects. The
+	 * symbols are sorted by frequency once, and merged nodes are created in order
+	 * of weight, so the lightest nodes are always at the front of one of two
+	 * sorted queues (the symbols, and the merged nodes). Each merge is then O(1)
+	 * per child. For more than 2 digits, weightless dummy symbols are added so
+	 * that every merge takes exactly arity nodes.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value
+	 * @param arity       number of digits in the code
+	 * @return code length of each symbol, indexed by symbol value
+	 */
+	public static int[] huffman(int[] frequencies, int arity) {
+		if (arity < 2) {
+			throw new IllegalArgumentException("A code needs at least 2 digits.");
+		}
+		int[] lengths = new int[frequencies.length];
+
+		// The symbols, sorted by frequency then symbol
+		long[] sorted = sortedSymbols(frequencies);
+		int n = sorted.length;
+		if (n == 1) {
+			lengths[(int) sorted[0]] = 1;
+		}
+		if (n <= 1) {
+			return lengths;
+		}
+
+		// Nodes 0..leaves-1 are the dummies followed by the symbols, then come the
+		// merged nodes in the order they are made
+		int pad = (arity - 1 - (n - 1) % (arity - 1)) % (arity - 1);
+		int leaves = n + pad;
+		int nodes = leaves + (leaves - 1) / (arity - 1);
+		long[] weight = new long[nodes];
+		int[] parent = new int[nodes];
+		for (int i = 0; i < n; i++) {
+			weight[pad + i] = sorted[i] >>> 32;
+		}
+
+		// Queue heads: next unmerged symbol, and next unmerged merged node
+		int leaf = 0;
+		int internal = leaves;
+		for (int next = leaves; next < nodes; next++) {
+			long sum = 0;
+			for (int child = 0; child < arity; child++) {
+				int a = lightest(weight, leaf, leaves, internal, next);
+				if (a < leaves) {
+					leaf++;
+				} else {
+					internal++;
+				}
+				sum += weight[a];
+				parent[a] = next;
+			}
+			weight[next] = sum;
+		}
+
+		// Parents are always made after their children, so depths can be filled in
+		// from the root down
+		int[] depth = new int[nodes];
+		for (int node = nodes - 2; node >= 0; node--) {
+			depth[node] = depth[parent[node]] + 1;
+		}
+		for (int i = 0; i < n; i++) {
+			lengths[(int) sorted[i]] = depth[pad + i];
+		}
+		return lengths;
+	}
+
+	/**
+	 * The lighter of the heads of the two queues. Ties go to the merged node, which
+	 * is what the original PriorityQueue tree build ended up doing.
+	 * The symbol queue runs up to leafEnd and the merged queue up to internalEnd.
+	 */
+	private static int lightest(long[] weight, int leaf, int leafEnd, int internal, int internalEnd) {
+		if (leaf == leafEnd) {
+			return internal;
+		}
+		if (internal == internalEnd || weight[leaf] < weight[internal]) {
+			return leaf;
+		}
+		return internal;
+	}
+
+	/**
+	 * The used symbols, each packed as (frequency << 32) | symbol and sorted, so
+	 * they are in order of frequency then symbol.
+	 */
+	private static long[] sortedSymbols(int[] frequencies) {
+		int n = 0;
+		for (int f : frequencies) {
+			if (f > 0) {
+				n++;
+			}
+		}
+		long[] sorted = new long[n];
+		n = 0;
+		for (int s = 0; s < frequencies.length; s++) {
+			if (frequencies[s] > 0) {
+				sorted[n++] = ((long) frequencies[s] << 32) | s;
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Optimal code lengths for the frequencies with no code longer than
+	 * maxLength, using the package-merge algorithm. Symbols with a frequency of 0
+	 * get a length of 0.
+	 *
+	 * Package-merge treats every symbol as a coin worth 2^-maxLength... 2^-1. At
+	 * each depth, from the deepest up, the cheapest coins are paired into packages
+	 * which are merged in with the symbols for the next depth up. The cheapest
+	 * 2n - 2 items at the top then say how many times each symbol was picked,
+	 * which is its code length.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value
+	 * @param maxLength   longest code allowed
+	 * @return code length of each symbol, indexed by symbol value
+	 */
+	public static int[] limited(int[] frequencies, int maxLength) {
+		int[] lengths = new int[frequencies.length];
+
+		// Get the used symbols, sorted by frequency
+		long[] sorted = sortedSymbols(frequencies);
+		int n = sorted.length;
+		if (n == 0) {
+			return lengths;
+		}
+		if (n == 1) {
+			lengths[(int) sorted[0]] = 1;
+			return lengths;
+		}
+		if (maxLength < 1 || maxLength < 32 - Integer.numberOfLeadingZeros(n - 1)) {
+			throw new IllegalArgumentException(n + " symbols can't fit in codes of " + maxLength + " bits.");
+		}
+		long[] leafWeights = new long[n];
+		for (int i = 0; i < n; i++) {
+			leafWeights[i] = sorted[i] >>> 32;
+		}
+
+		// For each depth, build the list of items and remember which were packages.
+		// Depth maxLength - 1 is just the symbols.
+		boolean[][] isPackage = new boolean[maxLength][];
+		long[] previous = leafWeights;
+		isPackage[maxLength - 1] = new boolean[n];
+		for (int depth = maxLength - 2; depth >= 0; depth--) {
+			int packages = previous.length / 2;
+			long[] items = new long[n + packages];
+			boolean[] packaged = new boolean[n + packages];
+
+			// Merge the symbols with the packages made from pairs of the previous list,
+			// symbols first on ties
+			int leaf = 0;
+			int pack = 0;
+			for (int i = 0; i < items.length; i++) {
+				long packWeight = pack < packages ? previous[2 * pack] + previous[2 * pack + 1] : Long.MAX_VALUE;
+				if (leaf < n && leafWeights[leaf] <= packWeight) {
+					items[i] = leafWeights[leaf++];
+				} else {
+					items[i] = packWeight;
+					packaged[i] = true;
+					pack++;
+				}
+			}
+			isPackage[depth] = packaged;
+			previous = items;
+		}
+
+		// Walk back down from the top. The symbols picked at each depth are always
+		// the cheapest ones, so only the count of them matters.
+		int[] sortedLengths = new int[n];
+		int take = 2 * n - 2;
+		for (int depth = 0; depth < maxLength && take > 0; depth++) {
+			int leaves = 0;
+			int packages = 0;
+			for (int i = 0; i < take; i++) {
+				if (isPackage[depth][i]) {
+					packages++;
+				} else {
+					leaves++;
+				}
+			}
+			for (int i = 0; i < leaves; i++) {
+				sortedLengths[i]++;
+			}
+			take = 2 * packages;
+		}
+
+		for (int i = 0; i < n; i++) {
+			lengths[(int) sorted[i]] = sortedLengths[i];
+		}
+		return lengths;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Huffman coding over Unicode code points, so characters outside the Basic
+ * Multilingual Plane are one symbol rather than two halves of a surrogate pair.
+ * Works on int arrays of code points. The code points used are mapped to dense
+ * indexes (in code point order) through a primitive hash map, and the code,
+ * frequencies and decode table are all indexed by those.
+ */
+public class CodePointHuffmanCoding {
+
+	// The code points that appear, in ascending order; a symbol's index in this
+	// array is the symbol the code works with
+	final int[] alphabet;
+
+	// Code point to index in alphabet
+	private final IntIntMap indexes;
+
+	CanonicalCode code;
+	HuffmanDecoder decoder;
+	int[] frequencies;
+
+	/**
+	 * Builds the code for the code points in the text.
+	 */
+	public CodePointHuffmanCoding(String text) {
+		this(text.codePoints().toArray());
+	}
+
+	/**
+	 * Builds the code for the code points.
+	 */
+	public CodePointHuffmanCoding(int[] codePoints) {
+		this(codePoints, 0);
+	}
+
+	/**
+	 * Builds the code for the code points with no code longer than maxCodeLength
+	 * bits.
+	 *
+	 * @param maxCodeLength longest code allowed, or 0 for no limit
+	 */
+	public CodePointHuffmanCoding(int[] codePoints, int maxCodeLength) {
+		// Handle obvious errors
+		if (codePoints == null || codePoints.length == 0) {throw new IllegalArgumentException("Empty / null text.");}
+
+		// Count each code point
+		IntIntMap counts = new IntIntMap();
+		for (int cp : codePoints) {
+			if (!Character.isValidCodePoint(cp)) {
+				throw new IllegalArgumentException("Invalid code point: " + cp);
+			}
+			counts.add(cp, 1);
+		}
+
+		// Give each one a dense index in code point order
+		alphabet = counts.sortedKeys();
+		indexes = new IntIntMap(alphabet.length);
+		frequencies = new int[alphabet.length];
+		for (int i = 0; i < alphabet.length; i++) {
+			indexes.put(alphabet[i], i);
+			frequencies[i] = counts.get(alphabet[i], 0);
+		}
+
+		code = new CanonicalCode(CodeLengths.huffman(frequencies));
+		if (maxCodeLength > 0 && code.maxLength > maxCodeLength) {
+			code = new CanonicalCode(CodeLengths.limited(frequencies, maxCodeLength));
+		}
+	}
+
+	/**
+	 * Encodes the code points of the text into packed bits, 8 to a byte.
+	 */
+	public byte[] encode(String text) {
+		return encode(text.codePoints().toArray());
+	}
+
+	/**
+	 * Encodes the code points into packed bits, 8 to a byte.
+	 */
+	public byte[] encode(int[] codePoints) {
+		BitWriter writer = new BitWriter();
+		long[] codes = code.codes;
+		int[] lengths = code.lengths;
+		for (int cp : codePoints) {
+			int symbol = indexes.get(cp, -1);
+			if (symbol < 0) {
+				throw new IllegalArgumentException("Code point not in the code: " + cp);
+			}
+			writer.write(codes[symbol], lengths[symbol]);
+		}
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Decodes packed bits produced by encode back into code points.
+	 *
+	 * @param packed the encoded bits
+	 * @param length number of code points that were encoded
+	 */
+	public int[] decode(byte[] packed, int length) {
+		if (decoder == null) {
+			decoder = new HuffmanDecoder(code);
+		}
+		int[] codePoints = new int[length];
+		BitReader reader = new BitReader(packed);
+		for (int i = 0; i < length; i++) {
+			codePoints[i] = alphabet[decoder.decodeSymbol(reader)];
+		}
+		return codePoints;
+	}
+
+	/**
+	 * Decodes packed bits produced by encode back into a String.
+	 *
+	 * @param packed the encoded bits
+	 * @param length number of code points that were encoded
+	 */
+	public String decodeToString(byte[] packed, int length) {
+		int[] codePoints = decode(packed, length);
+		return new String(codePoints, 0, codePoints.length);
+	}
+
+	/**
+	 * Some statistics about the code.
+	 */
+	public String getInformation() {
+		long total = 0;
+		for (int f : frequencies) {
+			total += f;
+		}
+		return "symbols: " + code.size() + "\n" + "longest code: " + code.maxLength + " bits\n"
+				+ String.format("average code: %.3f bits per code point%n", (double) code.encodedBits(frequencies) / total);
+	}
+}
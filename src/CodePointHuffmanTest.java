@@ -0,0 +1,55 @@
+import java.util.Arrays;
+
+public class CodePointHuffmanTest {
+    public static void main(String[] args) {
+        // Test cases, a single char, text outside the Basic Multilingual Plane
+        // (emoji, mathematical letters and CJK), and a text using every code
+        // point below the surrogates plus a run of supplementary ones
+        StringBuilder wide = new StringBuilder();
+        for (int cp = 0; cp < 0xD800; cp++) {
+            wide.appendCodePoint(cp);
+        }
+        for (int cp = 0x1F600; cp < 0x1F650; cp++) {
+            wide.appendCodePoint(cp);
+        }
+        String[] texts = { "a", "\uD83D\uDE00 smile \uD835\uDD04 fraktur \uD840\uDC00 \uD83D\uDE00".repeat(50),
+                wide.toString() };
+
+        // Every text should come back, with each supplementary char one symbol
+        for (String text : texts) {
+            CodePointHuffmanCoding coding = new CodePointHuffmanCoding(text);
+            int length = text.codePointCount(0, text.length());
+            byte[] packed = coding.encode(text);
+            boolean same = text.equals(coding.decodeToString(packed, length));
+            boolean whole = coding.code.size() == text.codePoints().distinct().count();
+            System.out.println((same && whole ? "OK!! " : "Wrong!! ") + length + " code points, "
+                    + coding.code.size() + " symbols -> " + packed.length + " bytes and back");
+        }
+
+        // The lowest and highest code points, as an int[], with a length limit
+        int[] extremes = { 0, Character.MAX_CODE_POINT, 0, 'a', 0x10000, Character.MAX_CODE_POINT };
+        CodePointHuffmanCoding limited = new CodePointHuffmanCoding(extremes, 2);
+        int[] decoded = limited.decode(limited.encode(extremes), extremes.length);
+        System.out.println((Arrays.equals(extremes, decoded) && limited.code.maxLength <= 2 ? "OK!! " : "Wrong!! ")
+                + "The lowest and highest code points came back");
+
+        // Code points the code wasn't built for, and ones that don't exist
+        CodePointHuffmanCoding coding = new CodePointHuffmanCoding("abc");
+        for (int cp : new int[] { 'd', -1 }) {
+            try {
+                coding.encode(new int[] { cp });
+                System.out.println("Wrong!! Code point " + cp + " was encoded");
+            } catch (IllegalArgumentException e) {
+                System.out.println("OK!! Code point " + cp + " was refused: " + e.getMessage());
+            }
+        }
+        for (int cp : new int[] { -1, Character.MAX_CODE_POINT + 1 }) {
+            try {
+                new CodePointHuffmanCoding(new int[] { 'a', cp });
+                System.out.println("Wrong!! A code built with code point " + cp);
+            } catch (IllegalArgumentException e) {
+                System.out.println("OK!! Code point " + cp + " was refused: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A complete compression algorithm: compresses a stream of bytes to a stream
+ * that decompress turns back into the same bytes. Codecs hold no state between
+ * calls, so one instance can be used by several threads at once.
+ *
+ * Every codec in CODECS shows up in the GUI, the command line and the
+ * benchmark. Besides the project's own (see Codecs), codecs from other jars are
+ * picked up with ServiceLoader: list the class in META-INF/services/Codec and
+ * give it a public no argument constructor.
+ */
+public interface Codec {
+
+	/**
+	 * Every codec that can be selected.
+	 */
+	Codec[] CODECS = Codecs.load();
+
+	/**
+	 * Name to show to the user.
+	 */
+	String getName();
+
+	/**
+	 * Short name to select the codec by on the command line.
+	 */
+	String getId();
+
+	/**
+	 * File name extension for the codec's output, starting with a dot.
+	 */
+	String getExtension();
+
+	/**
+	 * Compresses everything in in to out.
+	 */
+	void compress(InputStream in, OutputStream out) throws IOException;
+
+	/**
+	 * Compresses everything in in to out like compress, telling progress how
+	 * far it has got through the length bytes expected, and returns some
+	 * information about how the data was coded to show to the user, or "" if
+	 * there is none. By default just counts the bytes read from in; codecs that
+	 * do more than read can override it to report their own stages.
+	 */
+	default String compress(InputStream in, OutputStream out, long length, ProgressListener progress)
+			throws IOException {
+		compress(new ProgressInputStream(in, length, progress), out);
+		return "";
+	}
+
+	/**
+	 * Decompresses everything in in, written by compress, to out.
+	 *
+	 * @throws IOException if the data is corrupt
+	 */
+	void decompress(InputStream in, OutputStream out) throws IOException;
+
+	/**
+	 * Compresses a whole array.
+	 */
+	default byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		compress(new ByteArrayInputStream(data), out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decompresses a whole array.
+	 *
+	 * @throws IOException if the data is corrupt
+	 */
+	default byte[] decompress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2 + 64);
+		decompress(new ByteArrayInputStream(data), out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * The codec with the given name.
+	 *
+	 * @throws IllegalArgumentException if there is no such codec
+	 */
+	static Codec forName(String name) {
+		for (Codec codec : CODECS) {
+			if (codec.getName().equals(name)) {
+				return codec;
+			}
+		}
+		throw new IllegalArgumentException("Unknown codec: " + name);
+	}
+
+	/**
+	 * The codec with the given command line id.
+	 *
+	 * @throws IllegalArgumentException if there is no such codec
+	 */
+	static Codec forId(String id) {
+		for (Codec codec : CODECS) {
+			if (codec.getId().equals(id)) {
+				return codec;
+			}
+		}
+		throw new IllegalArgumentException("Unknown algorithm: " + id);
+	}
+}
@@ -0,0 +1,101 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CodecTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases for every codec, empty, a single char, one char repeated,
+        // ordinary text, text outside the Basic Multilingual Plane, and every
+        // char below the surrogates. The byte codecs also get all 256 byte
+        // values and noise, which aren't UTF-8 text.
+        Random random = new Random(261);
+        StringBuilder allChars = new StringBuilder();
+        for (char c = 0; c < 0xD800; c++) {
+            allChars.append(c);
+        }
+        byte[][] texts = { new byte[0], utf8("a"), utf8("a".repeat(1000)),
+                utf8("the cat sat on the mat, then the other cat sat there.\n".repeat(200)),
+                utf8("\uD83D\uDE00 smile \uD835\uDD04 fraktur \uD840\uDC00 \uD83D\uDE00".repeat(50)),
+                utf8(allChars.toString()) };
+        byte[] allBytes = new byte[256 * 8];
+        for (int i = 0; i < allBytes.length; i++) {
+            allBytes[i] = (byte) i;
+        }
+        byte[] noise = new byte[50000];
+        random.nextBytes(noise);
+        byte[][] binary = { allBytes, noise };
+
+        for (Codec codec : Codec.CODECS) {
+            // Every input should come back, checked against its trailer
+            boolean text = codec instanceof Codecs.TextCodec;
+            int passed = 0;
+            int total = 0;
+            for (byte[][] inputs : text ? new byte[][][] { texts } : new byte[][][] { texts, binary }) {
+                for (byte[] input : inputs) {
+                    total++;
+                    try {
+                        byte[] decoded = decompress(codec, compress(codec, input));
+                        if (Arrays.equals(input, decoded)) {
+                            passed++;
+                        } else {
+                            System.out.println("Wrong!! " + codec.getId() + " changed " + input.length + " bytes");
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        System.out.println("Wrong!! " + codec.getId() + " failed on " + input.length + " bytes: " + e);
+                    }
+                }
+            }
+            if (passed == total) {
+                System.out.println("OK!! " + codec.getId() + " round tripped " + total + " inputs");
+            }
+
+            // Damaged files should be refused with an IOException
+            byte[] file = compress(codec, texts[3]);
+            expectFailure(codec, "truncated", Arrays.copyOf(file, file.length / 2));
+            byte[] flipped = file.clone();
+            flipped[flipped.length / 2] ^= 0x10;
+            expectFailure(codec, "damaged", flipped);
+        }
+
+        // The parallel frequency count should agree with a plain one
+        String large = new String(texts[3], StandardCharsets.UTF_8).repeat(500) + allChars;
+        int[] expected = new int[HuffmanCoding.ALPHABET_SIZE];
+        for (int i = 0; i < large.length(); i++) {
+            expected[large.charAt(i)]++;
+        }
+        System.out.println((Arrays.equals(expected, HuffmanCoding.countFrequencies(large)) ? "OK!! " : "Wrong!! ")
+                + "Counted the chars of " + large.length() + " chars in parallel");
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(Codec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Checksums.compress(codec, new ByteArrayInputStream(data), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(Codec codec, byte[] file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!Checksums.decompress(codec, new ByteArrayInputStream(file), out, true)) {
+            throw new IOException("No checksum was checked");
+        }
+        return out.toByteArray();
+    }
+
+    private static void expectFailure(Codec codec, String what, byte[] file) {
+        try {
+            decompress(codec, file);
+            System.out.println("Wrong!! A " + what + " " + codec.getId() + " file was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A " + what + " " + codec.getId() + " file was refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " " + codec.getId() + " file failed with " + e);
+        }
+    }
+}
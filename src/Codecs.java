@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The project's algorithms as Codecs. Each one adapts the algorithm's own API:
+ * the text coders read the input as UTF-8 text, the byte coders read raw bytes,
+ * and AdaptiveHuffman already streams.
+ */
+public class Codecs {
+
+	// Big enough blocks for the Burrows-Wheeler transform to find plenty of
+	// context, as bzip2's largest blocks are
+	static final int BWT_BLOCK_SIZE = 900_000;
+
+	private Codecs() {
+	}
+
+	/**
+	 * The project's codecs followed by any others found by ServiceLoader, leaving
+	 * out any whose id is already taken.
+	 */
+	static Codec[] load() {
+		List<Codec> codecs = new ArrayList<>();
+		codecs.add(new HuffmanCodec());
+		codecs.add(new ContextHuffmanCodec());
+		codecs.add(new WordHuffmanCodec());
+		codecs.add(new BlockHuffmanCodec());
+		codecs.add(new AdaptiveHuffmanCodec());
+		codecs.add(new RansCodec());
+		codecs.add(new LempelZivCodec());
+		codecs.add(new PipelineCodec("BWT pipeline", "bwt", ".bwt", BWT_BLOCK_SIZE, new HuffmanEntropyCoder(),
+				new BurrowsWheeler(), new MoveToFront(), new ZeroRunLength()));
+
+		for (Codec codec : ServiceLoader.load(Codec.class)) {
+			boolean taken = false;
+			for (Codec existing : codecs) {
+				taken |= existing.getId().equals(codec.getId());
+			}
+			if (!taken) {
+				codecs.add(codec);
+			}
+		}
+		return codecs.toArray(new Codec[0]);
+	}
+
+	/**
+	 * Whether the stream has nothing left, without taking anything from it
+	 * otherwise.
+	 */
+	static boolean atEnd(PushbackInputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			return true;
+		}
+		in.unread(b);
+		return false;
+	}
+
+	/**
+	 * Base for the codecs that work on a whole String of text.
+	 */
+	abstract static class TextCodec implements Codec {
+
+		/**
+		 * Codes the text to out, reporting progress through the text, and returns
+		 * the coder's information.
+		 */
+		abstract String compress(String text, OutputStream out, ProgressListener progress) throws IOException;
+
+		abstract String decompressText(InputStream in) throws IOException;
+
+		/**
+		 * How much of the job reading the text is, out of 10; coding it is the
+		 * rest.
+		 */
+		int readingTenths() {
+			return 5;
+		}
+
+		@Override
+		public void compress(InputStream in, OutputStream out) throws IOException {
+			compress(in, out, 0, ProgressListener.NONE);
+		}
+
+		@Override
+		public String compress(InputStream in, OutputStream out, long length, ProgressListener progress)
+				throws IOException {
+			// Decoded a buffer at a time, rather than holding a byte copy of all of it.
+			// Empty text is stored as nothing, as the text coders need a char to work on.
+			long read = length * readingTenths() / 10;
+			String text = FilePipeline.readText(new ProgressInputStream(in, length, progress.stage(0, read, length)),
+					StandardCharsets.UTF_8, length);
+			if (text.isEmpty()) {
+				return "";
+			}
+			return compress(text, out, progress.stage(read, length, length));
+		}
+
+		@Override
+		public void decompress(InputStream in, OutputStream out) throws IOException {
+			PushbackInputStream pushback = new PushbackInputStream(in);
+			if (atEnd(pushback)) {
+				return;
+			}
+			// Encoded a chunk at a time, rather than making a byte copy of all of it
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			writer.write(decompressText(pushback));
+			writer.flush();
+		}
+	}
+
+	public static class HuffmanCodec extends TextCodec {
+		@Override
+		public String getName() {
+			return "Huffman coding";
+		}
+
+		@Override
+		public String getId() {
+			return "huffman";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".huf";
+		}
+
+		@Override
+		String compress(String text, OutputStream out, ProgressListener progress) throws IOException {
+			HuffmanCoding huffman = new HuffmanCoding(text);
+			huffman.write(text, out, progress);
+			return huffman.getInformation();
+		}
+
+		@Override
+		String decompressText(InputStream in) throws IOException {
+			return HuffmanCoding.decode(in);
+		}
+	}
+
+	public static class ContextHuffmanCodec extends TextCodec {
+		@Override
+		public String getName() {
+			return "Order-1 Huffman";
+		}
+
+		@Override
+		public String getId() {
+			return "order1";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".hc1";
+		}
+
+		@Override
+		String compress(String text, OutputStream out, ProgressListener progress) throws IOException {
+			ContextHuffmanCoding huffman = new ContextHuffmanCoding(text);
+			huffman.write(text, out, progress);
+			return huffman.getInformation();
+		}
+
+		@Override
+		String decompressText(InputStream in) throws IOException {
+			return ContextHuffmanCoding.decode(in);
+		}
+	}
+
+	public static class WordHuffmanCodec extends TextCodec {
+		@Override
+		public String getName() {
+			return "Word Huffman";
+		}
+
+		@Override
+		public String getId() {
+			return "word";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".whf";
+		}
+
+		@Override
+		String compress(String text, OutputStream out, ProgressListener progress) throws IOException {
+			// Most of the work is finding the words, so that is what reports progress
+			WordHuffmanCoding huffman = new WordHuffmanCoding(text, progress);
+			huffman.write(text, out);
+			return huffman.getInformation();
+		}
+
+		@Override
+		String decompressText(InputStream in) throws IOException {
+			return WordHuffmanCoding.decode(in);
+		}
+	}
+
+	public static class LempelZivCodec extends TextCodec {
+		@Override
+		public String getName() {
+			return "Lempel Ziv";
+		}
+
+		@Override
+		public String getId() {
+			return "lz";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".lz";
+		}
+
+		// Reading is quick next to searching the window for matches
+		@Override
+		int readingTenths() {
+			return 1;
+		}
+
+		@Override
+		String compress(String text, OutputStream out, ProgressListener progress) throws IOException {
+			out.write(LempelZiv.compress(text, progress).getBytes(StandardCharsets.UTF_8));
+			return new LempelZiv().getInformation();
+		}
+
+		@Override
+		String decompressText(InputStream in) throws IOException {
+			String compressed = FilePipeline.readText(in, StandardCharsets.UTF_8);
+			try {
+				return LempelZiv.decompress(compressed);
+			} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+				throw new IOException("Corrupt Lempel Ziv file, the tuples can't be parsed.", e);
+			}
+		}
+	}
+
+	public static class BlockHuffmanCodec implements Codec {
+		@Override
+		public String getName() {
+			return "Block Huffman";
+		}
+
+		@Override
+		public String getId() {
+			return "block";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".bhf";
+		}
+
+		@Override
+		public void compress(InputStream in, OutputStream out) throws IOException {
+			compress(in, out, 0, ProgressListener.NONE);
+		}
+
+		@Override
+		public String compress(InputStream in, OutputStream out, long length, ProgressListener progress)
+				throws IOException {
+			// Read in the raw bytes, since blocks are coded as bytes; reading and
+			// coding are half the job each. Empty data is stored as nothing, like
+			// empty text.
+			byte[] data = new ProgressInputStream(in, length, progress.stage(0, length / 2, length)).readAllBytes();
+			if (data.length == 0) {
+				return "";
+			}
+			BlockHuffmanCoding huffman = new BlockHuffmanCoding(data);
+			huffman.write(data, out, progress.stage(length / 2, length, length));
+			return huffman.getInformation();
+		}
+
+		@Override
+		public void decompress(InputStream in, OutputStream out) throws IOException {
+			PushbackInputStream pushback = new PushbackInputStream(in);
+			if (!atEnd(pushback)) {
+				out.write(BlockHuffmanCoding.decode(pushback));
+			}
+		}
+	}
+
+	public static class AdaptiveHuffmanCodec implements Codec {
+		@Override
+		public String getName() {
+			return "Adaptive Huffman";
+		}
+
+		@Override
+		public String getId() {
+			return "adaptive";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".ahf";
+		}
+
+		@Override
+		public void compress(InputStream in, OutputStream out) throws IOException {
+			AdaptiveHuffman.compress(in, out);
+		}
+
+		@Override
+		public void decompress(InputStream in, OutputStream out) throws IOException {
+			AdaptiveHuffman.decompress(in, out);
+		}
+	}
+
+	public static class RansCodec implements Codec {
+		@Override
+		public String getName() {
+			return "rANS";
+		}
+
+		@Override
+		public String getId() {
+			return "rans";
+		}
+
+		@Override
+		public String getExtension() {
+			return ".rans";
+		}
+
+		@Override
+		public void compress(InputStream in, OutputStream out) throws IOException {
+			out.write(EntropyCoder.encodeStream(new RansCoding(), in.readAllBytes()));
+		}
+
+		@Override
+		public void decompress(InputStream in, OutputStream out) throws IOException {
+			out.write(EntropyCoder.decodeStream(in.readAllBytes()));
+		}
+	}
+}
@@ -0,0 +1,537 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line front end for running the algorithms over files and directory
+ * trees without a display:
+ *
+ * <pre>
+ * compress   [--algo NAME] [--verify off|checksum|full] [--threads N] [--force] paths...
+ * decompress [--verify off|checksum] [--threads N] [--force] paths...
+ * search     --pattern TEXT [--threads N] paths...
+ * archive    --output FILE [--algo NAME] [--threads N] [--force] paths...
+ * list       archives...
+ * extract    [--output DIR] [--entry NAME]... [--threads N] [--force] archive
+ * </pre>
+ *
+ * Directories are walked for regular files. Files are processed concurrently
+ * on a fixed size pool, and a line is printed for each file as it finishes,
+ * followed by totals. Compressing writes NAME.EXT next to each file, where EXT
+ * depends on the algorithm, and decompressing picks the algorithm from the
+ * extension and writes the file back without it. Compressing a directory
+ * skips the files in it that are already compressed or archived, so it can be
+ * run again over the same tree. Existing files are only overwritten with
+ * --force. The algorithms are the Codecs in Codec.CODECS,
+ * selected by their ids.
+ *
+ * Compressed files end with a checksum of the original (see Checksums). By
+ * default compressing decodes each output again and checks it against the
+ * checksum, and decompressing checks what it writes. --verify off skips the
+ * checks, and --verify full compares the decoded output with the original
+ * file instead.
+ *
+ * archive puts every file into one Archive instead, compressing them
+ * concurrently, with entries named by their path from the directory holding
+ * each path given. list prints the entries of archives, and extract writes
+ * out all of an archive's entries, or just the ones named with --entry, under
+ * the output directory (the current directory by default).
+ */
+public class CompressionCli {
+
+	private static final String USAGE = "usage: compress [--algo " + String.join("|", ids())
+			+ "] [--verify off|checksum|full] [--threads N] [--force] paths...\n"
+			+ "       decompress [--verify off|checksum] [--threads N] [--force] paths...\n"
+			+ "       search --pattern TEXT [--threads N] paths...\n"
+			+ "       archive --output FILE [--algo NAME] [--threads N] [--force] paths...\n"
+			+ "       list archives...\n"
+			+ "       extract [--output DIR] [--entry NAME]... [--threads N] [--force] archive";
+
+	private final PrintStream out;
+	private final PrintStream err;
+
+	// Whether existing output files may be overwritten
+	private boolean force;
+
+	// How to check the files written
+	private Checksums.Verification verification = Checksums.Verification.CHECKSUM;
+
+	// Totals over every file, only touched while holding the lock on this
+	private int files;
+	private int failures;
+	private long bytesIn;
+	private long bytesOut;
+	private long matches;
+
+	public CompressionCli(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	public static void main(String[] args) {
+		System.exit(new CompressionCli(System.out, System.err).run(args));
+	}
+
+	/**
+	 * Runs a command, returning the exit code: 0 if every file was processed, 1 if
+	 * some failed, and 2 for bad arguments.
+	 */
+	public int run(String[] args) {
+		if (args.length == 0) {
+			err.println(USAGE);
+			return 2;
+		}
+
+		// Parse the arguments
+		String command = args[0];
+		String algorithm = "huffman";
+		String pattern = null;
+		String output = null;
+		List<String> entryNames = new ArrayList<>();
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> paths = new ArrayList<>();
+		try {
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("--algo")) {
+					algorithm = args[++i];
+				} else if (args[i].equals("--threads")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--verify")) {
+					verification = Checksums.Verification.parse(args[++i]);
+				} else if (args[i].equals("--force")) {
+					force = true;
+				} else if (args[i].equals("--pattern")) {
+					pattern = args[++i];
+				} else if (args[i].equals("--output")) {
+					output = args[++i];
+				} else if (args[i].equals("--entry")) {
+					entryNames.add(args[++i]);
+				} else if (args[i].startsWith("--")) {
+					throw new IllegalArgumentException("Unknown option: " + args[i]);
+				} else {
+					paths.add(args[i]);
+				}
+			}
+			if (!Arrays.asList("compress", "decompress", "search", "archive", "list", "extract").contains(command)) {
+				throw new IllegalArgumentException("Unknown command: " + command);
+			}
+			if (command.equals("archive") && output == null) {
+				throw new IllegalArgumentException("archive needs an --output file.");
+			}
+			if (command.equals("extract") && paths.size() != 1) {
+				throw new IllegalArgumentException("extract takes exactly one archive.");
+			}
+			Codec.forId(algorithm);
+			if (command.equals("decompress") && verification == Checksums.Verification.FULL) {
+				throw new IllegalArgumentException("decompress has no original to compare with, use --verify checksum.");
+			}
+			if (command.equals("search") && (pattern == null || pattern.isEmpty())) {
+				throw new IllegalArgumentException("search needs a non-empty --pattern.");
+			}
+			if (threads < 1) {
+				throw new IllegalArgumentException("--threads must be at least 1.");
+			}
+			if (paths.isEmpty()) {
+				throw new IllegalArgumentException("No paths given.");
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			err.println("Missing value for " + args[args.length - 1]);
+			err.println(USAGE);
+			return 2;
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return 2;
+		}
+
+		// The archive commands work on archives rather than a file at a time
+		long start = System.nanoTime();
+		if (command.equals("archive")) {
+			archive(paths, Paths.get(output), Codec.forId(algorithm), threads);
+		} else if (command.equals("list")) {
+			list(paths);
+		} else if (command.equals("extract")) {
+			if (!extract(Paths.get(paths.get(0)), Paths.get(output == null ? "." : output), entryNames, threads)) {
+				return 1;
+			}
+		} else if (!process(command, paths, Codec.forId(algorithm), pattern, threads)) {
+			return 1;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		// Totals
+		synchronized (this) {
+			if (command.equals("search")) {
+				out.printf("total: %d files, %d matches, %.2f s%n", files, matches, seconds);
+			} else {
+				out.printf("total: %d files, %d -> %d bytes (%.1f%%), %.2f s, %.2f MB/s%n", files, bytesIn, bytesOut,
+						percent(bytesOut, bytesIn), seconds, bytesIn / 1e6 / Math.max(seconds, 1e-9));
+			}
+			if (failures > 0) {
+				out.println(failures + " failed");
+			}
+			return failures == 0 ? 0 : 1;
+		}
+	}
+
+	/**
+	 * Runs compress, decompress or search on every file under the paths,
+	 * returning false if interrupted.
+	 */
+	private boolean process(String command, List<String> paths, Codec codec, String pattern, int threads) {
+		// Find the files. When decompressing a directory, only the files it holds
+		// with a known extension are picked up, and when compressing one they
+		// are left out.
+		List<File> inputs = new ArrayList<>();
+		for (String path : paths) {
+			boolean directory = Files.isDirectory(Paths.get(path));
+			boolean onlyCompressed = command.equals("decompress") && directory;
+			boolean skipCompressed = command.equals("compress") && directory;
+			try (Stream<Path> walk = Files.walk(Paths.get(path))) {
+				inputs.addAll(walk.filter(Files::isRegularFile)
+						.filter(file -> !onlyCompressed || codecFor(file.toString()) != null)
+						.filter(file -> !skipCompressed || !isCompressed(file.toString())).map(Path::toFile)
+						.collect(Collectors.toList()));
+			} catch (IOException e) {
+				failed(new File(path), e);
+			}
+		}
+
+		// Process them on a bounded pool
+		List<Runnable> jobs = new ArrayList<>();
+		for (File input : inputs) {
+			jobs.add(() -> {
+				if (command.equals("compress")) {
+					compress(input, codec);
+				} else if (command.equals("decompress")) {
+					decompress(input);
+				} else {
+					search(input, pattern);
+				}
+			});
+		}
+		return runAll(jobs, threads);
+	}
+
+	/**
+	 * Runs the jobs on a pool of the given size and waits for them all,
+	 * returning false if interrupted. Jobs report their own failures.
+	 */
+	private boolean runAll(List<Runnable> jobs, int threads) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (Runnable job : jobs) {
+			futures.add(pool.submit(job));
+		}
+		pool.shutdown();
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException e) {
+				// Already reported by the job
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compresses every file under the paths into one archive.
+	 */
+	private void archive(List<String> paths, Path archive, Codec codec, int threads) {
+		if (Files.exists(archive) && !force) {
+			failed(archive.toFile(), new IOException("already exists, use --force to overwrite it."));
+			return;
+		}
+
+		// Name each file by its path from the directory holding the path it was
+		// found under, leaving out the archive itself
+		Map<String, Path> entries = new LinkedHashMap<>();
+		Path self = archive.toAbsolutePath().normalize();
+		for (String path : paths) {
+			Path root = Paths.get(path).toAbsolutePath().normalize();
+			Path base = root.getParent() == null ? root : root.getParent();
+			try (Stream<Path> walk = Files.walk(root)) {
+				for (Path file : walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+					String name = base.relativize(file).toString().replace(File.separatorChar, '/');
+					if (file.equals(self)) {
+						continue;
+					}
+					if (entries.putIfAbsent(name, file) != null) {
+						failed(file.toFile(), new IOException("another file is already named " + name));
+					}
+				}
+			} catch (IOException e) {
+				failed(new File(path), e);
+			}
+		}
+
+		try {
+			Archive.create(archive, entries, codec, threads, entry -> {
+				synchronized (this) {
+					files++;
+					bytesIn += entry.size;
+					bytesOut += entry.compressedSize;
+					out.printf("%s: %d -> %d bytes (%.1f%%)%n", entry.name, entry.size, entry.compressedSize,
+							percent(entry.compressedSize, entry.size));
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			failed(archive.toFile(), e);
+		}
+	}
+
+	/**
+	 * Prints the entries of each archive.
+	 */
+	private void list(List<String> paths) {
+		for (String path : paths) {
+			try (Archive archive = Archive.open(Paths.get(path))) {
+				for (Archive.Entry entry : archive.entries()) {
+					files++;
+					bytesIn += entry.size;
+					bytesOut += entry.compressedSize;
+					out.printf("%s: %s, %d -> %d bytes (%.1f%%)%n", entry.name, entry.codec, entry.size,
+							entry.compressedSize, percent(entry.compressedSize, entry.size));
+				}
+			} catch (IOException e) {
+				failed(new File(path), e);
+			}
+		}
+	}
+
+	/**
+	 * Extracts the named entries of the archive, or all of them if none are
+	 * named, under the directory. Each entry is read straight from its offset,
+	 * so the entries are extracted concurrently. Returns false if interrupted.
+	 */
+	private boolean extract(Path path, Path directory, List<String> names, int threads) {
+		try (Archive archive = Archive.open(path)) {
+			List<Archive.Entry> entries = new ArrayList<>();
+			if (names.isEmpty()) {
+				entries.addAll(archive.entries());
+			}
+			for (String name : names) {
+				Archive.Entry entry = archive.find(name);
+				if (entry == null) {
+					failed(path.toFile(), new IOException("has no entry named " + name));
+				} else {
+					entries.add(entry);
+				}
+			}
+
+			List<Runnable> jobs = new ArrayList<>();
+			for (Archive.Entry entry : entries) {
+				jobs.add(() -> {
+					File target = directory.resolve(entry.name).toFile();
+					if (target.exists() && !force) {
+						failed(target, new IOException("already exists, use --force to overwrite it."));
+						return;
+					}
+					long start = System.nanoTime();
+					try {
+						archive.extract(entry, directory);
+					} catch (IOException | RuntimeException e) {
+						failed(target, e);
+						return;
+					}
+					finished(target, entry.compressedSize, entry.size, start);
+				});
+			}
+			return runAll(jobs, threads);
+		} catch (IOException e) {
+			failed(path.toFile(), e);
+			return true;
+		}
+	}
+
+	/**
+	 * Compresses input to input + the codec's extension.
+	 */
+	private void compress(File input, Codec codec) {
+		File output = new File(input.getPath() + codec.getExtension());
+		if (output.exists() && !force) {
+			failed(input, new IOException(output + " already exists, use --force to overwrite it."));
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			FilePipeline.run(input.toPath(), output.toPath(), (in, out) -> Checksums.compress(codec, in, out));
+		} catch (IOException | RuntimeException e) {
+			output.delete();
+			failed(input, e);
+			return;
+		}
+
+		// Check the file written decodes to the original
+		boolean verified = true;
+		try (InputStream in = FilePipeline.newInputStream(output.toPath())) {
+			if (verification == Checksums.Verification.CHECKSUM) {
+				verified = Checksums.verify(codec, in);
+			} else if (verification == Checksums.Verification.FULL) {
+				try (InputStream original = FilePipeline.newInputStream(input.toPath())) {
+					verified = Checksums.matches(codec, in, original);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			verified = false;
+		}
+		if (!verified) {
+			output.delete();
+			failed(input, new IOException(output + " did not decode to the original, it has been deleted."));
+			return;
+		}
+		finished(input, input.length(), output.length(), start);
+	}
+
+	/**
+	 * Decompresses input, picking the codec from its extension, to input without
+	 * the extension.
+	 */
+	private void decompress(File input) {
+		String name = input.getPath();
+		Codec codec = codecFor(name);
+		if (codec == null) {
+			failed(input, new IOException("Not a compressed file, the extension is not one of "
+					+ String.join(" ", extensions())));
+			return;
+		}
+		File output = new File(name.substring(0, name.length() - codec.getExtension().length()));
+		if (output.exists() && !force) {
+			failed(input, new IOException(output + " already exists, use --force to overwrite it."));
+			return;
+		}
+
+		long start = System.nanoTime();
+		boolean check = verification != Checksums.Verification.OFF;
+		try {
+			FilePipeline.run(input.toPath(), output.toPath(), (in, out) -> Checksums.decompress(codec, in, out, check));
+		} catch (IOException | RuntimeException e) {
+			output.delete();
+			failed(input, e);
+			return;
+		}
+		finished(input, input.length(), output.length(), start);
+	}
+
+	/**
+	 * Counts the matches of the pattern in the file, as UTF-8 bytes, and prints
+	 * the byte offset of the first few. The file is streamed through a buffer,
+	 * keeping the last few bytes of each buffer for matches that cross into the
+	 * next.
+	 */
+	private void search(File input, String pattern) {
+		byte[] bytes = pattern.getBytes(StandardCharsets.UTF_8);
+		List<Long> first = new ArrayList<>();
+		long count = 0;
+		try (InputStream in = FilePipeline.newInputStream(input.toPath())) {
+			byte[] buffer = new byte[Math.max(FilePipeline.BUFFER_SIZE, 2 * bytes.length)];
+			// File offset of buffer[0], bytes in the buffer, and where the next
+			// match may start
+			long offset = 0;
+			int filled = 0;
+			int from = 0;
+			int n;
+			while ((n = in.read(buffer, filled, buffer.length - filled)) >= 0) {
+				filled += n;
+				int match;
+				while ((match = KMP.search(bytes, buffer, from, filled)) >= 0) {
+					if (count < 5) {
+						first.add(offset + match);
+					}
+					count++;
+					from = match + 1;
+				}
+
+				// A match can still start in the last pattern length - 1 bytes
+				int keep = Math.max(from, filled - (bytes.length - 1));
+				System.arraycopy(buffer, keep, buffer, 0, filled - keep);
+				offset += keep;
+				filled -= keep;
+				from = 0;
+			}
+		} catch (IOException e) {
+			failed(input, e);
+			return;
+		}
+
+		synchronized (this) {
+			files++;
+			matches += count;
+			out.println(input + ": " + count + " matches"
+					+ (count == 0 ? "" : " at " + first + (count > 5 ? "..." : "")));
+		}
+	}
+
+	private synchronized void finished(File input, long in, long out, long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		files++;
+		bytesIn += in;
+		bytesOut += out;
+		this.out.printf("%s: %d -> %d bytes (%.1f%%), %.2f MB/s%n", input, in, out, percent(out, in),
+				in / 1e6 / Math.max(seconds, 1e-9));
+	}
+
+	private synchronized void failed(File input, Exception e) {
+		failures++;
+		err.println(input + ": " + e.getMessage());
+	}
+
+	private static double percent(long part, long whole) {
+		return whole == 0 ? 0 : 100.0 * part / whole;
+	}
+
+	/**
+	 * The codec whose extension the file name ends with, or null.
+	 */
+	private static Codec codecFor(String name) {
+		for (Codec codec : Codec.CODECS) {
+			if (name.endsWith(codec.getExtension())) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Whether the file name ends with a codec's extension or is an archive.
+	 */
+	private static boolean isCompressed(String name) {
+		return codecFor(name) != null || name.endsWith(Archive.EXTENSION);
+	}
+
+	private static List<String> ids() {
+		List<String> ids = new ArrayList<>();
+		for (Codec codec : Codec.CODECS) {
+			ids.add(codec.getId());
+		}
+		return ids;
+	}
+
+	private static List<String> extensions() {
+		List<String> extensions = new ArrayList<>();
+		for (Codec codec : Codec.CODECS) {
+			extensions.add(codec.getExtension());
+		}
+		return extensions;
+	}
+}
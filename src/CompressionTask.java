@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+/**
+ * One run of an algorithm on a file: compress the input to the output file
+ * with a checksum trailer (see Checksums), then decode the output file again
+ * and check it against the checksum or the input. Knows nothing about Swing,
+ * so it can be run on a worker thread and report progress through a
+ * ProgressListener. Progress is counted over both passes, so a job is half
+ * done once the compressed file is written.
+ *
+ * The output is written to a temporary file next to the output file, which is
+ * only moved into place once the job has finished. A cancelled job deletes
+ * just its own temporary file, so it can never touch the output of a job
+ * started after it.
+ */
+public class CompressionTask {
+
+	// The algorithms that can be run: every registered Codec, each run through the
+	// Codec interface
+	static final String[] ALGORITHMS = names(Codec.CODECS);
+
+	private final String algorithm;
+	private final File input;
+	private final File output;
+	private final Checksums.Verification verification;
+
+	public CompressionTask(String algorithm, File input, File output) {
+		this(algorithm, input, output, Checksums.Verification.CHECKSUM);
+	}
+
+	/**
+	 * @param verification how to check the output once it is written
+	 */
+	public CompressionTask(String algorithm, File input, File output, Checksums.Verification verification) {
+		this.algorithm = algorithm;
+		this.input = input;
+		this.output = output;
+		this.verification = verification;
+	}
+
+	/**
+	 * Runs the algorithm, returning a report of the sizes and whether the decoded
+	 * data matched. If the thread is interrupted the run stops at the next
+	 * progress report, the temporary output file is deleted, the output file is
+	 * left as it was and a CancellationException is thrown.
+	 */
+	public String run(ProgressListener listener) throws IOException {
+		ProgressListener progress = listener.interruptible();
+		Path directory = output.getAbsoluteFile().toPath().getParent();
+		Path part = Files.createTempFile(directory, output.getName() + ".", ".part");
+		try {
+			String report = run(part.toFile(), progress, input.length());
+			// The last chance to cancel before the output is replaced
+			progress.progress(1, 1);
+			Files.move(part, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return report;
+		} catch (InterruptedIOException e) {
+			// Interrupted while waiting on the file pipeline rather than in a codec
+			throw new CancellationException(e.getMessage());
+		} finally {
+			Files.deleteIfExists(part);
+		}
+	}
+
+	private String run(File file, ProgressListener progress, long length) throws IOException {
+		StringBuilder report = new StringBuilder();
+		Codec codec = Codec.forName(algorithm);
+
+		// Without verification there is no second pass to count
+		long total = verification == Checksums.Verification.OFF ? length : 2 * length;
+
+		// Compress, working out the checksum of the input as it is read, and put it
+		// on the end of the output with the number of bytes actually read, which
+		// may not be the length if the file changed since
+		Checksums.CountingChecksum checksum = new Checksums.CountingChecksum(Checksums.newChecksum());
+		String information;
+		try (OutputStream out = FilePipeline.newOutputStream(file.toPath())) {
+			information = compress(codec, out, checksum, progress.stage(0, length, total));
+			Checksums.writeTrailer(out, checksum.count, checksum.getValue());
+		}
+		appendSizes(report, file);
+
+		// Decode the output again from nothing but the file, and check it
+		switch (verification) {
+		case OFF:
+			report.append("decoded text not verified.\n");
+			break;
+		case CHECKSUM:
+			try (InputStream in = open(file, progress.stage(length, total, total))) {
+				report.append("decoded text " + (Checksums.verify(codec, in) ? "matches" : "DOES NOT match")
+						+ " the CRC32C of the original.\n");
+			}
+			break;
+		case FULL:
+			try (InputStream in = open(file, progress.stage(length, total, total));
+					InputStream original = FilePipeline.newInputStream(input.toPath())) {
+				report.append("original and decoded texts "
+						+ (Checksums.matches(codec, in, original) ? "" : "DO NOT ") + "match.\n");
+			}
+			break;
+		}
+		report.append(information);
+
+		progress.progress(total, total);
+		return report.toString();
+	}
+
+	/**
+	 * Compresses the input file to out, adding every byte of it to the checksum,
+	 * and returns some information about how it was coded.
+	 */
+	private String compress(Codec codec, OutputStream out, Checksum checksum, ProgressListener progress)
+			throws IOException {
+		try (InputStream in = new CheckedInputStream(FilePipeline.newInputStream(input.toPath()), checksum)) {
+			String information = codec.compress(in, out, input.length(), progress);
+			// Anything the codec left unread wasn't encoded, so must not be counted
+			if (in.read() >= 0) {
+				throw new IOException(codec.getName() + " did not read all of its input.");
+			}
+			return information;
+		}
+	}
+
+	private static String[] names(Codec[] codecs) {
+		String[] names = new String[codecs.length];
+		for (int i = 0; i < codecs.length; i++) {
+			names[i] = codecs[i].getName();
+		}
+		return names;
+	}
+
+	/**
+	 * The sizes of the files, as they actually are on disk.
+	 */
+	private void appendSizes(StringBuilder report, File file) {
+		report.append("input length:  " + input.length() + " bytes \n");
+		report.append("output length: " + file.length() + " bytes \n\n");
+	}
+
+	private static InputStream open(File file, ProgressListener progress) throws IOException {
+		return new ProgressInputStream(FilePipeline.newInputStream(file.toPath()), file.length(), progress);
+	}
+}
@@ -0,0 +1,416 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Order-1 context modelled Huffman coding. Rather than one code for the whole
+ * text, every char is coded with a code picked by the char before it, so that
+ * after a 'q' the code for 'u' can be very short. Contexts that don't come up
+ * often enough to pay for storing their own code share a single order-0 code
+ * instead, which keeps the header small. Every code is canonical and length
+ * limited, so the encode and decode loops just switch between arrays of tables.
+ * Every table spans the whole alphabet, so texts with large alphabets get
+ * fewer contexts, down to none at all.
+ */
+public class ContextHuffmanCoding {
+
+	// Identifies an order-1 Huffman file, "HC1" followed by a 0 byte
+	private static final int MAGIC = 0x48433100;
+	private static final int FORMAT_VERSION = 1;
+
+	// A context needs at least this many chars after it to be given its own code
+	static final int MIN_CONTEXT_OCCURRENCES = 64;
+
+	// Most contexts that can have their own code
+	static final int MAX_CONTEXTS = 1024;
+
+	// Most table entries (tables times alphabet size) kept in memory at once,
+	// which caps the contexts for large alphabets
+	static final int MAX_TABLE_ENTRIES = 1 << 22;
+
+	// Codes are limited so the many decode tables stay small, unless the
+	// alphabet is too large to fit
+	private static final int MAX_CODE_LENGTH = 15;
+	private static final int DECODE_TABLE_BITS = 9;
+
+	// Chars encoded between progress reports
+	private static final int REPORT_INTERVAL = 1 << 16;
+
+	// Table 0 is the shared code
+	private static final int SHARED = 0;
+
+	// The chars used in the text, in order; a char's index here is its symbol
+	final char[] alphabet;
+
+	// Code for each table
+	final CanonicalCode[] tables;
+
+	// Table used after each symbol; the last entry is for the start of the text
+	final int[] tableOf;
+
+	// Statistics for getInformation
+	private long order0Bits;
+	private long order1Bits;
+
+	/**
+	 * Builds the per-context codes for the text.
+	 */
+	public ContextHuffmanCoding(String text) {
+		// Handle obvious errors
+		if (text == null || text.length() == 0) {throw new IllegalArgumentException("Empty / null string.");}
+
+		// Give each char used a dense symbol number
+		int[] charFrequencies = HuffmanCoding.countFrequencies(text);
+		int n = 0;
+		for (int f : charFrequencies) {
+			if (f > 0) {
+				n++;
+			}
+		}
+		char[] chars = new char[n];
+		int[] symbolOf = new int[HuffmanCoding.ALPHABET_SIZE];
+		int[] frequencies = new int[n];
+		n = 0;
+		for (int c = 0; c < charFrequencies.length; c++) {
+			if (charFrequencies[c] > 0) {
+				chars[n] = (char) c;
+				frequencies[n] = charFrequencies[c];
+				symbolOf[c] = n++;
+			}
+		}
+		alphabet = chars;
+		int start = n;
+
+		// Pick the contexts that come up often enough to maybe get their own code.
+		// Every symbol is followed by another except the one at the very end.
+		int[] contextCounts = frequencies.clone();
+		contextCounts[symbolOf[text.charAt(text.length() - 1)]]--;
+		long[] candidates = new long[n];
+		int candidateCount = 0;
+		for (int s = 0; s < n; s++) {
+			if (contextCounts[s] >= MIN_CONTEXT_OCCURRENCES) {
+				candidates[candidateCount++] = ((long) contextCounts[s] << 32) | s;
+			}
+		}
+		Arrays.sort(candidates, 0, candidateCount);
+		int[] rowOf = new int[n + 1];
+		int rows = 1;
+		for (int i = candidateCount - 1; i >= 0 && rows <= maxContexts(n); i--) {
+			rowOf[(int) candidates[i]] = rows++;
+		}
+
+		// Count which symbol follows each candidate context; everything else goes
+		// into the shared row
+		int[][] counts = new int[rows][n];
+		int previous = start;
+		for (int i = 0; i < text.length(); i++) {
+			int symbol = symbolOf[text.charAt(i)];
+			counts[rowOf[previous]][symbol]++;
+			previous = symbol;
+		}
+
+		// Keep a context's own code only if it beats the order-0 code by more than
+		// it costs to store
+		CanonicalCode order0 = limitedCode(frequencies);
+		order0Bits = order0.encodedBits(frequencies);
+		CanonicalCode[] rowCodes = new CanonicalCode[rows];
+		for (int r = 1; r < rows; r++) {
+			CanonicalCode own = limitedCode(counts[r]);
+			long ownBits = own.encodedBits(counts[r]) + 8L * headerBytes(own);
+			if (ownBits < order0.encodedBits(counts[r])) {
+				rowCodes[r] = own;
+			} else {
+				for (int s = 0; s < n; s++) {
+					counts[SHARED][s] += counts[r][s];
+				}
+			}
+		}
+		rowCodes[SHARED] = limitedCode(counts[SHARED]);
+
+		// Number the tables that were kept and point each context at its table
+		tableOf = new int[n + 1];
+		int tableCount = 1;
+		for (int r = 1; r < rows; r++) {
+			if (rowCodes[r] != null) {
+				tableCount++;
+			}
+		}
+		tables = new CanonicalCode[tableCount];
+		tables[SHARED] = rowCodes[SHARED];
+		int t = 1;
+		int[] tableOfRow = new int[rows];
+		for (int r = 1; r < rows; r++) {
+			if (rowCodes[r] != null) {
+				tableOfRow[r] = t;
+				tables[t++] = rowCodes[r];
+			}
+		}
+		for (int s = 0; s <= n; s++) {
+			tableOf[s] = tableOfRow[rowOf[s]];
+		}
+
+		// The shared row has had the dropped contexts' counts merged into it
+		order1Bits = 0;
+		for (int r = 0; r < rows; r++) {
+			if (rowCodes[r] != null) {
+				order1Bits += rowCodes[r].encodedBits(counts[r]);
+			}
+		}
+	}
+
+	/**
+	 * Builds a decoder's view of the code from a header.
+	 */
+	private ContextHuffmanCoding(char[] alphabet, CanonicalCode[] tables, int[] tableOf) {
+		this.alphabet = alphabet;
+		this.tables = tables;
+		this.tableOf = tableOf;
+	}
+
+	/**
+	 * Most contexts that can have their own code with an alphabet of n symbols,
+	 * so that every table fits in MAX_TABLE_ENTRIES.
+	 */
+	static int maxContexts(int n) {
+		return Math.max(0, Math.min(MAX_CONTEXTS, MAX_TABLE_ENTRIES / Math.max(1, n) - 1));
+	}
+
+	/**
+	 * Huffman code for the frequencies, limited to MAX_CODE_LENGTH bits, or to
+	 * as few bits as can hold every symbol if there are more than that allows.
+	 */
+	private static CanonicalCode limitedCode(int[] frequencies) {
+		CanonicalCode code = new CanonicalCode(CodeLengths.huffman(frequencies));
+		int limit = Math.max(MAX_CODE_LENGTH, 32 - Integer.numberOfLeadingZeros(frequencies.length - 1));
+		if (code.maxLength > limit) {
+			code = new CanonicalCode(CodeLengths.limited(frequencies, limit));
+		}
+		return code;
+	}
+
+	/**
+	 * Rough number of bytes a code takes in the header: about two per symbol.
+	 */
+	private static int headerBytes(CanonicalCode code) {
+		return 2 + 2 * code.size();
+	}
+
+	/**
+	 * Writes the text to out: a header holding the alphabet and every table's code
+	 * lengths, a checksum, then the packed bits.
+	 */
+	public void write(String text, OutputStream out) throws IOException {
+		write(text, out, ProgressListener.NONE);
+	}
+
+	/**
+	 * Writes the text to out, reporting progress in chars encoded.
+	 */
+	public void write(String text, OutputStream out, ProgressListener progress) throws IOException {
+		// Encode, switching tables on the previous symbol
+		int[] symbolOf = new int[HuffmanCoding.ALPHABET_SIZE];
+		Arrays.fill(symbolOf, -1);
+		for (int s = 0; s < alphabet.length; s++) {
+			symbolOf[alphabet[s]] = s;
+		}
+		long[][] codes = new long[tables.length][];
+		int[][] lengths = new int[tables.length][];
+		for (int t = 0; t < tables.length; t++) {
+			codes[t] = tables[t].codes;
+			lengths[t] = tables[t].lengths;
+		}
+		BitWriter writer = new BitWriter();
+		int previous = alphabet.length;
+		for (int i = 0; i < text.length(); i++) {
+			int symbol = symbolOf[text.charAt(i)];
+			if (symbol < 0) {
+				throw new IllegalArgumentException("Symbol not in the code: " + text.charAt(i));
+			}
+			int t = tableOf[previous];
+			int length = lengths[t][symbol];
+			if (length == 0) {
+				throw new IllegalArgumentException("Symbol not in the code for its context: " + text.charAt(i));
+			}
+			writer.write(codes[t][symbol], length);
+			previous = symbol;
+			if ((i + 1) % REPORT_INTERVAL == 0) {
+				progress.progress(i + 1, text.length());
+			}
+		}
+		progress.progress(text.length(), text.length());
+		byte[] packed = writer.toByteArray();
+
+		// Header
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(FORMAT_VERSION);
+		VarInt.write(data, text.length());
+		VarInt.write(data, alphabet.length);
+		int last = 0;
+		for (char c : alphabet) {
+			VarInt.write(data, c - last);
+			last = c;
+		}
+
+		// Tables, the shared one first, then each context's with its context symbol
+		VarInt.write(data, tables.length);
+		writeTable(data, tables[SHARED]);
+		for (int s = 0; s < alphabet.length; s++) {
+			if (tableOf[s] != SHARED) {
+				VarInt.write(data, s);
+				writeTable(data, tables[tableOf[s]]);
+			}
+		}
+		data.writeInt(HuffmanCoding.checksum(text));
+
+		// Bitstream
+		VarInt.write(data, packed.length);
+		data.write(packed);
+		data.flush();
+	}
+
+	/**
+	 * Writes a code as its used symbols (each as the gap from the last) and their
+	 * lengths.
+	 */
+	private static void writeTable(DataOutputStream data, CanonicalCode code) throws IOException {
+		VarInt.write(data, code.size());
+		int last = 0;
+		for (int s = 0; s < code.lengths.length; s++) {
+			if (code.length(s) > 0) {
+				VarInt.write(data, s - last);
+				data.writeByte(code.length(s));
+				last = s;
+			}
+		}
+	}
+
+	/**
+	 * Reads a code written by writeTable.
+	 */
+	private static CanonicalCode readTable(DataInputStream data, int alphabetSize) throws IOException {
+		int[] lengths = new int[alphabetSize];
+		int count = VarInt.readInt(data);
+		int symbol = 0;
+		for (int i = 0; i < count; i++) {
+			symbol += VarInt.readInt(data);
+			if (symbol < 0 || symbol >= alphabetSize) {
+				throw new IOException("Invalid symbol in header: " + symbol);
+			}
+			lengths[symbol] = data.readUnsignedByte();
+		}
+		try {
+			return new CanonicalCode(lengths);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt order-1 Huffman header.", e);
+		}
+	}
+
+	/**
+	 * Reads a file written by write and decodes the text.
+	 *
+	 * @throws IOException if the file is not an order-1 Huffman file or is corrupt
+	 */
+	public static String decode(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+
+		// Header
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not an order-1 Huffman coded file.");
+		}
+		int version = data.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported order-1 Huffman file version: " + version);
+		}
+		int length = VarInt.readInt(data);
+		int n = VarInt.readInt(data);
+		if (n < 1 || n > HuffmanCoding.ALPHABET_SIZE) {
+			throw new IOException("Invalid alphabet size: " + n);
+		}
+		char[] alphabet = new char[n];
+		int c = 0;
+		for (int s = 0; s < n; s++) {
+			c += VarInt.readInt(data);
+			if (c >= HuffmanCoding.ALPHABET_SIZE) {
+				throw new IOException("Invalid char in header: " + c);
+			}
+			alphabet[s] = (char) c;
+		}
+
+		// Tables
+		int tableCount = VarInt.readInt(data);
+		if (tableCount < 1 || tableCount > maxContexts(n) + 1) {
+			throw new IOException("Invalid table count: " + tableCount);
+		}
+		CanonicalCode[] tables = new CanonicalCode[tableCount];
+		int[] tableOf = new int[n + 1];
+		tables[SHARED] = readTable(data, n);
+		for (int t = 1; t < tableCount; t++) {
+			int context = VarInt.readInt(data);
+			if (context >= n || tableOf[context] != SHARED) {
+				throw new IOException("Invalid context in header: " + context);
+			}
+			tableOf[context] = t;
+			tables[t] = readTable(data, n);
+		}
+		int expectedChecksum = data.readInt();
+
+		// Bitstream. Every char takes at least one bit, so a longer text can
+		// only be a corrupt header.
+		byte[] packed = HuffmanCoding.readBytes(data, VarInt.readInt(data));
+		if (length > 8L * packed.length) {
+			throw new IOException("Corrupt order-1 Huffman header, " + length + " chars can't fit in "
+					+ packed.length + " bytes.");
+		}
+
+		String decoded = new ContextHuffmanCoding(alphabet, tables, tableOf).decode(packed, length);
+		if (HuffmanCoding.checksum(decoded) != expectedChecksum) {
+			throw new IOException("Checksum mismatch, the order-1 Huffman file is corrupt.");
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes length chars from the packed bits, switching decode tables on the
+	 * previous symbol.
+	 */
+	private String decode(byte[] packed, int length) throws IOException {
+		HuffmanDecoder[] decoders = new HuffmanDecoder[tables.length];
+		for (int t = 0; t < tables.length; t++) {
+			decoders[t] = new HuffmanDecoder(tables[t], DECODE_TABLE_BITS);
+		}
+		char[] text = new char[length];
+		BitReader reader = new BitReader(packed);
+		int previous = alphabet.length;
+		try {
+			for (int i = 0; i < length; i++) {
+				int symbol = decoders[tableOf[previous]].decodeSymbol(reader);
+				text[i] = alphabet[symbol];
+				previous = symbol;
+			}
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt order-1 Huffman bitstream.", e);
+		}
+		return new String(text);
+	}
+
+	/**
+	 * Some statistics comparing the order-1 code to a plain order-0 code.
+	 */
+	public String getInformation() {
+		long header = 0;
+		for (CanonicalCode table : tables) {
+			header += headerBytes(table);
+		}
+		StringBuilder info = new StringBuilder();
+		info.append("symbols: " + alphabet.length + "\n");
+		info.append("contexts with their own code: " + (tables.length - 1) + "\n");
+		info.append("approximate table header: " + header + " bytes\n");
+		info.append("order-0 coded size: " + (order0Bits + 7) / 8 + " bytes\n");
+		info.append("order-1 coded size: " + (order1Bits + 7) / 8 + " bytes\n");
+		return info.toString();
+	}
+}
@@ -0,0 +1,103 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ContextHuffmanTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, a single char, one char repeated, ordinary text, text
+        // outside the Basic Multilingual Plane, an alphabet too large for
+        // MAX_CODE_LENGTH, and one where every char predicts the next but there
+        // are too many to give each a table
+        StringBuilder allChars = new StringBuilder();
+        for (char c = 0; c < 0xD800; c++) {
+            allChars.append(c);
+        }
+        StringBuilder largeAlphabet = new StringBuilder();
+        for (int i = 0; i < 2000000; i++) {
+            largeAlphabet.append((char) (0x100 + i % 20000));
+        }
+        String[] texts = { "a", "a".repeat(1000),
+                "the cat sat on the mat, then the other cat sat there.\n".repeat(2000),
+                "\uD83D\uDE00 smile \uD835\uDD04 fraktur \uD83D\uDE00".repeat(100),
+                allChars.toString().repeat(3), largeAlphabet.toString() };
+
+        // Every text should come back
+        for (String text : texts) {
+            ContextHuffmanCoding coding = new ContextHuffmanCoding(text);
+            byte[] file = write(coding, text);
+            String decoded = ContextHuffmanCoding.decode(new ByteArrayInputStream(file));
+            System.out.println((text.equals(decoded) ? "OK!! " : "Wrong!! ") + text.length() + " chars, "
+                    + coding.alphabet.length + " symbols, " + (coding.tables.length - 1) + " contexts -> "
+                    + file.length + " bytes and back");
+        }
+
+        // Large alphabets should get fewer contexts, so the tables stay bounded
+        ContextHuffmanCoding large = new ContextHuffmanCoding(texts[5]);
+        long entries = (long) large.tables.length * large.alphabet.length;
+        boolean capped = large.tables.length == ContextHuffmanCoding.maxContexts(large.alphabet.length) + 1;
+        System.out.println((capped && entries <= ContextHuffmanCoding.MAX_TABLE_ENTRIES ? "OK!! " : "Wrong!! ")
+                + large.alphabet.length + " symbols use " + entries + " table entries");
+
+        // Damaged files should be refused with an IOException
+        String text = texts[2];
+        byte[] file = write(new ContextHuffmanCoding(text), text);
+        expectFailure("truncated file", Arrays.copyOf(file, file.length - 10));
+        byte[] flipped = file.clone();
+        flipped[flipped.length - 20] ^= 0x10;
+        expectFailure("flipped bit", flipped);
+        expectFailure("huge text length", header(Integer.MAX_VALUE, 1, 1, 4));
+        expectFailure("huge bitstream", header(10, 1, 1, Integer.MAX_VALUE));
+        expectFailure("huge table count", header(10, 0xD7FF, 0xD800, 4));
+        expectFailure("empty alphabet", header(10, 0, 1, 4));
+    }
+
+    private static byte[] write(ContextHuffmanCoding coding, String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        coding.write(text, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A header for a text of the given length over the first alphabetSize
+     * chars, claiming the given number of tables, each coding only char 0,
+     * and bytes of bits, with only a few bytes after it.
+     */
+    private static byte[] header(int length, int alphabetSize, int tableCount, int packedLength)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x48433100);
+        data.writeByte(1);
+        VarInt.write(data, length);
+        VarInt.write(data, alphabetSize);
+        for (int s = 0; s < alphabetSize; s++) {
+            VarInt.write(data, s == 0 ? 0 : 1);
+        }
+        VarInt.write(data, tableCount);
+        for (int t = 0; t < tableCount; t++) {
+            if (t > 0) {
+                VarInt.write(data, t - 1);
+            }
+            VarInt.write(data, 1);
+            VarInt.write(data, 0);
+            data.writeByte(1);
+        }
+        data.writeInt(0);
+        VarInt.write(data, packedLength);
+        data.write(new byte[4]);
+        return bytes.toByteArray();
+    }
+
+    private static void expectFailure(String what, byte[] file) {
+        try {
+            ContextHuffmanCoding.decode(new ByteArrayInputStream(file));
+            System.out.println("Wrong!! A " + what + " was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A " + what + " was refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " failed with " + e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * A Swing Document seen as a CharSequence, so the search algorithms can scan
+ * the editor's text in place rather than copying it out with getText() first.
+ * It reads the document a piece at a time through a Segment with partial
+ * returns allowed. A Segment points straight into the document's storage, so
+ * each piece (up to the gap in the gap buffer) is read without copying.
+ *
+ * The document must not change while the sequence is in use: use it on the
+ * event thread, or inside Document.render (see searchAll).
+ */
+public class DocumentCharSequence implements CharSequence {
+
+	private final Document document;
+	private final int start;
+	private final int length;
+
+	// The piece of the document last fetched, covering [segmentStart, segmentEnd)
+	// of this sequence
+	private final Segment segment = new Segment();
+	private int segmentStart;
+	private int segmentEnd;
+
+	public DocumentCharSequence(Document document) {
+		this(document, 0, document.getLength());
+	}
+
+	private DocumentCharSequence(Document document, int start, int length) {
+		this.document = document;
+		this.start = start;
+		this.length = length;
+		segment.setPartialReturn(true);
+	}
+
+	/**
+	 * Every match of the pattern in the document, found with KMP while holding
+	 * the document's read lock, so it's safe to call off the event thread.
+	 */
+	public static int[] searchAll(Document document, String pattern) {
+		int[][] matches = new int[1][];
+		document.render(() -> matches[0] = KMP.searchAll(pattern, new DocumentCharSequence(document)));
+		return matches[0];
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < segmentStart || index >= segmentEnd) {
+			fetch(index);
+		}
+		return segment.array[segment.offset + index - segmentStart];
+	}
+
+	/**
+	 * Points the segment at the piece of the document holding index.
+	 */
+	private void fetch(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+		}
+		try {
+			document.getText(start + index, length - index, segment);
+		} catch (BadLocationException e) {
+			throw new IllegalStateException("The document changed while it was being read.", e);
+		}
+		segmentStart = index;
+		segmentEnd = index + segment.count;
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || to > length || from > to) {
+			throw new IndexOutOfBoundsException("Range " + from + " to " + to + " of " + length);
+		}
+		return new DocumentCharSequence(document, start + from, to - from);
+	}
+
+	/**
+	 * A copy of the text, for when a real String is needed.
+	 */
+	@Override
+	public String toString() {
+		try {
+			return document.getText(start, length);
+		} catch (BadLocationException e) {
+			throw new IllegalStateException("The document changed while it was being read.", e);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JLabel;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Search as you type for the editor. Every match of the query is highlighted,
+ * and next / previous move between them from the caret.
+ *
+ * Typing restarts a short timer, and only when it runs out is a search started,
+ * on a background thread. The search reads the editor's document in place
+ * through a DocumentCharSequence, rather than copying it out with getText().
+ * When the query has only grown since the last search (and the text hasn't
+ * changed) the old matches are narrowed down instead of scanning the whole
+ * text again, since every match of the longer query starts at a match of the
+ * shorter one. Matches are kept as a sorted int[], so finding
+ * the match after the caret is a binary search, and they are painted by a
+ * single highlight whose painter only draws the matches in view. The current
+ * match is drawn in its own colour, so it shows even while the search field
+ * has the focus.
+ */
+public class EditorSearch {
+
+	// How long typing has to pause before a search starts
+	static final int DEBOUNCE_MILLIS = 150;
+
+	private static final Color MATCH_COLOR = Color.YELLOW;
+	private static final Color CURRENT_COLOR = Color.ORANGE;
+
+	private final JTextArea editor;
+	private final JTextField field;
+	private final JLabel status;
+	private final Timer debounce;
+	private final MatchPainter painter = new MatchPainter();
+
+	// The query and matches of the last finished search, and the number of edits
+	// made to the editor before it. Once the editor has been edited again, the
+	// next search rescans.
+	private String query = "";
+	private int[] matches = new int[0];
+	private int searchedEdits = -1;
+	private int edits;
+
+	// Index of the selected match, or -1
+	private int current = -1;
+
+	// Bumped for every search, so late results from an old one are ignored
+	private int generation;
+	private SwingWorker<int[], Void> worker;
+
+	/**
+	 * @param editor the text to search
+	 * @param field  where the query is typed
+	 * @param status label to show the match count in
+	 */
+	public EditorSearch(JTextArea editor, JTextField field, JLabel status) {
+		this.editor = editor;
+		this.field = field;
+		this.status = status;
+
+		debounce = new Timer(DEBOUNCE_MILLIS, e -> search());
+		debounce.setRepeats(false);
+
+		try {
+			editor.getHighlighter().addHighlight(0, 0, painter);
+		} catch (BadLocationException e) {
+			throw new IllegalStateException(e);
+		}
+
+		field.getDocument().addDocumentListener(new Changes() {
+			@Override
+			void changed() {
+				debounce.restart();
+			}
+		});
+		editor.getDocument().addDocumentListener(new Changes() {
+			@Override
+			void changed() {
+				edits++;
+				if (!query.isEmpty()) {
+					debounce.restart();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts a search for the query in the field, unless one for it is already
+	 * up to date.
+	 */
+	private void search() {
+		String next = field.getText();
+		if (next.equals(query) && searchedEdits == edits) {
+			return;
+		}
+		if (worker != null) {
+			worker.cancel(true);
+		}
+		int searchGeneration = ++generation;
+
+		int searchEdits = edits;
+		if (next.isEmpty()) {
+			show("", new int[0], searchEdits);
+			return;
+		}
+
+		// Narrow the last matches if the query only grew, otherwise scan the whole
+		// text. Either way the document is read in place, under its read lock.
+		boolean narrow = searchedEdits == edits && !query.isEmpty() && next.startsWith(query);
+		Document document = editor.getDocument();
+		int[] previous = matches;
+		int previousLength = query.length();
+		status.setText("searching...");
+
+		worker = new SwingWorker<int[], Void>() {
+			@Override
+			protected int[] doInBackground() {
+				if (narrow) {
+					int[][] narrowed = new int[1][];
+					document.render(() -> narrowed[0] = narrow(new DocumentCharSequence(document), previous, next,
+							previousLength));
+					return narrowed[0];
+				}
+				return DocumentCharSequence.searchAll(document, next);
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled() || searchGeneration != generation) {
+					return;
+				}
+				try {
+					show(next, get(), searchEdits);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					status.setText("search failed");
+				}
+			}
+		};
+		worker.execute();
+	}
+
+	/**
+	 * The matches of query, given the matches of its first checked chars: those
+	 * that also match the rest of the query.
+	 */
+	static int[] narrow(CharSequence text, int[] matches, String query, int checked) {
+		int[] narrowed = new int[matches.length];
+		int count = 0;
+		int length = text.length();
+		for (int match : matches) {
+			if (match + query.length() > length) {
+				continue;
+			}
+			int i = checked;
+			while (i < query.length() && text.charAt(match + i) == query.charAt(i)) {
+				i++;
+			}
+			if (i == query.length()) {
+				narrowed[count++] = match;
+			}
+		}
+		return Arrays.copyOf(narrowed, count);
+	}
+
+	/**
+	 * Makes a finished search the current one, and repaints the highlights.
+	 */
+	private void show(String query, int[] matches, int searchEdits) {
+		this.query = query;
+		this.matches = matches;
+		this.searchedEdits = searchEdits;
+		current = -1;
+		painter.matches = matches;
+		painter.length = query.length();
+		painter.current = -1;
+		editor.repaint();
+
+		if (query.isEmpty()) {
+			status.setText("");
+		} else if (matches.length == 0) {
+			status.setText("no matches");
+		} else {
+			select(firstAfter(editor.getSelectionStart() - 1));
+		}
+	}
+
+	/**
+	 * Selects the first match after the caret, wrapping around to the start.
+	 */
+	public void next() {
+		if (!upToDate()) {
+			return;
+		}
+		int caret = current >= 0 ? matches[current] : editor.getCaretPosition() - 1;
+		int index = firstAfter(caret);
+		select(index == matches.length ? 0 : index);
+	}
+
+	/**
+	 * Selects the last match before the caret, wrapping around to the end.
+	 */
+	public void previous() {
+		if (!upToDate()) {
+			return;
+		}
+		int caret = current >= 0 ? matches[current] : editor.getCaretPosition();
+		int index = firstAfter(caret - 1) - 1;
+		select(index < 0 ? matches.length - 1 : index);
+	}
+
+	/**
+	 * Runs any pending search straight away, returning whether there are matches
+	 * to move between.
+	 */
+	private boolean upToDate() {
+		if (debounce.isRunning()) {
+			debounce.stop();
+			search();
+		}
+		return searchedEdits == edits && field.getText().equals(query) && matches.length > 0;
+	}
+
+	/**
+	 * Index of the first match starting after position, or matches.length if
+	 * there isn't one.
+	 */
+	private int firstAfter(int position) {
+		int index = Arrays.binarySearch(matches, position + 1);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	private void select(int index) {
+		if (index >= matches.length) {
+			index = 0;
+		}
+		current = index;
+		painter.current = matches[index];
+		status.setText((index + 1) + " of " + matches.length);
+		editor.setSelectionColor(CURRENT_COLOR);
+		editor.select(matches[index], matches[index] + query.length());
+		try {
+			// The caret only scrolls itself into view when the editor has focus
+			editor.scrollRectToVisible(editor.modelToView2D(matches[index]).getBounds());
+		} catch (BadLocationException e) {
+			// Out of date, the next search will fix it
+		}
+		editor.repaint();
+	}
+
+	/**
+	 * Paints every match in the visible part of the editor. It is added as one
+	 * highlight, so a search with thousands of matches costs one repaint rather
+	 * than thousands of highlight changes.
+	 */
+	private static class MatchPainter implements Highlighter.HighlightPainter {
+		int[] matches = new int[0];
+		int length;
+		int current = -1;
+
+		@Override
+		public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+			if (matches.length == 0) {
+				return;
+			}
+			Rectangle clip = g.getClipBounds();
+			if (clip == null) {
+				clip = bounds.getBounds();
+			}
+
+			// Only the matches that start between the first and last visible chars
+			int first = c.viewToModel2D(new Point(clip.x, clip.y));
+			int last = c.viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height));
+			int index = Arrays.binarySearch(matches, Math.max(0, first - length));
+			index = index >= 0 ? index : -index - 1;
+
+			int docLength = c.getDocument().getLength();
+			for (; index < matches.length && matches[index] <= last; index++) {
+				int start = matches[index];
+				if (start + length > docLength) {
+					continue;
+				}
+				g.setColor(start == current ? CURRENT_COLOR : MATCH_COLOR);
+				try {
+					Rectangle2D from = c.modelToView2D(start);
+					Rectangle2D to = c.modelToView2D(start + length);
+					if (from.getY() == to.getY()) {
+						g.fillRect((int) from.getX(), (int) from.getY(), (int) (to.getX() - from.getX()),
+								(int) from.getHeight());
+					} else {
+						// Wrapped onto the next line: the end of the first line and the start of
+						// the last
+						Rectangle area = bounds.getBounds();
+						g.fillRect((int) from.getX(), (int) from.getY(), area.x + area.width - (int) from.getX(),
+								(int) from.getHeight());
+						g.fillRect(area.x, (int) to.getY(), (int) to.getX() - area.x, (int) to.getHeight());
+					}
+				} catch (BadLocationException e) {
+					// The text changed under the matches, the next search will fix them up
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A DocumentListener that treats every kind of change the same.
+	 */
+	private abstract static class Changes implements DocumentListener {
+		abstract void changed();
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			changed();
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			changed();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+			changed();
+		}
+	}
+}
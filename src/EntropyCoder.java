@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An order-0 entropy coder over bytes: it models the data by its byte
+ * frequencies and codes each byte according to them. Each coder turns a block
+ * of bytes into a self-contained encoded block (model included) and back.
+ *
+ * Coders are selected per stream: encodeStream puts the coder's id in front of
+ * its block, and decodeStream picks the matching coder to decode it.
+ */
+public interface EntropyCoder {
+
+	/**
+	 * Every coder that can be selected, indexed by id.
+	 */
+	EntropyCoder[] CODERS = { new HuffmanEntropyCoder(), new RansCoding() };
+
+	/**
+	 * Number identifying this coder in a stream.
+	 */
+	int id();
+
+	/**
+	 * Name to show to the user.
+	 */
+	String getName();
+
+	/**
+	 * Encodes the data into a self-contained block.
+	 */
+	byte[] encode(byte[] data);
+
+	/**
+	 * Decodes a block produced by encode.
+	 *
+	 * @throws IOException if the block is corrupt
+	 */
+	byte[] decode(byte[] block) throws IOException;
+
+	/**
+	 * Encodes the data with the given coder, tagged with the coder's id.
+	 */
+	static byte[] encodeStream(EntropyCoder coder, byte[] data) {
+		byte[] block = coder.encode(data);
+		byte[] stream = new byte[block.length + 1];
+		stream[0] = (byte) coder.id();
+		System.arraycopy(block, 0, stream, 1, block.length);
+		return stream;
+	}
+
+	/**
+	 * Decodes a stream produced by encodeStream with whichever coder wrote it.
+	 *
+	 * @throws IOException if the stream is corrupt or the coder is unknown
+	 */
+	static byte[] decodeStream(byte[] stream) throws IOException {
+		if (stream.length == 0) {
+			throw new IOException("Empty entropy coded stream.");
+		}
+		return forId(stream[0] & 0xFF).decode(Arrays.copyOfRange(stream, 1, stream.length));
+	}
+
+	/**
+	 * The coder with the given id.
+	 *
+	 * @throws IOException if there is no such coder
+	 */
+	static EntropyCoder forId(int id) throws IOException {
+		for (EntropyCoder coder : CODERS) {
+			if (coder.id() == id) {
+				return coder;
+			}
+		}
+		throw new IOException("Unknown entropy coder: " + id);
+	}
+}
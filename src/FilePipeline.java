@@ -0,0 +1,452 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * File I/O for the codecs, built on FileChannels and a shared pool of direct
+ * ByteBuffers. Input is read ahead on a background thread while the codec
+ * works on the buffer before, and output is written behind on another, so the
+ * disk and the codec overlap. Both sides are plain InputStream and
+ * OutputStream views, so any codec that streams can use them, and a streaming
+ * codec run through run() only ever holds a few buffers of the file.
+ */
+public class FilePipeline {
+
+	// Size of each pooled buffer
+	static final int BUFFER_SIZE = 1 << 16;
+
+	// Buffers each stream may have in flight, so how far reads get ahead and
+	// writes fall behind
+	static final int BUFFERS_PER_STREAM = 4;
+
+	// Most free buffers kept in the pool
+	private static final int MAX_POOLED = 64;
+
+	// Marks the end of the buffers passed between a stream and its thread
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+	// Daemon threads, so a stream that is never closed can't keep the JVM alive
+	private static final ExecutorService threads = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "file-pipeline");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * A codec step that reads all of in and writes its result to out.
+	 */
+	public interface Transform {
+		void apply(InputStream in, OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Runs the transform from the input file to the output file.
+	 */
+	public static void run(Path input, Path output, Transform transform) throws IOException {
+		try (InputStream in = newInputStream(input); OutputStream out = newOutputStream(output)) {
+			transform.apply(in, out);
+		}
+	}
+
+	/**
+	 * A stream over the file, read ahead on a background thread.
+	 */
+	public static InputStream newInputStream(Path path) throws IOException {
+		return new ChannelInputStream(FileChannel.open(path, StandardOpenOption.READ));
+	}
+
+	/**
+	 * A stream that creates or truncates the file and writes it behind on a
+	 * background thread. Write errors are thrown by a later write, or by close.
+	 */
+	public static OutputStream newOutputStream(Path path) throws IOException {
+		return new ChannelOutputStream(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	/**
+	 * Reads a whole text file, decoding straight from the pooled buffers so no
+	 * byte copy of the file is held. Malformed input is replaced, as new
+	 * String(bytes, charset) does.
+	 *
+	 * The chars are gathered in a StringBuilder, so for a moment at the end the
+	 * text is held twice: in the builder and in the String made from it. There
+	 * is no way to hand a String its chars without a copy, and a builder holds
+	 * Latin-1 text at one byte a char where a char[] would take two, so this
+	 * is no more than decoding into a char[] would peak at.
+	 */
+	public static String readText(Path path, Charset charset) throws IOException {
+		long size = path.toFile().length();
+		TextDecoder text = new TextDecoder(charset, size);
+		try (ChannelInputStream in = new ChannelInputStream(FileChannel.open(path, StandardOpenOption.READ))) {
+			ByteBuffer bytes;
+			while ((bytes = in.nextBuffer()) != null) {
+				text.decode(bytes);
+			}
+		}
+		return text.finish();
+	}
+
+	/**
+	 * Reads the rest of a stream as text, a buffer at a time, so that as with a
+	 * file no byte copy of all of it is held alongside the text.
+	 */
+	public static String readText(InputStream in, Charset charset) throws IOException {
+		return readText(in, charset, BUFFER_SIZE);
+	}
+
+	/**
+	 * Reads the rest of a stream as text, as above, making room up front for
+	 * the given number of bytes of it.
+	 */
+	public static String readText(InputStream in, Charset charset, long expectedBytes) throws IOException {
+		TextDecoder text = new TextDecoder(charset, expectedBytes);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = in.read(buffer)) >= 0) {
+			text.decode(ByteBuffer.wrap(buffer, 0, n));
+		}
+		return text.finish();
+	}
+
+	/**
+	 * Decodes text a buffer of bytes at a time, carrying any char split across
+	 * the end of one buffer over to the next.
+	 */
+	private static class TextDecoder {
+		private final CharsetDecoder decoder;
+		private final StringBuilder text;
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+		// Bytes left over from the end of one buffer, the start of a split char
+		private final ByteBuffer carry = ByteBuffer.allocate(16);
+
+		TextDecoder(Charset charset, long expectedBytes) {
+			decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			text = new StringBuilder((int) Math.min(expectedBytes, Integer.MAX_VALUE - 8));
+		}
+
+		/**
+		 * Decodes all of the bytes, keeping any unfinished char for next time.
+		 */
+		void decode(ByteBuffer bytes) {
+			// Finish the split char a byte at a time, then carry on in the buffer
+			while (carry.position() > 0 && bytes.hasRemaining()) {
+				carry.put(bytes.get());
+				carry.flip();
+				decode(carry, false);
+				carry.compact();
+			}
+			decode(bytes, false);
+			carry.put(bytes);
+		}
+
+		String finish() {
+			carry.flip();
+			decode(carry, true);
+			decoder.flush(chars);
+			chars.flip();
+			text.append(chars);
+			return text.toString();
+		}
+
+		private void decode(ByteBuffer bytes, boolean endOfInput) {
+			while (true) {
+				CoderResult result = decoder.decode(bytes, chars, endOfInput);
+				if (result.isOverflow()) {
+					chars.flip();
+					text.append(chars);
+					chars.clear();
+				} else {
+					return;
+				}
+			}
+		}
+	}
+
+	static ByteBuffer acquire() {
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	static void release(ByteBuffer buffer) {
+		if (buffer != null && buffer != END && buffer.isDirect() && pool.size() < MAX_POOLED) {
+			pool.offer(buffer);
+		}
+	}
+
+	/**
+	 * Reads the channel ahead into pooled buffers on a background thread, and
+	 * hands them out in order.
+	 */
+	private static class ChannelInputStream extends InputStream {
+		private final FileChannel channel;
+		private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFERS_PER_STREAM + 1);
+		private final Future<?> reader;
+		private volatile IOException failure;
+
+		// The buffer being read from, and whether the end has been reached
+		private ByteBuffer current;
+		private boolean ended;
+
+		ChannelInputStream(FileChannel channel) {
+			this.channel = channel;
+			this.reader = threads.submit(this::readAhead);
+		}
+
+		private void readAhead() {
+			try {
+				while (true) {
+					ByteBuffer buffer = acquire();
+					if (channel.read(buffer) < 0) {
+						release(buffer);
+						break;
+					}
+					buffer.flip();
+					filled.put(buffer);
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (InterruptedException e) {
+				// Closed before the end
+				return;
+			}
+			try {
+				filled.put(END);
+			} catch (InterruptedException e) {
+				// Closed before the end was taken
+			}
+		}
+
+		/**
+		 * The next buffer with data in it, or null at the end of the file. The
+		 * caller reads it, and it is released on the next call.
+		 */
+		ByteBuffer nextBuffer() throws IOException {
+			release(current);
+			current = null;
+			if (ended) {
+				return null;
+			}
+			ByteBuffer next;
+			try {
+				next = filled.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading.");
+			}
+			if (next == END) {
+				ended = true;
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}
+			current = next;
+			return current;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (current == null || !current.hasRemaining()) {
+				if (nextBuffer() == null) {
+					return -1;
+				}
+			}
+			return current.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			while (current == null || !current.hasRemaining()) {
+				if (nextBuffer() == null) {
+					return -1;
+				}
+			}
+			int n = Math.min(length, current.remaining());
+			current.get(buffer, offset, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return current == null ? 0 : current.remaining();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// Interrupting the reader may close the channel under it, which is fine
+			// since it's being closed anyway
+			reader.cancel(true);
+			release(current);
+			current = null;
+			ended = true;
+			ByteBuffer buffer;
+			while ((buffer = filled.poll()) != null) {
+				release(buffer);
+			}
+			channel.close();
+		}
+	}
+
+	/**
+	 * Fills pooled buffers, and writes full ones to the channel on a background
+	 * thread.
+	 */
+	private static class ChannelOutputStream extends OutputStream {
+		private final FileChannel channel;
+		private final BlockingQueue<ByteBuffer> pending = new ArrayBlockingQueue<>(BUFFERS_PER_STREAM + 1);
+		private final Future<?> writer;
+		private volatile IOException failure;
+
+		// The buffer being filled, and whether close has been called
+		private ByteBuffer current;
+		private boolean closed;
+
+		ChannelOutputStream(FileChannel channel) {
+			this.channel = channel;
+			this.writer = threads.submit(this::writeBehind);
+		}
+
+		private void writeBehind() {
+			try {
+				while (true) {
+					ByteBuffer buffer = pending.take();
+					if (buffer == END) {
+						return;
+					}
+					try {
+						// After a failure keep taking buffers, so the writer never blocks
+						while (failure == null && buffer.hasRemaining()) {
+							channel.write(buffer);
+						}
+					} catch (IOException e) {
+						failure = e;
+					}
+					release(buffer);
+				}
+			} catch (InterruptedException e) {
+				// Abandoned
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (current == null) {
+				begin();
+			}
+			current.put((byte) b);
+			if (!current.hasRemaining()) {
+				handOff();
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (current == null) {
+					begin();
+				}
+				int n = Math.min(length, current.remaining());
+				current.put(bytes, offset, n);
+				offset += n;
+				length -= n;
+				if (!current.hasRemaining()) {
+					handOff();
+				}
+			}
+		}
+
+		private void begin() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed.");
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			current = acquire();
+		}
+
+		/**
+		 * Passes the current buffer to the writer thread.
+		 */
+		private void handOff() throws IOException {
+			current.flip();
+			try {
+				pending.put(current);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while writing.");
+			} finally {
+				current = null;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (current != null && current.position() > 0) {
+				handOff();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+		/**
+		 * Waits for everything to be written, then closes the file.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if (current != null && current.position() > 0) {
+					handOff();
+				}
+				pending.put(END);
+				writer.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while closing.");
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			} finally {
+				// Stops the writer if it never got the end marker
+				writer.cancel(true);
+				channel.close();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Compares decode speed of the single stream and interleaved Huffman formats.
+ * Pass the file to use as the first argument, war_and_peace.txt by default.
+ */
+public class HuffmanBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "war_and_peace.txt";
+        String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        HuffmanCoding huffman = new HuffmanCoding(text);
+
+        System.out.println("File: " + file + " (" + text.length() + " chars)");
+        for (int streams : new int[] { 1, HuffmanCoding.INTERLEAVED_STREAMS }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            huffman.write(text, out, streams);
+            byte[] encoded = out.toByteArray();
+
+            // let the JIT settle before timing anything
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                HuffmanCoding.decode(new ByteArrayInputStream(encoded));
+            }
+
+            long best = Long.MAX_VALUE;
+            boolean matches = true;
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = System.nanoTime();
+                String decoded = HuffmanCoding.decode(new ByteArrayInputStream(encoded));
+                best = Math.min(best, System.nanoTime() - start);
+                matches &= decoded.equals(text);
+            }
+
+            // throughput in MB of decoded UTF-16 chars per second
+            double megabytes = text.length() * 2 / 1e6;
+            System.out.printf("%d stream(s): %d bytes, best decode %.2f ms, %.0f MB/s, %s%n", streams,
+                    encoded.length, best / 1e6, megabytes / (best / 1e9), matches ? "matches" : "DOES NOT match");
+        }
+    }
+}
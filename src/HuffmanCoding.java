@@ -6,8 +6,16 @@
  * the encode and decode methods.
  */
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 /**
  * Implementation of Huffman Algorithm (Final).
  * @author wgrbu
@@ -18,71 +26,157 @@ public class HuffmanCoding {
 	/**
 	 * Inner Class to act as leaf
 	 */
-	record Node(double weight, int code, String symbol, Node leftChild, Node rightChild) implements Comparable<Node> {
+	record Node(long weight, int code, String symbol, Node leftChild, Node rightChild) {
+	}
 
-		/**
-		 * Compares Nodes based on weight
-		 */
-		public int compareTo(Node o) {
+	// Number of distinct char values a symbol can take
+	static final int ALPHABET_SIZE = Character.MAX_VALUE + 1;
 
-			// Compare lexicographically if dealing with two char nodes
-			if (this.weight == o.weight && this.symbol != null && o.symbol != null) {
-				return this.symbol.compareTo(o.symbol);
-			}
-			// Else compare by weight
-			return Double.compare(this.weight, o.weight);
-		}
-	}
+	// Identifies a file written by write(), "HUF" followed by a 0 byte
+	private static final int MAGIC = 0x48554600;
+	private static final int FORMAT_VERSION = 2;
+
+	// Number of streams written when the bits are interleaved
+	static final int INTERLEAVED_STREAMS = 4;
+
+	// Texts at least this long have their frequencies counted in parallel
+	private static final int PARALLEL_THRESHOLD = 1 << 20;
+	private static final int PARALLEL_CHUNK = 1 << 18;
+
+	// Parallel chunks encoded between progress reports
+	private static final int CHUNKS_PER_REPORT = Runtime.getRuntime().availableProcessors();
 
 	// Fields for Huffman Class
 	Node HuffmanTree;
+	CanonicalCode code;
+	HuffmanDecoder decoder;
+
+	// Statistics for getInformation
+	int[] frequencies;
+	int maxCodeLength;
+	long unlimitedBits;
 
 	/**
 	 * This would be a good place to compute and store the tree.
 	 */
 	public HuffmanCoding(String text) {
+		this(text, 0);
+	}
+
+	/**
+	 * Builds the code for the text with no code longer than maxCodeLength bits.
+	 * The limited code is still the best possible under that limit (found with
+	 * package-merge), at a small cost in ratio compared to an unrestricted tree.
+	 *
+	 * @param text
+	 * @param maxCodeLength longest code allowed, or 0 for no limit
+	 */
+	public HuffmanCoding(String text, int maxCodeLength) {
 		
 		// Handle obvious errors
 		if (text == null || text.length() == 0) {throw new IllegalArgumentException("Empty / null string.");}
+		if (maxCodeLength < 0) {throw new IllegalArgumentException("Negative code length limit.");}
 		
-		// Get a collection of unique chars
-		Set<String> symbolsUsed = new HashSet<>();
+		// Count how often each char appears in the text
+		frequencies = countFrequencies(text);
+		this.maxCodeLength = maxCodeLength;
+
+		// Work out the Huffman code length of each symbol, and hand out canonical
+		// codes based on those lengths
+		code = new CanonicalCode(CodeLengths.huffman(frequencies));
+		unlimitedBits = code.encodedBits(frequencies);
+
+		// If the tree is too deep, swap in the best code that fits the limit
+		if (maxCodeLength > 0 && code.maxLength > maxCodeLength) {
+			code = new CanonicalCode(CodeLengths.limited(frequencies, maxCodeLength));
+		}
 
-		// collection of chars in text
-		List<String> textList = new ArrayList<>();
+		// Set the Tree field to be the tree matching the canonical codes
+		HuffmanTree = buildTree(code, frequencies);
+	}
 
-		// Populate list of text & list of symbols used
-		for (int i = 0; i < text.length(); i++) {
-			symbolsUsed.add(text.substring(i, i + 1));
-			textList.add(text.substring(i, i + 1));
+	/**
+	 * Builds the tree that the canonical code describes, 0 going left and 1 going
+	 * right.
+	 */
+	private static Node buildTree(CanonicalCode code, int[] frequencies) {
+		return buildTree(code, frequencies, 0, code.size(), 0, -1);
+	}
+
+	/**
+	 * Builds the subtree for the canonical symbols in [from, to), which all share
+	 * their first depth bits.
+	 */
+	private static Node buildTree(CanonicalCode code, int[] frequencies, int from, int to, int depth, int bit) {
+		// Nothing down this branch (only happens when there is a single symbol)
+		if (from == to) {
+			return null;
 		}
 
-		// Create queue of nodes for each symbol & their weights based on how common
-		// they are in the text
-		PriorityQueue<Node> nodes = new PriorityQueue<>();
+		// A symbol whose code ends here is a leaf
+		int first = code.symbols[from];
+		if (code.length(first) == depth) {
+			return new Node(frequencies[first], bit, String.valueOf((char) first), null, null);
+		}
 
-		for (String letter : symbolsUsed) {
-			double freq = textList.stream().filter((s) -> (s.equals(letter))).count();
-			nodes.add(new Node(freq, -1, letter, null, null));
+		// Canonical codes are sorted, so the symbols with a 0 at this depth all come
+		// before the ones with a 1
+		int split = from;
+		while (split < to && codeBit(code, code.symbols[split], depth) == 0) {
+			split++;
 		}
+		Node left = buildTree(code, frequencies, from, split, depth + 1, 0);
+		Node right = buildTree(code, frequencies, split, to, depth + 1, 1);
+		long weight = (left == null ? 0 : left.weight()) + (right == null ? 0 : right.weight());
+		return new Node(weight, bit, null, left, right);
+	}
 
-		// Build the tree
-		while (nodes.size() != 1) {
-			// Get the two lowest weighted nodes off the front of the queue
-			Node n1 = nodes.poll();
-			Node n2 = nodes.poll();
+	/**
+	 * The bit of the symbol's code at the given depth (0 being the first bit).
+	 */
+	private static int codeBit(CanonicalCode code, int symbol, int depth) {
+		return (int) (code.code(symbol) >>> (code.length(symbol) - 1 - depth)) & 1;
+	}
 
-			// Set binary values for left and right child
-			Node leftChild = new Node(n1.weight(), 0, n1.symbol(), n1.leftChild(), n1.rightChild());
-			Node rightChild = new Node(n2.weight(), 1, n2.symbol(), n2.leftChild(), n2.rightChild());
+	/**
+	 * Builds a histogram of the chars in the text in a single pass, indexed by the
+	 * char value. Large inputs are split into chunks that are counted in parallel
+	 * into per-thread tables, which are then merged.
+	 * 
+	 * @param text
+	 * @return frequency of every char value in the text
+	 */
+	static int[] countFrequencies(String text) {
+		int length = text.length();
 
-			// Set the two nodes as child nodes of a new node, return new node to queue
-			double combinedWeight = leftChild.weight() + rightChild.weight();
-			nodes.add(new Node(combinedWeight, -1, null, leftChild, rightChild));
+		// Small inputs aren't worth the cost of spinning up the other threads
+		if (length < PARALLEL_THRESHOLD) {
+			return countFrequencies(text, 0, length);
 		}
 
-		// Set the Tree field to be the tree
-		HuffmanTree = nodes.poll();
+		int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / PARALLEL_CHUNK));
+		int chunkSize = (length + chunks - 1) / chunks;
+
+		// Count each chunk into its own table, then merge the tables together
+		return IntStream.range(0, chunks).parallel()
+				.mapToObj(c -> countFrequencies(text, c * chunkSize, Math.min(length, (c + 1) * chunkSize)))
+				.reduce((a, b) -> {
+					for (int i = 0; i < a.length; i++) {
+						a[i] += b[i];
+					}
+					return a;
+				}).get();
+	}
+
+	/**
+	 * Counts the chars in text[from, to) into a fresh table.
+	 */
+	private static int[] countFrequencies(String text, int from, int to) {
+		int[] frequencies = new int[ALPHABET_SIZE];
+		for (int i = from; i < to; i++) {
+			frequencies[text.charAt(i)]++;
+		}
+		return frequencies;
 	}
 
 	/**
@@ -92,63 +186,75 @@ public class HuffmanCoding {
 	 */
 	public String encode(String text) {
 		StringBuilder encodedString = new StringBuilder();
-		String code = "";
 		for (int i = 0; i < text.length(); i++) {
-			encodedString.append(encodeHelper("" + text.charAt(i), HuffmanTree, code));
+			char c = text.charAt(i);
+			int length = code.length(c);
+			if (length == 0) {
+				throw new IllegalArgumentException("Symbol not in the code: " + c);
+			}
+
+			// Look up the code and append its bits, first bit first
+			long bits = code.code(c);
+			for (int b = length - 1; b >= 0; b--) {
+				encodedString.append((bits >>> b & 1) == 0 ? '0' : '1');
+			}
 		}
 		return encodedString.toString();
 	}
 
 	/**
-	 * Helper method to traverse the binary tree and retrieve the code for a given
-	 * character
-	 *
-	 * @param letter        The character to encode
-	 * @param encodedString The StringBuilder to store the encoded result
-	 * @param node          The current node in the binary tree
+	 * Encodes the text with the stored code into packed bits, 8 to a byte. The last
+	 * byte is padded with 0s, so the number of chars in the text is needed to
+	 * decode it again. Large texts are encoded in parallel.
 	 */
-	public String encodeHelper(String letter, Node node, String code) {
-		// Base case: Handle null node
-		if (node == null) {
-			return null;
-		}
+	public byte[] encodeToBytes(String text) {
+		return encodeToBytes(text, ProgressListener.NONE);
+	}
 
-		// Base case: We found the symbol that we are looking for, return its code
-		if (node.symbol() != null && node.symbol().equals(letter)) {
-			code = code + node.code();
-			return code;
+	/**
+	 * Encodes the text into packed bits like encodeToBytes, reporting progress in
+	 * chars encoded. Large texts are encoded a batch of parallel chunks at a time,
+	 * each chunk into its own bit buffer, with progress reported on the calling
+	 * thread between batches, so a listener can stop the encoding part way. The
+	 * chunks are then stitched together at their bit offsets, so the output is
+	 * exactly the same as encoding the text in one go.
+	 */
+	public byte[] encodeToBytes(String text, ProgressListener progress) {
+		int length = text.length();
+		int chunks = Math.max(1, (length + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK);
+		BitWriter[] parts = new BitWriter[chunks];
+		int batch = length >= PARALLEL_THRESHOLD ? CHUNKS_PER_REPORT : 1;
+		for (int first = 0; first < chunks; first += batch) {
+			IntStream range = IntStream.range(first, Math.min(chunks, first + batch));
+			(batch > 1 ? range.parallel() : range).forEach(c -> parts[c] = encodeChunk(text, c));
+			progress.progress(Math.min(length, (long) (first + batch) * PARALLEL_CHUNK), length);
 		}
+		return chunks == 1 ? parts[0].toByteArray() : BitWriter.join(parts);
+	}
 
-		// Check if the current node's code is -1 (indicating the first node)
-		if (node.code() == -1) {
-			// Skip appending the code and continue traversal
-			String leftCodeFirst = encodeHelper(letter, node.leftChild(), code);
-			if (leftCodeFirst != null) {
-				return leftCodeFirst;
-			}
+	/**
+	 * Encodes the c-th PARALLEL_CHUNK of the text into its own bit buffer.
+	 */
+	private BitWriter encodeChunk(String text, int c) {
+		int from = c * PARALLEL_CHUNK;
+		int to = Math.min(text.length(), from + PARALLEL_CHUNK);
+		BitWriter writer = new BitWriter((long) (to - from) * code.maxLength);
+		encodeInto(text, from, to, writer);
+		return writer;
+	}
 
-			String rightCodeFirst = encodeHelper(letter, node.rightChild(), code);
-			if (rightCodeFirst != null) {
-				return rightCodeFirst;
+	/**
+	 * Appends the codes for text[from, to) to the writer.
+	 */
+	private void encodeInto(String text, int from, int to, BitWriter writer) {
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			int length = code.length(c);
+			if (length == 0) {
+				throw new IllegalArgumentException("Symbol not in the code: " + c);
 			}
-
-		}
-		// Recurse on left child
-		String leftCode = encodeHelper(letter, node.leftChild(), code);
-		if (leftCode != null) {
-			return node.code() + leftCode;
-		}
-
-		// Recurse on right child
-		String rightCode = encodeHelper(letter, node.rightChild(), code);
-		if (rightCode != null) {
-			return node.code() + rightCode;
+			writer.write(code.code(c), length);
 		}
-
-		// If we reach this point, it means the current node and its descendants do not
-		// contain the symbol we're looking for
-		return null;
-
 	}
 
 	/**
@@ -164,12 +270,12 @@ public class HuffmanCoding {
 		for (int i = 0; i < encoded.length(); i++) {
 
 			// Get the 1/0
-			String binCode = encoded.substring(i, i + 1);
+			char binCode = encoded.charAt(i);
 
-			if (binCode.equals("0")) {
+			if (binCode == '0') {
 				pointer = pointer.leftChild();
 			}
-			else if (binCode.equals("1")) {
+			else if (binCode == '1') {
 				pointer = pointer.rightChild();
 			}
 			// Once we find a letter, add it to the text and reset the pointer to the root
@@ -181,6 +287,237 @@ public class HuffmanCoding {
 		return text.toString();
 	}
 
+	/**
+	 * Decode packed bits produced by encodeToBytes back into the text.
+	 *
+	 * @param packed the encoded bits
+	 * @param length the number of chars that were encoded
+	 */
+	public String decode(byte[] packed, int length) {
+		// Tables are only worth building once we actually decode something
+		if (decoder == null) {
+			decoder = new HuffmanDecoder(code);
+		}
+		char[] text = new char[length];
+		decoder.decode(new BitReader(packed), text);
+		return new String(text);
+	}
+
+	/**
+	 * Writes the text to out as a self-describing file: a header holding the
+	 * canonical code lengths, the number of chars and a checksum of the text,
+	 * followed by the packed bits. The file can be decoded again with
+	 * decode(InputStream) alone.
+	 */
+	public void write(String text, OutputStream out) throws IOException {
+		write(text, out, 1);
+	}
+
+	/**
+	 * Writes the text to out as a self-describing file, reporting progress in
+	 * chars encoded.
+	 */
+	public void write(String text, OutputStream out, ProgressListener progress) throws IOException {
+		write(text, out, 1, progress);
+	}
+
+	/**
+	 * Writes the text to out as a self-describing file, with the bits split into
+	 * the given number of streams. With INTERLEAVED_STREAMS streams, the text is cut
+	 * into that many equal segments that are each encoded into their own byte
+	 * aligned stream, and a jump table of the stream sizes goes in front of them.
+	 * The decoder can then run all the streams in the same loop.
+	 *
+	 * @param streams 1 or INTERLEAVED_STREAMS
+	 */
+	public void write(String text, OutputStream out, int streams) throws IOException {
+		write(text, out, streams, ProgressListener.NONE);
+	}
+
+	private void write(String text, OutputStream out, int streams, ProgressListener progress) throws IOException {
+		if (streams != 1 && streams != INTERLEAVED_STREAMS) {
+			throw new IllegalArgumentException("Unsupported number of streams: " + streams);
+		}
+
+		// Encode each segment of the text into its own stream
+		byte[][] packed = new byte[streams][];
+		if (streams == 1) {
+			packed[0] = encodeToBytes(text, progress);
+		} else {
+			int segment = segmentLength(text.length(), streams);
+			IntStream.range(0, streams).parallel().forEach(k -> {
+				BitWriter writer = new BitWriter();
+				encodeInto(text, Math.min(text.length(), k * segment), Math.min(text.length(), (k + 1) * segment), writer);
+				packed[k] = writer.toByteArray();
+			});
+		}
+		DataOutputStream data = new DataOutputStream(out);
+
+		// Header
+		data.writeInt(MAGIC);
+		data.writeByte(FORMAT_VERSION);
+		VarInt.write(data, text.length());
+		VarInt.write(data, code.size());
+
+		// Code lengths of the used symbols, each symbol stored as the gap from the
+		// previous one so a typical alphabet takes 2 bytes per symbol
+		int previous = 0;
+		for (int s = 0; s < ALPHABET_SIZE; s++) {
+			if (code.length(s) > 0) {
+				VarInt.write(data, s - previous);
+				data.writeByte(code.length(s));
+				previous = s;
+			}
+		}
+		data.writeInt(checksum(text));
+
+		// Jump table, the size of every stream but the last
+		data.writeByte(streams);
+		int total = 0;
+		for (int k = 0; k < streams; k++) {
+			if (k < streams - 1) {
+				VarInt.write(data, packed[k].length);
+			}
+			total += packed[k].length;
+		}
+
+		// Bitstreams
+		VarInt.write(data, total);
+		for (byte[] stream : packed) {
+			data.write(stream);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Number of chars in each segment when a text is split into streams, the last
+	 * segment taking whatever is left.
+	 */
+	private static int segmentLength(int length, int streams) {
+		return (int) (((long) length + streams - 1) / streams);
+	}
+
+	/**
+	 * Reads a file written by write and decodes the text, rebuilding the code from
+	 * the header.
+	 *
+	 * @throws IOException if the file is not a Huffman file or is corrupt
+	 */
+	public static String decode(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+
+		// Header
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a Huffman coded file.");
+		}
+		int version = data.readUnsignedByte();
+		if (version < 1 || version > FORMAT_VERSION) {
+			throw new IOException("Unsupported Huffman file version: " + version);
+		}
+		int length = VarInt.readInt(data);
+		int symbolCount = VarInt.readInt(data);
+
+		// Code lengths
+		int[] lengths = new int[ALPHABET_SIZE];
+		int symbol = 0;
+		for (int i = 0; i < symbolCount; i++) {
+			symbol += VarInt.readInt(data);
+			if (symbol < 0 || symbol >= ALPHABET_SIZE) {
+				throw new IOException("Invalid symbol in header: " + symbol);
+			}
+			lengths[symbol] = data.readUnsignedByte();
+		}
+		int expectedChecksum = data.readInt();
+
+		// Jump table (version 1 files always have a single stream)
+		int streams = version == 1 ? 1 : data.readUnsignedByte();
+		if (streams != 1 && streams != INTERLEAVED_STREAMS) {
+			throw new IOException("Unsupported number of streams: " + streams);
+		}
+		int[] streamStarts = new int[streams + 1];
+		for (int k = 1; k < streams; k++) {
+			streamStarts[k] = streamStarts[k - 1] + VarInt.readInt(data);
+		}
+
+		// Bitstreams
+		byte[] packed = readBytes(data, VarInt.readInt(data));
+		streamStarts[streams] = packed.length;
+
+		// Every char takes at least one bit, so a longer text can only be a corrupt
+		// header, and mustn't be allocated
+		if (length > 8L * packed.length) {
+			throw new IOException("Corrupt Huffman header, " + length + " chars can't fit in " + packed.length
+					+ " bytes.");
+		}
+		for (int k = 1; k <= streams; k++) {
+			if (streamStarts[k] < streamStarts[k - 1]) {
+				throw new IOException("Corrupt Huffman jump table.");
+			}
+		}
+
+		CanonicalCode code;
+		try {
+			code = new CanonicalCode(lengths);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt Huffman header.", e);
+		}
+		char[] text = new char[length];
+		try {
+			HuffmanDecoder decoder = new HuffmanDecoder(code);
+			if (streams == 1) {
+				decoder.decode(new BitReader(packed), text);
+			} else {
+				BitReader[] readers = new BitReader[streams];
+				for (int k = 0; k < streams; k++) {
+					readers[k] = new BitReader(packed, streamStarts[k], streamStarts[k + 1] - streamStarts[k]);
+				}
+				decoder.decodeInterleaved(readers, text, segmentLength(length, streams));
+			}
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt Huffman bitstream.", e);
+		}
+		String decoded = new String(text);
+		if (checksum(decoded) != expectedChecksum) {
+			throw new IOException("Checksum mismatch, the Huffman file is corrupt.");
+		}
+		return decoded;
+	}
+
+	/**
+	 * Reads length bytes, where length comes from a header that may be corrupt.
+	 * The bytes are read in pieces rather than into one array of that length up
+	 * front, so a huge length fails at the end of the stream rather than running
+	 * out of memory first.
+	 */
+	static byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = in.readNBytes(length);
+		if (bytes.length != length) {
+			throw new EOFException("Unexpected end of stream, " + length + " bytes expected but only "
+					+ bytes.length + " left.");
+		}
+		return bytes;
+	}
+
+	/**
+	 * CRC32 of the chars in the text, each taken as two bytes, high byte first.
+	 */
+	static int checksum(String text) {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		int n = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			buffer[n++] = (byte) (c >>> 8);
+			buffer[n++] = (byte) c;
+			if (n == buffer.length) {
+				crc.update(buffer, 0, n);
+				n = 0;
+			}
+		}
+		crc.update(buffer, 0, n);
+		return (int) crc.getValue();
+	}
+
 	/**
 	 * The getInformation method is here for your convenience, you don't need to
 	 * fill it in if you don't wan to. It is called on every run and its return
@@ -188,7 +525,22 @@ public class HuffmanCoding {
 	 * the encoding tree.
 	 */
 	public String getInformation() {
-		return "";
+		long chars = 0;
+		for (int f : frequencies) {
+			chars += f;
+		}
+		long bits = code.encodedBits(frequencies);
+
+		StringBuilder info = new StringBuilder();
+		info.append("symbols: " + code.size() + "\n");
+		info.append("longest code: " + code.maxLength + " bits\n");
+		info.append(String.format("average code: %.3f bits per char%n", (double) bits / chars));
+		if (maxCodeLength > 0) {
+			info.append("code length limit: " + maxCodeLength + " bits\n");
+			info.append(String.format("ratio loss from limit: %d bits (%.4f%%)%n", bits - unlimitedBits,
+					100.0 * (bits - unlimitedBits) / unlimitedBits));
+		}
+		return info.toString();
 	}
 
 	/**
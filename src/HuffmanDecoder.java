@@ -0,0 +1,168 @@
+/**
+ * Table driven decoder for a canonical Huffman code. Rather than walking the
+ * tree one bit at a time, it peeks at the next TABLE_BITS bits and looks up the
+ * symbol they start with, along with how many bits its code really takes. Codes
+ * longer than the table are resolved from the per-length canonical tables
+ * instead, which only needs one comparison per extra bit.
+ */
+public class HuffmanDecoder {
+
+	// Maximum number of bits the primary table resolves in one lookup
+	static final int TABLE_BITS = 11;
+
+	// Number of bits the primary table is indexed by
+	private final int tableBits;
+
+	// Entry for every possible tableBits prefix: (symbol << 8) | code length, or 0
+	// if the code is longer than the table
+	private final int[] table;
+
+	// Secondary tables for long codes, indexed by length: the first code of that
+	// length, how many codes have that length, and where they start in symbols
+	private final long[] firstCode;
+	private final int[] lengthCount;
+	private final int[] firstIndex;
+	private final int[] symbols;
+	private final int maxLength;
+
+	public HuffmanDecoder(CanonicalCode code) {
+		this(code, TABLE_BITS);
+	}
+
+	/**
+	 * @param code       the code to decode
+	 * @param tableLimit the most bits to resolve in the primary table
+	 */
+	public HuffmanDecoder(CanonicalCode code, int tableLimit) {
+		this.maxLength = code.maxLength;
+		this.tableBits = Math.max(1, Math.min(tableLimit, maxLength));
+		this.table = new int[1 << tableBits];
+		this.symbols = code.symbols;
+		this.firstCode = new long[maxLength + 1];
+		this.lengthCount = new int[maxLength + 1];
+		this.firstIndex = new int[maxLength + 1];
+
+		for (int i = symbols.length - 1; i >= 0; i--) {
+			int symbol = symbols[i];
+			int length = code.length(symbol);
+
+			// Symbols are in canonical order, so going backwards leaves the first code
+			// and index of each length behind
+			firstCode[length] = code.code(symbol);
+			firstIndex[length] = i;
+			lengthCount[length]++;
+
+			// Short codes fill every table slot that starts with them
+			if (length <= tableBits) {
+				int shift = tableBits - length;
+				int start = (int) code.code(symbol) << shift;
+				int entry = (symbol << 8) | length;
+				for (int j = 0; j < 1 << shift; j++) {
+					table[start + j] = entry;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes and consumes one symbol from the reader.
+	 */
+	public int decodeSymbol(BitReader reader) {
+		int entry = table[reader.peek(tableBits)];
+		if (entry != 0) {
+			reader.skip(entry & 0xFF);
+			return entry >>> 8;
+		}
+		return decodeLongSymbol(reader);
+	}
+
+	/**
+	 * Slow path for codes longer than the primary table, trying one length at a
+	 * time against the canonical tables.
+	 */
+	private int decodeLongSymbol(BitReader reader) {
+		for (int length = tableBits + 1; length <= maxLength; length++) {
+			long offset = reader.peekLong(length) - firstCode[length];
+			if (offset >= 0 && offset < lengthCount[length]) {
+				reader.skip(length);
+				return symbols[firstIndex[length] + (int) offset];
+			}
+		}
+		throw new IllegalArgumentException("Invalid encoded data.");
+	}
+
+	/**
+	 * Decodes out.length chars from the reader into out.
+	 */
+	public void decode(BitReader reader, char[] out) {
+		int[] table = this.table;
+		int tableBits = this.tableBits;
+		for (int i = 0; i < out.length; i++) {
+			int entry = table[reader.peek(tableBits)];
+			if (entry != 0) {
+				reader.skip(entry & 0xFF);
+				out[i] = (char) (entry >>> 8);
+			} else {
+				out[i] = (char) decodeLongSymbol(reader);
+			}
+		}
+	}
+
+	/**
+	 * Decodes 4 streams at once, each holding a segment of segmentLength chars
+	 * (the last segment may be shorter). Each step of the loop decodes one symbol
+	 * from every stream, and since the streams don't depend on each other, the
+	 * processor can overlap the four lookups.
+	 */
+	public void decodeInterleaved(BitReader[] readers, char[] out, int segmentLength) {
+		if (readers.length != 4) {
+			throw new IllegalArgumentException("Expected 4 streams, got " + readers.length);
+		}
+		int[] table = this.table;
+		int tableBits = this.tableBits;
+		BitReader r0 = readers[0];
+		BitReader r1 = readers[1];
+		BitReader r2 = readers[2];
+		BitReader r3 = readers[3];
+		int s1 = Math.min(out.length, segmentLength);
+		int s2 = Math.min(out.length, 2 * segmentLength);
+		int s3 = Math.min(out.length, 3 * segmentLength);
+
+		// All four streams while the last one still has symbols left
+		int shared = out.length - s3;
+		for (int i = 0; i < shared; i++) {
+			int e0 = table[r0.peek(tableBits)];
+			int e1 = table[r1.peek(tableBits)];
+			int e2 = table[r2.peek(tableBits)];
+			int e3 = table[r3.peek(tableBits)];
+			if (e0 != 0 && e1 != 0 && e2 != 0 && e3 != 0) {
+				r0.skip(e0 & 0xFF);
+				r1.skip(e1 & 0xFF);
+				r2.skip(e2 & 0xFF);
+				r3.skip(e3 & 0xFF);
+				out[i] = (char) (e0 >>> 8);
+				out[s1 + i] = (char) (e1 >>> 8);
+				out[s2 + i] = (char) (e2 >>> 8);
+				out[s3 + i] = (char) (e3 >>> 8);
+			} else {
+				out[i] = (char) decodeSymbol(r0);
+				out[s1 + i] = (char) decodeSymbol(r1);
+				out[s2 + i] = (char) decodeSymbol(r2);
+				out[s3 + i] = (char) decodeSymbol(r3);
+			}
+		}
+
+		// Then whatever the first three have left over
+		for (int i = shared; i < segmentLength; i++) {
+			if (i < s1) {
+				out[i] = (char) decodeSymbol(r0);
+			}
+			if (s1 + i < s2) {
+				out[s1 + i] = (char) decodeSymbol(r1);
+			}
+			if (s2 + i < s3) {
+				out[s2 + i] = (char) decodeSymbol(r2);
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The byte alphabet Huffman coder behind the EntropyCoder interface. A block is
+ * the number of bytes, the canonical code lengths, then the packed bits.
+ */
+public class HuffmanEntropyCoder implements EntropyCoder {
+
+	static final int ID = 0;
+
+	// Short enough codes that the decode table handles almost everything
+	private static final int MAX_CODE_LENGTH = 15;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return "Huffman";
+	}
+
+	@Override
+	public byte[] encode(byte[] data) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			VarInt.write(out, data.length);
+			if (data.length == 0) {
+				return bytes.toByteArray();
+			}
+
+			ByteHuffmanCoding huffman = new ByteHuffmanCoding(data, MAX_CODE_LENGTH);
+			CanonicalCode code = huffman.code;
+
+			// Code lengths of the used bytes
+			VarInt.write(out, code.size());
+			int last = 0;
+			for (int s = 0; s < ByteHuffmanCoding.ALPHABET_SIZE; s++) {
+				if (code.length(s) > 0) {
+					VarInt.write(out, s - last);
+					out.writeByte(code.length(s));
+					last = s;
+				}
+			}
+			out.write(huffman.encode(data));
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public byte[] decode(byte[] block) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(block);
+		DataInputStream in = new DataInputStream(bytes);
+		int length = VarInt.readInt(in);
+		if (length == 0) {
+			return new byte[0];
+		}
+
+		int[] lengths = new int[ByteHuffmanCoding.ALPHABET_SIZE];
+		int count = VarInt.readInt(in);
+		int symbol = 0;
+		for (int i = 0; i < count; i++) {
+			symbol += VarInt.readInt(in);
+			if (symbol >= lengths.length) {
+				throw new IOException("Invalid symbol in Huffman block: " + symbol);
+			}
+			lengths[symbol] = in.readUnsignedByte();
+		}
+
+		// Every byte takes at least a bit, so a length the bits can't hold is
+		// damaged, and is refused before its output is allocated
+		int offset = block.length - bytes.available();
+		if (length > 8L * (block.length - offset)) {
+			throw new IOException("Corrupt Huffman block, " + length + " bytes can't be coded in "
+					+ (block.length - offset) + ".");
+		}
+
+		byte[] data = new byte[length];
+		try {
+			HuffmanDecoder decoder = new HuffmanDecoder(new CanonicalCode(lengths));
+			BitReader reader = new BitReader(block, offset, block.length - offset);
+			for (int i = 0; i < length; i++) {
+				data[i] = (byte) decoder.decodeSymbol(reader);
+			}
+			if (reader.overrun()) {
+				throw new IOException("Truncated Huffman block.");
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt Huffman block.", e);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,91 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class HuffmanFormatTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, a single symbol, every char value below the surrogates,
+        // text outside the Basic Multilingual Plane and ordinary text
+        StringBuilder allChars = new StringBuilder();
+        for (char c = 0; c < 0xD800; c++) {
+            allChars.append(c);
+        }
+        String[] texts = { "a", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", allChars.toString(),
+                "\uD83D\uDE00 smile \uD835\uDD04 fraktur \uD83D\uDE00",
+                "the cat sat on the mat, then the other cat sat there.\n".repeat(100) };
+
+        // Every text should come back from both the single and interleaved streams
+        for (String text : texts) {
+            for (int streams : new int[] { 1, HuffmanCoding.INTERLEAVED_STREAMS }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new HuffmanCoding(text).write(text, out, streams);
+                String decoded = HuffmanCoding.decode(new ByteArrayInputStream(out.toByteArray()));
+                System.out.println((text.equals(decoded) ? "OK!! " : "Wrong!! ") + text.length() + " chars in "
+                        + streams + " stream(s) -> " + out.size() + " bytes and back");
+            }
+        }
+
+        // Text long enough to be encoded in parallel chunks should give exactly
+        // the bits of encoding it in one go
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() <= 1500000; i++) {
+            builder.append("chunk ").append(i * 7919 % 10007).append(i % 11 == 0 ? ".\n" : ", ");
+        }
+        String longText = builder.toString();
+        HuffmanCoding huffman = new HuffmanCoding(longText);
+        BitWriter serial = new BitWriter();
+        for (int i = 0; i < longText.length(); i++) {
+            char c = longText.charAt(i);
+            serial.write(huffman.code.code(c), huffman.code.length(c));
+        }
+        boolean same = Arrays.equals(serial.toByteArray(), huffman.encodeToBytes(longText));
+        System.out.println((same ? "OK!! " : "Wrong!! ") + longText.length()
+                + " chars encoded in parallel match encoding them in one go");
+
+        // Damaged files should be refused with an IOException, never decoded or
+        // crash with anything else
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String text = texts[4];
+        new HuffmanCoding(text).write(text, out);
+        byte[] file = out.toByteArray();
+        expectFailure("truncated file", Arrays.copyOf(file, file.length - 10));
+        byte[] flipped = file.clone();
+        flipped[flipped.length - 20] ^= 0x10;
+        expectFailure("flipped bit", flipped);
+        expectFailure("huge text length", header(Integer.MAX_VALUE, 4));
+        expectFailure("huge bitstream", header(10, Integer.MAX_VALUE));
+    }
+
+    /**
+     * A header for a one symbol code, claiming the given number of chars and
+     * bytes of bits, with only a few bytes after it.
+     */
+    private static byte[] header(int length, int packedLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x48554600);
+        data.writeByte(2);
+        VarInt.write(data, length);
+        VarInt.write(data, 1);
+        VarInt.write(data, 'a');
+        data.writeByte(1);
+        data.writeInt(0);
+        data.writeByte(1);
+        VarInt.write(data, packedLength);
+        data.write(new byte[4]);
+        return bytes.toByteArray();
+    }
+
+    private static void expectFailure(String what, byte[] file) {
+        try {
+            HuffmanCoding.decode(new ByteArrayInputStream(file));
+            System.out.println("Wrong!! A " + what + " was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A " + what + " was refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " failed with " + e);
+        }
+    }
+}
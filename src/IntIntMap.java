@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Open addressed hash map from non-negative int keys to int values, with no
+ * boxing. Used to map large symbol values (like Unicode code points) to small
+ * dense indexes.
+ */
+public class IntIntMap {
+
+	// Marks a free slot, which is why keys can't be negative
+	private static final int EMPTY = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+	private int shift;
+
+	public IntIntMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize number of keys expected, to size the table up front
+	 */
+	public IntIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(mask);
+	}
+
+	/**
+	 * The value for the key, or missing if it is not in the map. Negative keys
+	 * are never in the map.
+	 */
+	public int get(int key, int missing) {
+		if (key < 0) {
+			return missing;
+		}
+		int slot = slot(key);
+		return keys[slot] == key ? values[slot] : missing;
+	}
+
+	/**
+	 * Sets the value for the key.
+	 *
+	 * @throws IllegalArgumentException if the key is negative
+	 */
+	public void put(int key, int value) {
+		if (key < 0) {
+			throw new IllegalArgumentException("Negative key: " + key);
+		}
+		int slot = slot(key);
+		if (keys[slot] != key) {
+			keys[slot] = key;
+			if (++size * 2 > keys.length) {
+				values[slot] = value;
+				grow();
+				return;
+			}
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Adds delta to the value for the key, starting from 0 if it is not in the map.
+	 */
+	public void add(int key, int delta) {
+		put(key, get(key, 0) + delta);
+	}
+
+	/**
+	 * Number of keys in the map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * All the keys in the map, in ascending order.
+	 */
+	public int[] sortedKeys() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int key : keys) {
+			if (key != EMPTY) {
+				result[n++] = key;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * The slot holding the key, or the empty slot where it would go.
+	 */
+	private int slot(int key) {
+		// Fibonacci hashing, so runs of nearby keys spread over the table
+		int slot = (key * 0x9E3779B9) >>> shift;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the table and reinserts every key.
+	 */
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		mask = keys.length - 1;
+		shift = Integer.numberOfLeadingZeros(mask);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
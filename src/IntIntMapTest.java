@@ -0,0 +1,70 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntIntMapTest {
+    public static void main(String[] args) {
+        // Random puts and adds, checked against a HashMap. The keys include 0,
+        // the largest int and runs of nearby values, and there are enough of
+        // them for the table to grow several times.
+        Random random = new Random(261);
+        IntIntMap map = new IntIntMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            int key;
+            switch (i % 4) {
+            case 0:
+                key = random.nextInt(1000);
+                break;
+            case 1:
+                key = 0x10000 + i;
+                break;
+            case 2:
+                key = random.nextInt(Integer.MAX_VALUE);
+                break;
+            default:
+                key = i % 8 == 3 ? 0 : Integer.MAX_VALUE;
+            }
+            int value = random.nextInt();
+            if (random.nextBoolean()) {
+                map.put(key, value);
+                expected.put(key, value);
+            } else {
+                map.add(key, value);
+                expected.merge(key, value, Integer::sum);
+            }
+        }
+        boolean same = map.size() == expected.size();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            same &= map.get(entry.getKey(), -1) == entry.getValue();
+        }
+        System.out.println((same ? "OK!! " : "Wrong!! ") + expected.size() + " keys match a HashMap");
+
+        // Keys that were never added
+        boolean missing = true;
+        for (int i = 0; i < 10000; i++) {
+            int key = random.nextInt(Integer.MAX_VALUE);
+            missing &= expected.containsKey(key) || map.get(key, -7) == -7;
+        }
+        System.out.println((missing ? "OK!! " : "Wrong!! ") + "Keys not in the map give the missing value");
+
+        // Sorted keys
+        int[] keys = expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        System.out.println((Arrays.equals(keys, map.sortedKeys()) ? "OK!! " : "Wrong!! ") + "sortedKeys is in order");
+
+        // Negative keys, including the one that marks a free slot, are never
+        // found and can't be added
+        IntIntMap small = new IntIntMap();
+        small.put(5, 1);
+        boolean negativeMissing = small.get(-1, -7) == -7 && small.get(Integer.MIN_VALUE, -7) == -7
+                && map.get(-1, -7) == -7;
+        System.out.println((negativeMissing ? "OK!! " : "Wrong!! ") + "Negative keys give the missing value");
+        try {
+            small.put(-1, 3);
+            System.out.println("Wrong!! Key -1 was added");
+        } catch (IllegalArgumentException e) {
+            System.out.println("OK!! Key -1 was refused: " + e.getMessage());
+        }
+    }
+}
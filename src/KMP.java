@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * A new KMP instance is created for every substring search performed. Both the
  * pattern and the text are passed to the constructor and the search method. You
@@ -11,8 +13,11 @@ public class KMP {
 	 * 
 	 * This should return the starting index of the first substring match if it
 	 * exists, or -1 if it doesn't(Final).
+	 * 
+	 * The text can be any CharSequence, such as a String or a view of a Swing
+	 * Document (see DocumentCharSequence), so it is never copied.
 	 */
-	public static int search(String pattern, String text) {
+	public static int search(String pattern, CharSequence text) {
 		try {
 			// Handle IllegalArgs
 			if (pattern == null || text == null) {
@@ -55,6 +60,104 @@ public class KMP {
 		return -1; // We couldnt find it
 	}
 
+	/**
+	 * Perform KMP search for every match of the pattern in the text, returning
+	 * their starting indexes in increasing order. Matches may overlap. An empty
+	 * pattern has no matches.
+	 */
+	public static int[] searchAll(String pattern, CharSequence text) {
+		// Handle IllegalArgs
+		if (pattern == null || text == null) {
+			throw new IllegalArgumentException("Text and/or Pattern is null.");
+		}
+		int pLength = pattern.length();
+		int tLength = text.length();
+		if (pLength == 0) {
+			return new int[0];
+		}
+
+		int[] prefixLength = calcJumpTable(pattern);
+		int[] matches = new int[16];
+		int count = 0;
+		int t = 0;
+		int p = 0;
+		while (t < tLength) {
+			if (pattern.charAt(p) == text.charAt(t)) {
+				p++;
+				t++;
+
+				if (p == pLength) { // Matched the entire pattern --> Record it and carry on from its border
+					if (count == matches.length) {
+						matches = Arrays.copyOf(matches, count * 2);
+					}
+					matches[count++] = t - p;
+					p = prefixLength[p];
+				}
+
+			} else { // If we fail to match a char
+				p = prefixLength[p];
+
+				if (p < 0) {
+					t++;
+					p++;
+				}
+			}
+		}
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * Perform KMP search for the pattern bytes in text[from, to), returning the
+	 * index of the first match or -1 if there isn't one. Used for searching
+	 * compressed data directly.
+	 */
+	public static int search(byte[] pattern, byte[] text, int from, int to) {
+		if (pattern.length == 0) {
+			return from;
+		}
+		int[] prefixLength = calcJumpTable(pattern);
+		int p = 0;
+		for (int t = from; t < to;) {
+			if (pattern[p] == text[t]) {
+				p++;
+				t++;
+				if (p == pattern.length) { // Matched the entire pattern
+					return t - p;
+				}
+			} else {
+				p = prefixLength[p];
+				if (p < 0) {
+					t++;
+					p++;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Calculates the Jump Table for a byte pattern, the same way as for a String.
+	 */
+	public static int[] calcJumpTable(byte[] pattern) {
+		int[] jumpTable = new int[pattern.length + 1];
+		jumpTable[0] = -1;
+		int prefixLength = 0;
+		int i = 1;
+		while (i < pattern.length) {
+			if (pattern[prefixLength] == pattern[i]) {
+				prefixLength++;
+				i++;
+				jumpTable[i] = prefixLength;
+			} else if (prefixLength > 0) {
+				prefixLength = jumpTable[prefixLength];
+			} else {
+				i++;
+				jumpTable[i] = 0;
+			}
+		}
+		return jumpTable;
+	}
+
 	/**
 	 * Calculates the Jump Table for the pattern, to be used in the KMP main
 	 * algorithm.
@@ -0,0 +1,325 @@
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * A read-only viewer for text files of any size. The file is memory mapped
+ * (see MappedTextFile) rather than loaded, and only the lines in view are read
+ * and drawn, so opening, scrolling and jumping to a match take the same time
+ * for a 3 MB book as for a multi GB log. The scrollbars count lines and columns
+ * rather than pixels, so they don't overflow on huge files.
+ */
+public class LargeFileViewer extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	// Lines scrolled per notch of the mouse wheel
+	private static final int WHEEL_LINES = 3;
+
+	// How often the scrollbar and status catch up with the line indexer
+	private static final int REFRESH_MILLIS = 200;
+
+	private static final int TAB_WIDTH = 4;
+	private static final int MARGIN = 4;
+
+	private final Lines lines = new Lines();
+	private final JScrollBar vertical = new JScrollBar(JScrollBar.VERTICAL);
+	private final JScrollBar horizontal = new JScrollBar(JScrollBar.HORIZONTAL);
+	private final JLabel status;
+	private final Timer refresh;
+
+	private MappedTextFile file;
+
+	// The current match, as a byte range of the file, or -1
+	private long matchStart = -1;
+	private int matchLength;
+
+	// A match to scroll to once the indexer has reached its line, or -1
+	private long pendingJump = -1;
+
+	// Whether the last search found nothing
+	private boolean notFound;
+
+	private SwingWorker<Long, Void> search;
+
+	/**
+	 * @param status label to show the line count and search results in
+	 */
+	public LargeFileViewer(JLabel status) {
+		this.status = status;
+		setLayout(new BorderLayout());
+		add(lines, BorderLayout.CENTER);
+		add(vertical, BorderLayout.EAST);
+		add(horizontal, BorderLayout.SOUTH);
+
+		vertical.addAdjustmentListener(e -> lines.repaint());
+		horizontal.addAdjustmentListener(e -> lines.repaint());
+		lines.addMouseWheelListener(e -> vertical.setValue(vertical.getValue() + e.getWheelRotation() * WHEEL_LINES));
+		lines.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				updateScrollbars();
+			}
+		});
+
+		refresh = new Timer(REFRESH_MILLIS, e -> {
+			updateScrollbars();
+			if (pendingJump >= 0) {
+				jumpTo(pendingJump);
+			}
+			updateStatus();
+			if (file == null || file.isIndexed()) {
+				((Timer) e.getSource()).stop();
+			}
+		});
+	}
+
+	/**
+	 * Shows the file, closing the one shown before.
+	 */
+	public void open(Path path) throws IOException {
+		MappedTextFile opened = new MappedTextFile(path);
+		close();
+		file = opened;
+		matchStart = -1;
+		pendingJump = -1;
+		notFound = false;
+		vertical.setValue(0);
+		horizontal.setValue(0);
+		lines.widest = 0;
+		refresh.start();
+		updateScrollbars();
+		updateStatus();
+		lines.repaint();
+	}
+
+	/**
+	 * Closes the file being shown, if any.
+	 */
+	public void close() {
+		if (search != null) {
+			search.cancel(true);
+		}
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			file = null;
+		}
+	}
+
+	/**
+	 * Searches in the background for the next match after the current one (or
+	 * after the top of the view), wrapping around to the start, and jumps to it.
+	 */
+	public void findNext(String query) {
+		if (file == null || query.isEmpty()) {
+			return;
+		}
+		if (search != null) {
+			search.cancel(true);
+		}
+		byte[] pattern = query.getBytes(StandardCharsets.UTF_8);
+		MappedTextFile searched = file;
+		long start = 0;
+		if (matchStart >= 0) {
+			start = matchStart + 1;
+		} else if (searched.lineCount() > 0) {
+			start = searched.lineStart(Math.min(vertical.getValue(), searched.lineCount() - 1));
+		}
+		long from = start;
+		notFound = false;
+		status.setText("searching...");
+
+		search = new SwingWorker<Long, Void>() {
+			@Override
+			protected Long doInBackground() {
+				long found = searched.find(pattern, from);
+				if (found < 0 && from > 0 && !isCancelled()) {
+					found = searched.find(pattern, 0);
+				}
+				return found;
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled() || searched != file) {
+					return;
+				}
+				try {
+					long found = get();
+					if (found < 0) {
+						matchStart = -1;
+						notFound = true;
+						updateStatus();
+						lines.repaint();
+						return;
+					}
+					matchStart = found;
+					matchLength = pattern.length;
+					jumpTo(found);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+			}
+		};
+		search.execute();
+	}
+
+	/**
+	 * Scrolls the line holding position to the middle of the view, or waits for
+	 * the indexer to get there first.
+	 */
+	private void jumpTo(long position) {
+		int count = file.lineCount();
+		if (!file.isIndexed() && (count == 0 || file.lineStart(count - 1) < position)) {
+			pendingJump = position;
+			refresh.start();
+			return;
+		}
+		pendingJump = -1;
+		int line = file.lineOf(position);
+		updateScrollbars();
+		vertical.setValue(Math.max(0, line - lines.rows() / 2));
+		horizontal.setValue(0);
+		updateStatus();
+		lines.repaint();
+	}
+
+	private void updateScrollbars() {
+		int count = file == null ? 0 : file.lineCount();
+		int rows = lines.rows();
+		vertical.setValues(Math.min(vertical.getValue(), Math.max(0, count - 1)), rows, 0, Math.max(count, rows));
+		vertical.setBlockIncrement(Math.max(1, rows - 1));
+
+		int columns = Math.max(1, lines.getWidth() / Math.max(1, lines.charWidth()));
+		int widest = Math.max(lines.widest, columns);
+		horizontal.setValues(Math.min(horizontal.getValue(), widest - columns), columns, 0, widest);
+		horizontal.setBlockIncrement(Math.max(1, columns - 1));
+	}
+
+	private void updateStatus() {
+		if (file == null) {
+			status.setText("");
+			return;
+		}
+		String text = file.lineCount() + " lines" + (file.isIndexed() ? "" : " (indexing...)");
+		if (matchStart >= 0 && pendingJump < 0) {
+			text += ", match on line " + (file.lineOf(matchStart) + 1);
+		} else if (notFound) {
+			text += ", not found";
+		}
+		status.setText(text);
+	}
+
+	/**
+	 * Draws the lines in view, straight from the mapped file.
+	 */
+	private class Lines extends JComponent {
+		private static final long serialVersionUID = 1L;
+
+		private final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+		// Longest line drawn so far, in columns, for the horizontal scrollbar
+		int widest;
+
+		Lines() {
+			setPreferredSize(new Dimension(600, 400));
+			setFont(font);
+		}
+
+		int rows() {
+			return Math.max(1, getHeight() / getFontMetrics(font).getHeight());
+		}
+
+		int charWidth() {
+			return getFontMetrics(font).charWidth('m');
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, getWidth(), getHeight());
+			if (file == null) {
+				return;
+			}
+
+			g.setFont(font);
+			FontMetrics metrics = g.getFontMetrics();
+			int height = metrics.getHeight();
+			int x = MARGIN - horizontal.getValue() * charWidth();
+			int count = file.lineCount();
+			int first = vertical.getValue();
+			int drawnWidest = widest;
+
+			for (int row = 0; row <= rows() && first + row < count; row++) {
+				int line = first + row;
+				byte[] bytes = file.lineBytes(line);
+				String text = expandTabs(new String(bytes, StandardCharsets.UTF_8));
+				drawnWidest = Math.max(drawnWidest, text.length());
+				int y = row * height;
+
+				// Highlight the match if it starts on this line
+				long start = file.lineStart(line);
+				if (matchStart >= start && matchStart < start + bytes.length) {
+					int offset = (int) (matchStart - start);
+					int end = Math.min(bytes.length, offset + matchLength);
+					String before = expandTabs(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+					String match = new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+					g.setColor(Color.YELLOW);
+					g.fillRect(x + metrics.stringWidth(before), y, metrics.stringWidth(match), height);
+				}
+
+				g.setColor(Color.BLACK);
+				g.drawString(text, x, y + metrics.getAscent());
+			}
+
+			if (drawnWidest > widest) {
+				widest = drawnWidest;
+				updateScrollbars();
+			}
+		}
+	}
+
+	/**
+	 * Replaces tabs with spaces up to the next tab stop, since drawString doesn't
+	 * lay them out.
+	 */
+	private static String expandTabs(String text) {
+		if (text.indexOf('\t') < 0) {
+			return text;
+		}
+		StringBuilder expanded = new StringBuilder(text.length() + 16);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\t') {
+				do {
+					expanded.append(' ');
+				} while (expanded.length() % TAB_WIDTH != 0);
+			} else {
+				expanded.append(c);
+			}
+		}
+		return expanded.toString();
+	}
+}
@@ -2,11 +2,22 @@
 import java.util.*;
 
 public class LempelZiv {
+	// Chars between progress reports
+	private static final int REPORT_INTERVAL = 4096;
+
 	/**
 	 * Take uncompressed input as a text string, compress it, and return it as a
 	 * text string(Final).
 	 */
 	public static String compress(String input) {
+		return compress(input, ProgressListener.NONE);
+	}
+
+	/**
+	 * Compresses the input, telling the listener how many chars have been
+	 * consumed every few thousand chars.
+	 */
+	public static String compress(String input, ProgressListener listener) {
 
 	    // Handle obvious errors
 	    if (input == null || input.length() == 0) {
@@ -16,6 +27,7 @@ public class LempelZiv {
 	    StringBuilder cText = new StringBuilder(); // StringBuilder to build the compressed text
 	    int cursor = 0; // Cursor to keep track of the current position in the input string
 	    int windowSize = 100; // Size of the window for searching previous matches
+	    int nextReport = REPORT_INTERVAL; // Cursor position of the next progress report
 
 	    while (cursor < input.length()) { // Iterate through the input string
 
@@ -23,6 +35,12 @@ public class LempelZiv {
 	        int prevMatch = 0; // Position of the previous match
 
 	        while (true) {
+	            if (cursor + length >= input.length()) { // If the end of the input string is reached
+	                // Append the compressed format of the remaining characters to the compressed text
+	                length = appendTuple(cText, input, cursor, prevMatch, length - 1);
+	                break;
+	            }
+
 	            // Search for a match 
 	            int match = KMP.search(input.substring(cursor, cursor + length),
 	                    input.substring(Math.max(0, cursor - windowSize), cursor));
@@ -33,27 +51,46 @@ public class LempelZiv {
 	            } else { // If no match is found
 	                if (length > 1) { // If the length of the match is greater than 1
 	                    // Append the compressed format of the match to the compressed text
-	                    cText.append("[" + (prevMatch) + "|" + (length - 1) + "|" + input.charAt(cursor + length - 1) + "]");
+	                    length = appendTuple(cText, input, cursor, prevMatch, length - 1);
 	                } else { // If the length of the match is 1
 	                    // Append the compressed format of a single character to the compressed text
-	                    cText.append("[0|0|" + input.charAt(cursor) + "]");
+	                    length = appendTuple(cText, input, cursor, 0, 0);
 	                }
 	                break;
 	            }
-
-	            if (cursor + length >= input.length()) { // If the end of the input string is reached
-	                // Append the compressed format of the remaining characters to the compressed text
-	                cText.append("[" + (prevMatch) + "|" + (length - 1) + "|" + input.charAt(cursor + length - 1) + "]");
-	                break;
-	            }
 	        }
 
 	        cursor = cursor + length; // Move the cursor to the next position
+
+	        if (cursor >= nextReport) { // Report progress every REPORT_INTERVAL chars
+	            listener.progress(cursor, input.length());
+	            nextReport = cursor + REPORT_INTERVAL;
+	        }
 	    }
 
 	    return cText.toString(); // Return the compressed text
 	}
 
+	/**
+	 * Appends the tuple for a match of matchLength chars, prevMatch back, followed
+	 * by the terminal char, and returns the number of input chars it covers. A
+	 * surrogate pair is kept whole as the terminal, since half of one can't be
+	 * written out as UTF-8, so the match may be one char shorter or the tuple one
+	 * char longer than asked.
+	 */
+	private static int appendTuple(StringBuilder cText, String input, int cursor, int prevMatch, int matchLength) {
+		int terminal = cursor + matchLength;
+		if (matchLength > 0 && Character.isLowSurrogate(input.charAt(terminal))
+				&& Character.isHighSurrogate(input.charAt(terminal - 1))) {
+			matchLength--;
+			terminal--;
+		}
+		int end = terminal + Character.charCount(input.codePointAt(terminal));
+		cText.append("[" + (matchLength == 0 ? 0 : prevMatch) + "|" + matchLength + "|"
+				+ input.substring(terminal, end) + "]");
+		return end - cursor;
+	}
+
 
 
 	/**
@@ -61,13 +98,28 @@ public class LempelZiv {
 	 * text string.
 	 */
 	public static String decompress(String compressed) {
+		return decompress(compressed, ProgressListener.NONE);
+	}
+
+	/**
+	 * Decompresses the input, telling the listener how many chars of it have been
+	 * consumed every few thousand chars.
+	 */
+	public static String decompress(String compressed, ProgressListener listener) {
 
 		StringBuilder dText = new StringBuilder();
 
 		int counter = 0;
+		int nextReport = REPORT_INTERVAL;
 
 		while (counter < compressed.length()) {
 			
+			// Report progress every REPORT_INTERVAL chars
+			if (counter >= nextReport) {
+				listener.progress(counter, compressed.length());
+				nextReport = counter + REPORT_INTERVAL;
+			}
+			
 			/* PARSE THE TUPLES */
 			
 			StringBuilder prevMatch = new StringBuilder();
@@ -101,9 +153,10 @@ public class LempelZiv {
 				counter++;
 			}
 
-			// Read the terminal Char
-			terminalChar = compressed.substring(counter, counter + 1);
-			counter++;
+			// Read the terminal Char, both halves of it if it is a surrogate pair
+			int terminalLength = Character.charCount(compressed.codePointAt(counter));
+			terminalChar = compressed.substring(counter, counter + terminalLength);
+			counter += terminalLength;
 			// Read the last ] in the tuple
 			counter++;
 			
@@ -121,8 +174,6 @@ public class LempelZiv {
 				int lengthInt = Integer.parseInt(length.toString());
 
 				// Find the pattern in the decoded string so far
-				String decodeSoFar = dText.toString();
-
 				String prevMatchString = dText.substring(dText.length() - prevMatchInt,
 						dText.length() - prevMatchInt + lengthInt);
 
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read-only text file mapped into memory, for viewing files too big to load
+ * into a String. The file is mapped in chunks of up to 1 GB, so files of any
+ * size can be read without copying them onto the heap. A background thread
+ * builds an index of where every line starts. Lines can be read while it
+ * runs, up to the last line indexed so far.
+ */
+public class MappedTextFile implements AutoCloseable {
+
+	// Size of each mapped chunk; positions split into chunk and offset by shifting
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+	// Longest part of a line that is decoded for display
+	static final int MAX_LINE_BYTES = 1 << 12;
+
+	// Bytes scanned at a time when indexing and searching
+	private static final int SCAN_BUFFER = 1 << 16;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] chunks;
+	private final long length;
+
+	// Start of every line found so far. Replaced rather than resized in place, and
+	// lineCount is written after the starts it covers, so a reader that reads
+	// lineCount first sees a consistent index.
+	private volatile long[] lineStarts = new long[1024];
+	private volatile int lineCount;
+	private volatile boolean indexed;
+	private final Thread indexer;
+
+	/**
+	 * Maps the file and starts indexing its lines in the background.
+	 */
+	public MappedTextFile(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		length = channel.size();
+		int count = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+		chunks = new MappedByteBuffer[count];
+		try {
+			for (int c = 0; c < count; c++) {
+				long start = (long) c << CHUNK_BITS;
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		indexer = new Thread(this::indexLines, "line-indexer");
+		indexer.setDaemon(true);
+		indexer.start();
+	}
+
+	/**
+	 * Finds the start of every line, publishing them as it goes.
+	 */
+	private void indexLines() {
+		long[] starts = lineStarts;
+		int count = 0;
+		if (length > 0) {
+			starts[count++] = 0;
+		}
+		byte[] buffer = new byte[SCAN_BUFFER];
+		for (long position = 0; position < length && !Thread.currentThread().isInterrupted();) {
+			int n = read(position, buffer, 0, buffer.length);
+			for (int i = 0; i < n; i++) {
+				if (buffer[i] == '\n' && position + i + 1 < length) {
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+					starts[count++] = position + i + 1;
+				}
+			}
+			position += n;
+
+			// Publish the array before the count that covers it
+			lineStarts = starts;
+			lineCount = count;
+		}
+		lineStarts = starts;
+		lineCount = count;
+		indexed = true;
+	}
+
+	/**
+	 * Copies up to max bytes starting at position into buffer[offset...],
+	 * returning how many were copied. Stops at the end of a chunk, so may return
+	 * fewer than asked.
+	 */
+	private int read(long position, byte[] buffer, int offset, int max) {
+		MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+		int index = (int) (position & (CHUNK_SIZE - 1));
+		int n = (int) Math.min(max, Math.min(chunk.limit() - index, length - position));
+		chunk.get(index, buffer, offset, n);
+		return n;
+	}
+
+	public byte byteAt(long position) {
+		return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & (CHUNK_SIZE - 1)));
+	}
+
+	/**
+	 * Size of the file in bytes.
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Number of lines indexed so far.
+	 */
+	public int lineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Whether every line has been indexed.
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Byte offset of the start of an indexed line.
+	 */
+	public long lineStart(int line) {
+		int count = lineCount;
+		if (line < 0 || line >= count) {
+			throw new IndexOutOfBoundsException("Line " + line + " of " + count);
+		}
+		return lineStarts[line];
+	}
+
+	/**
+	 * The line holding the byte at position, among the lines indexed so far.
+	 */
+	public int lineOf(long position) {
+		int count = lineCount;
+		int index = Arrays.binarySearch(lineStarts, 0, count, position);
+		return index >= 0 ? index : Math.max(0, -index - 2);
+	}
+
+	/**
+	 * The bytes of an indexed line, without its line break, cut off at
+	 * MAX_LINE_BYTES.
+	 */
+	public byte[] lineBytes(int line) {
+		// Read indexed before lineCount, so a finished index is seen whole
+		boolean done = indexed;
+		long start = lineStart(line);
+		boolean endKnown = done || line + 1 < lineCount;
+		long end = line + 1 < lineCount ? lineStart(line + 1) : done ? length : start + MAX_LINE_BYTES;
+		end = Math.min(end, Math.min(length, start + MAX_LINE_BYTES));
+
+		// A line can cross from one chunk into the next
+		byte[] bytes = new byte[(int) (end - start)];
+		for (int n = 0; n < bytes.length;) {
+			n += read(start + n, bytes, n, bytes.length - n);
+		}
+
+		// The indexer hasn't reached the end of this line yet, so it ends at
+		// the first line break
+		int size = bytes.length;
+		if (!endKnown) {
+			for (int i = 0; i < bytes.length; i++) {
+				if (bytes[i] == '\n') {
+					size = i + 1;
+					break;
+				}
+			}
+		}
+
+		// Drop the line break
+		while (size > 0 && (bytes[size - 1] == '\n' || bytes[size - 1] == '\r')) {
+			size--;
+		}
+		return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+	}
+
+	/**
+	 * The text of an indexed line, decoded as UTF-8.
+	 */
+	public String line(int line) {
+		return new String(lineBytes(line), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Finds the first match of the pattern at or after from using KMP, or -1.
+	 * Runs over the mapped chunks directly, so takes no extra memory however big
+	 * the file is. Stops early, returning -1, if the thread is interrupted.
+	 */
+	public long find(byte[] pattern, long from) {
+		if (pattern.length == 0) {
+			return from;
+		}
+		int[] prefixLength = KMP.calcJumpTable(pattern);
+		byte[] buffer = new byte[SCAN_BUFFER];
+		int p = 0;
+		for (long position = from; position < length;) {
+			if (Thread.currentThread().isInterrupted()) {
+				return -1;
+			}
+			int n = read(position, buffer, 0, buffer.length);
+			for (int i = 0; i < n;) {
+				if (pattern[p] == buffer[i]) {
+					p++;
+					i++;
+					if (p == pattern.length) { // Matched the entire pattern
+						return position + i - p;
+					}
+				} else {
+					p = prefixLength[p];
+					if (p < 0) {
+						i++;
+						p++;
+					}
+				}
+			}
+			position += n;
+		}
+		return -1;
+	}
+
+	/**
+	 * Stops indexing and closes the file. The mapping itself goes once it is no
+	 * longer referenced.
+	 */
+	@Override
+	public void close() throws IOException {
+		indexer.interrupt();
+		channel.close();
+	}
+}
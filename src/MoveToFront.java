@@ -0,0 +1,59 @@
+/**
+ * Move-to-front coding: each byte is replaced by its position in a list of all
+ * 256 values, and then moved to the front of the list. Runs of the same byte
+ * become runs of zeros, and bytes seen recently become small numbers, which is
+ * what the Burrows-Wheeler transform's output needs to code well.
+ */
+public class MoveToFront implements BlockTransform {
+
+	static final int ID = 2;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return "Move-to-front";
+	}
+
+	@Override
+	public byte[] forward(byte[] block) {
+		byte[] list = initialList();
+		byte[] out = new byte[block.length];
+		for (int i = 0; i < block.length; i++) {
+			byte b = block[i];
+			int position = 0;
+			while (list[position] != b) {
+				position++;
+			}
+			System.arraycopy(list, 0, list, 1, position);
+			list[0] = b;
+			out[i] = (byte) position;
+		}
+		return out;
+	}
+
+	@Override
+	public byte[] inverse(byte[] block) {
+		byte[] list = initialList();
+		byte[] out = new byte[block.length];
+		for (int i = 0; i < block.length; i++) {
+			int position = block[i] & 0xFF;
+			byte b = list[position];
+			System.arraycopy(list, 0, list, 1, position);
+			list[0] = b;
+			out[i] = b;
+		}
+		return out;
+	}
+
+	private static byte[] initialList() {
+		byte[] list = new byte[256];
+		for (int i = 0; i < list.length; i++) {
+			list[i] = (byte) i;
+		}
+		return list;
+	}
+}
@@ -0,0 +1,217 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A codec built from a chain of BlockTransform stages and an EntropyCoder at
+ * the end. The input is cut into independent blocks which go through the
+ * stages and the coder in parallel, as bzip2 does with its Burrows-Wheeler,
+ * move-to-front and run-length stages.
+ *
+ * A stream is a header naming the stages, then a directory with the original
+ * and encoded size of every block, then the encoded blocks.
+ */
+public class PipelineCodec implements Codec {
+
+	// Identifies a pipeline stream, "PIP" followed by a 0 byte
+	private static final int MAGIC = 0x50495000;
+	private static final int FORMAT_VERSION = 1;
+
+	private final String name;
+	private final String id;
+	private final String extension;
+	private final int blockSize;
+	private final BlockTransform[] stages;
+	private final EntropyCoder coder;
+
+	/**
+	 * @param blockSize most bytes in one block; bigger blocks find more context,
+	 *                  smaller ones spread better across threads
+	 * @param coder     the coder for the output of the last stage
+	 * @param stages    the transforms, in the order they are applied
+	 */
+	public PipelineCodec(String name, String id, String extension, int blockSize, EntropyCoder coder,
+			BlockTransform... stages) {
+		// Handle obvious errors
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be at least 1.");
+		}
+		this.name = name;
+		this.id = id;
+		this.extension = extension;
+		this.blockSize = blockSize;
+		this.coder = coder;
+		this.stages = stages.clone();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * The stages and coder, for showing to the user.
+	 */
+	public String describe() {
+		StringBuilder description = new StringBuilder();
+		for (BlockTransform stage : stages) {
+			description.append(stage.getName()).append(" -> ");
+		}
+		return description.append(coder.getName()).toString();
+	}
+
+	@Override
+	public void compress(InputStream in, OutputStream out) throws IOException {
+		byte[] data = in.readAllBytes();
+		int blocks = (int) ((data.length + (long) blockSize - 1) / blockSize);
+
+		// Encode the blocks in parallel
+		byte[][] encoded = new byte[blocks][];
+		IntStream.range(0, blocks).parallel().forEach(b -> {
+			int start = b * blockSize;
+			byte[] block = new byte[Math.min(blockSize, data.length - start)];
+			System.arraycopy(data, start, block, 0, block.length);
+			for (BlockTransform stage : stages) {
+				block = stage.forward(block);
+			}
+			encoded[b] = EntropyCoder.encodeStream(coder, block);
+		});
+
+		// Header
+		DataOutputStream stream = new DataOutputStream(out);
+		stream.writeInt(MAGIC);
+		stream.writeByte(FORMAT_VERSION);
+		stream.writeByte(stages.length);
+		for (BlockTransform stage : stages) {
+			stream.writeByte(stage.id());
+		}
+
+		// Block directory
+		VarInt.write(stream, blocks);
+		for (int b = 0; b < blocks; b++) {
+			VarInt.write(stream, Math.min(blockSize, data.length - b * blockSize));
+			VarInt.write(stream, encoded[b].length);
+		}
+
+		// Encoded blocks
+		for (byte[] block : encoded) {
+			stream.write(block);
+		}
+		stream.flush();
+	}
+
+	@Override
+	public String compress(InputStream in, OutputStream out, long length, ProgressListener progress)
+			throws IOException {
+		compress(new ProgressInputStream(in, length, progress), out);
+		return "stages: " + describe() + "\n";
+	}
+
+	@Override
+	public void decompress(InputStream in, OutputStream out) throws IOException {
+		DataInputStream stream = new DataInputStream(in);
+
+		// Header
+		if (stream.readInt() != MAGIC) {
+			throw new IOException("Not a " + name + " file.");
+		}
+		int version = stream.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported " + name + " file version: " + version);
+		}
+		int stageCount = stream.readUnsignedByte();
+		boolean sameStages = stageCount == stages.length;
+		for (int i = 0; i < stageCount; i++) {
+			int stage = stream.readUnsignedByte();
+			sameStages &= i < stages.length && stages[i].id() == stage;
+		}
+		if (!sameStages) {
+			throw new IOException("The file was written by a different pipeline than " + describe() + ".");
+		}
+
+		// Block directory. Every block holds between 1 and blockSize bytes and at
+		// least the coder's id, and the arrays grow as blocks are read rather
+		// than trusting the count up front.
+		int blocks = VarInt.readInt(stream);
+		int capacity = Math.min(blocks, 1024);
+		long[] offsets = new long[capacity + 1];
+		int[] lengths = new int[capacity];
+		int[] encodedSizes = new int[capacity];
+		for (int b = 0; b < blocks; b++) {
+			if (b == capacity) {
+				capacity = (int) Math.min(blocks, 2L * capacity);
+				offsets = Arrays.copyOf(offsets, capacity + 1);
+				lengths = Arrays.copyOf(lengths, capacity);
+				encodedSizes = Arrays.copyOf(encodedSizes, capacity);
+			}
+			lengths[b] = VarInt.readInt(stream);
+			if (lengths[b] < 1 || lengths[b] > blockSize) {
+				throw new IOException("Invalid length for block " + b + ": " + lengths[b]);
+			}
+			offsets[b + 1] = offsets[b] + lengths[b];
+			encodedSizes[b] = VarInt.readInt(stream);
+			if (encodedSizes[b] < 1) {
+				throw new IOException("Invalid encoded size for block " + b + ": " + encodedSizes[b]);
+			}
+		}
+		if (offsets[blocks] > Integer.MAX_VALUE - 8) {
+			throw new IOException("Block lengths add up to more than fits in memory.");
+		}
+
+		// Encoded blocks, read as far as the data really goes
+		byte[][] encoded = new byte[blocks][];
+		for (int b = 0; b < blocks; b++) {
+			encoded[b] = HuffmanCoding.readBytes(stream, encodedSizes[b]);
+		}
+
+		// Decode the blocks in parallel
+		final long[] blockOffsets = offsets;
+		final int[] blockLengths = lengths;
+		byte[] data = new byte[(int) offsets[blocks]];
+		try {
+			IntStream.range(0, blocks).parallel().forEach(b -> {
+				try {
+					// The most each stage can have been given, so a corrupt block can't make
+					// one blow up before its length is checked
+					long[] limits = new long[stages.length];
+					long limit = blockLengths[b];
+					for (int i = 0; i < stages.length; i++) {
+						limits[i] = limit;
+						limit = stages[i].maxForwardLength(limit);
+					}
+
+					byte[] block = EntropyCoder.decodeStream(encoded[b]);
+					for (int i = stages.length - 1; i >= 0; i--) {
+						block = stages[i].inverse(block, limits[i]);
+					}
+					if (block.length != blockLengths[b]) {
+						throw new IOException("Block " + b + " decoded to the wrong length.");
+					}
+					System.arraycopy(block, 0, data, (int) blockOffsets[b], block.length);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt " + name + " data.", e);
+		}
+		out.write(data);
+	}
+}
@@ -0,0 +1,66 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports the bytes read through it to a ProgressListener, so any codec that
+ * reads from a stream reports its progress without changes to the codec.
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+	// Report at most once per this many bytes
+	private static final int REPORT_INTERVAL = 1 << 16;
+
+	private final ProgressListener listener;
+	private final long total;
+	private long done;
+	private long lastReport;
+
+	/**
+	 * @param total number of bytes the stream holds, reported as the total
+	 */
+	public ProgressInputStream(InputStream in, long total, ProgressListener listener) {
+		super(in);
+		this.total = total;
+		this.listener = listener;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			consumed(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int n = super.read(buffer, offset, length);
+		if (n > 0) {
+			consumed(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		consumed(skipped);
+		return skipped;
+	}
+
+	// Bytes read again after a reset would be counted twice
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void consumed(long n) {
+		done += n;
+		if (done - lastReport >= REPORT_INTERVAL || done == total) {
+			lastReport = done;
+			listener.progress(done, total);
+		}
+	}
+}
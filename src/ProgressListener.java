@@ -0,0 +1,40 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * Told how far a long running codec has got, in bytes (or chars) of input
+ * consumed. Codecs call it every few thousand symbols rather than for every
+ * one. A listener may throw a CancellationException to stop the codec, which
+ * lets a job be cancelled without the codec knowing anything about threads.
+ */
+public interface ProgressListener {
+
+	// A listener that ignores progress, for callers that don't care
+	ProgressListener NONE = (done, total) -> {};
+
+	/**
+	 * @param done  how much of the input has been consumed
+	 * @param total size of the input
+	 */
+	void progress(long done, long total);
+
+	/**
+	 * A listener that reports one stage of a bigger job: the stage's progress is
+	 * scaled to lie between from and to, out of jobTotal.
+	 */
+	default ProgressListener stage(long from, long to, long jobTotal) {
+		return (done, total) -> progress(total <= 0 ? from : from + (to - from) * done / total, jobTotal);
+	}
+
+	/**
+	 * A listener that throws a CancellationException once the thread running the
+	 * codec is interrupted, and otherwise passes progress on to this one.
+	 */
+	default ProgressListener interruptible() {
+		return (done, total) -> {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("Interrupted.");
+			}
+			progress(done, total);
+		};
+	}
+}
@@ -0,0 +1,279 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Range asymmetric numeral system (rANS) coder over bytes. Where Huffman has to
+ * spend a whole number of bits on every symbol, rANS spends close to the
+ * symbol's real information content, which matters a lot on skewed data (a byte
+ * that is 99% likely costs about 0.015 bits, not 1).
+ *
+ * The model is the byte frequencies scaled to add up to 2^SCALE_BITS. The state
+ * is kept between 2^23 and 2^31 and renormalised a byte at a time. Two states
+ * take turns on alternate bytes, so the decoder has two independent chains to
+ * work on. rANS decodes in the reverse order it encodes, so the encoder works
+ * from the last byte backwards and the output is flipped at the end.
+ *
+ * A block is the number of bytes, the scaled frequencies, then the coded bytes.
+ */
+public class RansCoding implements EntropyCoder {
+
+	static final int ID = 1;
+
+	// Frequencies are scaled to add up to 1 << SCALE_BITS
+	static final int SCALE_BITS = 14;
+	private static final int SCALE = 1 << SCALE_BITS;
+
+	// Lower bound of the state; it always stays in [RANS_L, RANS_L << 8)
+	private static final int RANS_L = 1 << 23;
+
+	private static final int ALPHABET_SIZE = 256;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return "rANS";
+	}
+
+	@Override
+	public byte[] encode(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		try {
+			VarInt.write(out, data.length);
+			if (data.length == 0) {
+				return out.toByteArray();
+			}
+
+			// Model
+			int[] freqs = normalise(ByteHuffmanCoding.countFrequencies(data, 0, data.length));
+			int[] starts = new int[ALPHABET_SIZE];
+			int used = 0;
+			for (int s = 0, start = 0; s < ALPHABET_SIZE; s++) {
+				starts[s] = start;
+				start += freqs[s];
+				if (freqs[s] > 0) {
+					used++;
+				}
+			}
+			VarInt.write(out, used);
+			int last = 0;
+			for (int s = 0; s < ALPHABET_SIZE; s++) {
+				if (freqs[s] > 0) {
+					VarInt.write(out, s - last);
+					VarInt.write(out, freqs[s]);
+					last = s;
+				}
+			}
+
+			// Code backwards into a buffer that gets flipped at the end
+			ReverseBuffer coded = new ReverseBuffer(data.length / 2 + 16);
+			int[] states = { RANS_L, RANS_L };
+			for (int i = data.length - 1; i >= 0; i--) {
+				int s = data[i] & 0xFF;
+				int f = freqs[s];
+				int x = states[i & 1];
+
+				// Push bytes out until coding the symbol keeps the state in range
+				long max = ((long) (RANS_L >>> SCALE_BITS) << 8) * f;
+				while (x >= max) {
+					coded.add((byte) x);
+					x >>>= 8;
+				}
+				states[i & 1] = ((x / f) << SCALE_BITS) + (x % f) + starts[s];
+			}
+			// The decoder reads state 0 first, then state 1
+			coded.addInt(states[1]);
+			coded.addInt(states[0]);
+			out.write(coded.reversed());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public byte[] decode(byte[] block) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(block);
+		DataInputStream in = new DataInputStream(bytes);
+		int length = VarInt.readInt(in);
+		if (length == 0) {
+			return new byte[0];
+		}
+
+		// Model, with a table from each of the SCALE slots to its symbol
+		int[] freqs = new int[ALPHABET_SIZE];
+		int used = VarInt.readInt(in);
+		int symbol = 0;
+		for (int i = 0; i < used; i++) {
+			symbol += VarInt.readInt(in);
+			if (symbol >= ALPHABET_SIZE) {
+				throw new IOException("Invalid symbol in rANS block: " + symbol);
+			}
+			freqs[symbol] = VarInt.readInt(in);
+		}
+		int[] starts = new int[ALPHABET_SIZE];
+		byte[] slotSymbols = new byte[SCALE];
+		int start = 0;
+		int maxFreq = 0;
+		for (int s = 0; s < ALPHABET_SIZE; s++) {
+			starts[s] = start;
+			// Compared this way round so a huge frequency can't overflow
+			if (freqs[s] < 0 || freqs[s] > SCALE - start) {
+				throw new IOException("Corrupt rANS frequency table.");
+			}
+			Arrays.fill(slotSymbols, start, start + freqs[s], (byte) s);
+			start += freqs[s];
+			maxFreq = Math.max(maxFreq, freqs[s]);
+		}
+		if (start != SCALE) {
+			throw new IOException("Corrupt rANS frequency table.");
+		}
+
+		// Coded bytes
+		int pos = block.length - bytes.available();
+		if (block.length - pos < 8) {
+			throw new IOException("Truncated rANS block.");
+		}
+		if (length > maxLength(maxFreq, block.length - pos)) {
+			throw new IOException("Corrupt rANS block, " + length + " bytes can't be coded in "
+					+ (block.length - pos) + ".");
+		}
+		int x0 = readInt(block, pos);
+		int x1 = readInt(block, pos + 4);
+		pos += 8;
+
+		byte[] data = new byte[length];
+		int mask = SCALE - 1;
+		int end = block.length;
+		for (int i = 0; i < length; i += 2) {
+			// State 0 has the even bytes: undo the encode step, then pull bytes back in
+			int slot = x0 & mask;
+			int s = slotSymbols[slot] & 0xFF;
+			data[i] = (byte) s;
+			x0 = freqs[s] * (x0 >>> SCALE_BITS) + slot - starts[s];
+			while (x0 < RANS_L) {
+				if (pos == end) {
+					throw new IOException("Truncated rANS block.");
+				}
+				x0 = (x0 << 8) | (block[pos++] & 0xFF);
+			}
+
+			// State 1 has the odd bytes
+			if (i + 1 < length) {
+				slot = x1 & mask;
+				s = slotSymbols[slot] & 0xFF;
+				data[i + 1] = (byte) s;
+				x1 = freqs[s] * (x1 >>> SCALE_BITS) + slot - starts[s];
+				while (x1 < RANS_L) {
+					if (pos == end) {
+						throw new IOException("Truncated rANS block.");
+					}
+					x1 = (x1 << 8) | (block[pos++] & 0xFF);
+				}
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * The most bytes that coded bytes can hold with the given largest
+	 * frequency, so a damaged length is refused before its output is
+	 * allocated. Coding a byte of frequency f takes the state from x to at
+	 * least x + (x / f - 1) * (SCALE - f), and x is never below 512 f when it
+	 * is coded, so every byte adds at least log2(1 + (SCALE - f) / f * 511 / 512)
+	 * bits to the states. Between them the states only grow by the bytes
+	 * pushed out of them, which take off a little over 8 bits each, as x is at
+	 * least 1 << 17 when they are. A table of just one symbol codes it in no bits at all,
+	 * so there is no limit on how many of it there can be.
+	 */
+	static long maxLength(int maxFreq, int codedBytes) {
+		if (maxFreq >= SCALE) {
+			return Integer.MAX_VALUE;
+		}
+		double bits = Math.log1p((double) (SCALE - maxFreq) / maxFreq * 511 / 512) / Math.log(2);
+		return (long) Math.min(Integer.MAX_VALUE, 8.01 * codedBytes / bits + 1);
+	}
+
+	/**
+	 * Scales the counts to add up to exactly SCALE, keeping every used symbol at
+	 * least 1.
+	 */
+	static int[] normalise(int[] counts) {
+		long total = 0;
+		for (int c : counts) {
+			total += c;
+		}
+		int[] freqs = new int[counts.length];
+		int sum = 0;
+		for (int s = 0; s < counts.length; s++) {
+			if (counts[s] > 0) {
+				freqs[s] = (int) Math.max(1, (long) counts[s] * SCALE / total);
+				sum += freqs[s];
+			}
+		}
+
+		// Fix up the rounding on the biggest symbols, which notice it least
+		while (sum != SCALE) {
+			int biggest = -1;
+			for (int s = 0; s < freqs.length; s++) {
+				if ((sum < SCALE || freqs[s] > 1) && (biggest < 0 || freqs[s] > freqs[biggest])) {
+					biggest = s;
+				}
+			}
+			int step = sum < SCALE ? 1 : -1;
+			int change = Math.max(1, Math.min(Math.abs(SCALE - sum), freqs[biggest] / 8));
+			if (step < 0) {
+				change = Math.min(change, freqs[biggest] - 1);
+			}
+			freqs[biggest] += step * change;
+			sum += step * change;
+		}
+		return freqs;
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return (b[pos] & 0xFF) << 24 | (b[pos + 1] & 0xFF) << 16 | (b[pos + 2] & 0xFF) << 8 | (b[pos + 3] & 0xFF);
+	}
+
+	/**
+	 * Growable byte buffer that is read back in reverse.
+	 */
+	private static class ReverseBuffer {
+		byte[] bytes;
+		int size;
+
+		ReverseBuffer(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void add(byte b) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[size++] = b;
+		}
+
+		/**
+		 * Adds an int so that it reads big endian once reversed.
+		 */
+		void addInt(int value) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				add((byte) (value >>> shift));
+			}
+		}
+
+		byte[] reversed() {
+			byte[] result = new byte[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = bytes[size - 1 - i];
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class RansTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, a very skewed text where Huffman can't do better than 1 bit
+        // per symbol
+        StringBuilder builder = new StringBuilder("00");
+        for (int i = 0; i < 2000; i++) {
+            builder.append('1');
+        }
+        builder.append("00011010");
+        byte[] text = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Encode with each coder, selected per stream
+        byte[] huffman = EntropyCoder.encodeStream(new HuffmanEntropyCoder(), text);
+        byte[] rans = EntropyCoder.encodeStream(new RansCoding(), text);
+
+        System.out.println("Input length: " + text.length + " bytes");
+        System.out.println("Huffman length: " + huffman.length + " bytes");
+        System.out.println("rANS length: " + rans.length + " bytes");
+
+        // Judge the correctness of the results
+        if (Arrays.equals(text, EntropyCoder.decodeStream(rans))) {
+            System.out.println("rANS decoded text matches the original text.");
+        } else {
+            System.out.println("rANS decoded text does not match the original text.");
+        }
+        if (Arrays.equals(text, EntropyCoder.decodeStream(huffman))) {
+            System.out.println("Huffman decoded text matches the original text.");
+        } else {
+            System.out.println("Huffman decoded text does not match the original text.");
+        }
+        if (rans.length < huffman.length / 2) {
+            System.out.println("OK!! rANS beats Huffman on skewed data.");
+        } else {
+            System.out.println("Wrong!! Expected rANS to be much smaller than Huffman.");
+        }
+
+        // Damaged blocks should be refused with an IOException, before a huge
+        // length is allocated
+        EntropyCoder ransCoder = new RansCoding();
+        EntropyCoder huffmanCoder = new HuffmanEntropyCoder();
+        expectFailure(ransCoder, "huge rANS length", block(false, Integer.MAX_VALUE, 0, 8192, 1, 8192));
+        expectFailure(ransCoder, "rANS frequency overflowing the scale",
+                block(false, 10, 0, 8192, 1, Integer.MAX_VALUE));
+        expectFailure(huffmanCoder, "huge Huffman length", block(true, Integer.MAX_VALUE, 0, 1, 1, 1));
+        byte[] sentences = "the cat sat on the mat, then the other cat sat there.\n".repeat(100)
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = huffmanCoder.encode(sentences);
+        expectFailure(huffmanCoder, "truncated Huffman block", Arrays.copyOf(encoded, encoded.length - 10));
+        encoded = ransCoder.encode(sentences);
+        expectFailure(ransCoder, "truncated rANS block", Arrays.copyOf(encoded, encoded.length - 10));
+
+        // A block of one symbol codes it in no bits, so can be any length
+        byte[] zeros = new byte[100000];
+        boolean same = Arrays.equals(zeros, ransCoder.decode(ransCoder.encode(zeros)))
+                && Arrays.equals(zeros, huffmanCoder.decode(huffmanCoder.encode(zeros)));
+        System.out.println((same ? "OK!! " : "Wrong!! ") + "A block of one symbol decodes");
+    }
+
+    /**
+     * A block of the given length, then the symbol count and the pairs of
+     * symbol steps and frequencies, or code lengths for a Huffman block, then
+     * 8 zero bytes of coded data.
+     */
+    private static byte[] block(boolean huffman, int length, int... symbols) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarInt.write(out, length);
+        VarInt.write(out, symbols.length / 2);
+        for (int i = 0; i < symbols.length; i += 2) {
+            VarInt.write(out, symbols[i]);
+            if (huffman) {
+                out.write(symbols[i + 1]);
+            } else {
+                VarInt.write(out, symbols[i + 1]);
+            }
+        }
+        out.write(new byte[8]);
+        return out.toByteArray();
+    }
+
+    private static void expectFailure(EntropyCoder coder, String what, byte[] block) {
+        try {
+            coder.decode(block);
+            System.out.println("Wrong!! A " + what + " was decoded");
+        } catch (IOException e) {
+            System.out.println("OK!! A " + what + " was refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " failed with " + e);
+        }
+    }
+}
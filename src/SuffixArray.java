@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+/**
+ * Suffix arrays built with SA-IS (Nong, Zhang and Chan's induced sorting),
+ * which takes linear time however repetitive the data is. Comparison sorts of
+ * the suffixes slow right down on long repeats, which is exactly the kind of
+ * data worth compressing.
+ */
+public class SuffixArray {
+
+	private SuffixArray() {
+	}
+
+	/**
+	 * The suffix array of the data with a sentinel, smaller than every byte,
+	 * appended: the start of each of the data.length + 1 suffixes in sorted
+	 * order. The first entry is always data.length, the sentinel on its own.
+	 */
+	public static int[] build(byte[] data) {
+		int n = data.length + 1;
+		int[] s = new int[n];
+		for (int i = 0; i < data.length; i++) {
+			s[i] = (data[i] & 0xFF) + 1;
+		}
+		int[] sa = new int[n];
+		sais(s, sa, n, 257);
+		return sa;
+	}
+
+	/**
+	 * Sorts the suffixes of s[0..n), whose last symbol must be a unique 0 and
+	 * whose other symbols are in [1, alphabet), into sa.
+	 */
+	private static void sais(int[] s, int[] sa, int n, int alphabet) {
+		// Handle obvious cases
+		if (n == 1) {
+			sa[0] = 0;
+			return;
+		}
+
+		// Classify the suffixes: S-type if smaller than the suffix after, L-type if
+		// larger. The sentinel is S-type.
+		boolean[] stype = new boolean[n];
+		stype[n - 1] = true;
+		for (int i = n - 2; i >= 0; i--) {
+			stype[i] = s[i] < s[i + 1] || (s[i] == s[i + 1] && stype[i + 1]);
+		}
+
+		// Sort the LMS substrings: put each LMS suffix at the end of its bucket and
+		// induce the rest from them
+		int[] bucket = new int[alphabet];
+		Arrays.fill(sa, -1);
+		bucketEnds(s, n, bucket);
+		for (int i = 1; i < n; i++) {
+			if (isLms(stype, i)) {
+				sa[--bucket[s[i]]] = i;
+			}
+		}
+		induce(s, sa, n, stype, bucket);
+
+		// Move the sorted LMS suffixes to the front
+		int lmsCount = 0;
+		for (int i = 0; i < n; i++) {
+			if (isLms(stype, sa[i])) {
+				sa[lmsCount++] = sa[i];
+			}
+		}
+
+		// Name the LMS substrings, equal substrings getting equal names. Names are
+		// stored at lmsCount + position / 2, which can't collide as LMS positions
+		// are at least two apart.
+		Arrays.fill(sa, lmsCount, n, -1);
+		int names = 0;
+		int previous = -1;
+		for (int i = 0; i < lmsCount; i++) {
+			int position = sa[i];
+			boolean differ = previous < 0;
+			for (int d = 0; !differ; d++) {
+				if (s[position + d] != s[previous + d] || stype[position + d] != stype[previous + d]) {
+					differ = true;
+				} else if (d > 0 && (isLms(stype, position + d) || isLms(stype, previous + d))) {
+					break;
+				}
+			}
+			if (differ) {
+				names++;
+				previous = position;
+			}
+			sa[lmsCount + position / 2] = names - 1;
+		}
+		int[] reduced = new int[lmsCount];
+		for (int i = n - 1, j = lmsCount - 1; i >= lmsCount; i--) {
+			if (sa[i] >= 0) {
+				reduced[j--] = sa[i];
+			}
+		}
+
+		// Sort the LMS suffixes, recursing if the names alone don't order them
+		int[] reducedSa = new int[lmsCount];
+		if (names < lmsCount) {
+			sais(reduced, reducedSa, lmsCount, names);
+		} else {
+			for (int i = 0; i < lmsCount; i++) {
+				reducedSa[reduced[i]] = i;
+			}
+		}
+
+		// Put the LMS suffixes at the ends of their buckets in sorted order, and
+		// induce the whole suffix array from them
+		for (int i = 1, j = 0; i < n; i++) {
+			if (isLms(stype, i)) {
+				reduced[j++] = i;
+			}
+		}
+		Arrays.fill(sa, -1);
+		bucketEnds(s, n, bucket);
+		for (int i = lmsCount - 1; i >= 0; i--) {
+			int position = reduced[reducedSa[i]];
+			sa[--bucket[s[position]]] = position;
+		}
+		induce(s, sa, n, stype, bucket);
+	}
+
+	/**
+	 * Induces the L-type suffixes left to right from the start of each bucket,
+	 * then the S-type suffixes right to left from the end of each bucket.
+	 */
+	private static void induce(int[] s, int[] sa, int n, boolean[] stype, int[] bucket) {
+		bucketStarts(s, n, bucket);
+		for (int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if (j >= 0 && !stype[j]) {
+				sa[bucket[s[j]]++] = j;
+			}
+		}
+		bucketEnds(s, n, bucket);
+		for (int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if (j >= 0 && stype[j]) {
+				sa[--bucket[s[j]]] = j;
+			}
+		}
+	}
+
+	private static boolean isLms(boolean[] stype, int i) {
+		return i > 0 && stype[i] && !stype[i - 1];
+	}
+
+	private static void bucketStarts(int[] s, int n, int[] bucket) {
+		counts(s, n, bucket);
+		int sum = 0;
+		for (int c = 0; c < bucket.length; c++) {
+			int count = bucket[c];
+			bucket[c] = sum;
+			sum += count;
+		}
+	}
+
+	private static void bucketEnds(int[] s, int n, int[] bucket) {
+		counts(s, n, bucket);
+		int sum = 0;
+		for (int c = 0; c < bucket.length; c++) {
+			sum += bucket[c];
+			bucket[c] = sum;
+		}
+	}
+
+	private static void counts(int[] s, int n, int[] bucket) {
+		Arrays.fill(bucket, 0);
+		for (int i = 0; i < n; i++) {
+			bucket[s[i]]++;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads and writes non-negative numbers as variable length integers: 7 bits per
+ * byte, least significant group first, with the top bit set on every byte but
+ * the last. Small numbers (like code lengths and symbol gaps) take one byte.
+ */
+public class VarInt {
+
+	private VarInt() {
+	}
+
+	/**
+	 * Writes a non-negative number.
+	 */
+	public static void write(OutputStream out, long value) throws IOException {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value: " + value);
+		}
+		while (value >= 0x80) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Reads a number written by write.
+	 *
+	 * @throws IOException if the number is malformed, or would be negative
+	 */
+	public static long read(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Unexpected end of stream.");
+			}
+			// The tenth byte only has room for the sign bit, which write never sets
+			if (shift == 63 && b != 0) {
+				break;
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if (b < 0x80) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer.");
+	}
+
+	/**
+	 * Reads a number written by write that must fit in an int.
+	 */
+	public static int readInt(InputStream in) throws IOException {
+		long value = read(in);
+		if (value > Integer.MAX_VALUE) {
+			throw new IOException("Value too large: " + value);
+		}
+		return (int) value;
+	}
+}
@@ -0,0 +1,547 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Word based Huffman coding for natural language text. The text is cut into
+ * alternating words (runs of letters and digits) and separators (everything
+ * else), and each of those tokens is one symbol. Following the spaceless words
+ * model, a single space between two words is left out, since the decoder can
+ * put it back.
+ *
+ * Codewords are made of bytes rather than bits: each byte holds a 7-bit digit of
+ * a 128-ary Huffman code, and the first byte of every codeword has its top bit
+ * set as a tag. Decoding is byte aligned, and because a codeword can only start
+ * on a tagged byte, a word can be searched for in the compressed data by looking
+ * for its codeword's bytes, with no false matches.
+ */
+public class WordHuffmanCoding {
+
+	// Identifies a word Huffman file, "WHF" followed by a 0 byte
+	private static final int MAGIC = 0x57484600;
+	private static final int FORMAT_VERSION = 1;
+
+	// Codes are written in 7-bit digits, leaving the top bit of each byte as a tag
+	static final int ARITY = 128;
+	private static final int TAG = 0x80;
+
+	// Longest codeword that fits in the long used to hold its digits
+	private static final int MAX_DIGITS = 9;
+
+	// Chars cut into tokens between progress reports
+	private static final int REPORT_INTERVAL = 1 << 16;
+
+	// The distinct tokens, indexed by token number (order of first appearance)
+	final String[] vocabulary;
+
+	// Number of digits in each token's codeword, and the digits themselves
+	final int[] lengths;
+	final long[] codes;
+
+	// Canonical decode tables, indexed by number of digits: the first code of that
+	// length, how many codes have that length, and where they start in symbols
+	private final long[] firstCode;
+	private final int[] lengthCount;
+	private final int[] firstIndex;
+	private final int[] symbols;
+
+	// The codewords of the text, one per token
+	private byte[] body;
+	private int tokenCount;
+	private int textLength;
+
+	// Checksum of the text, as read from a file
+	private int checksum;
+
+	/**
+	 * Builds the vocabulary and code for the text.
+	 */
+	public WordHuffmanCoding(String text) {
+		this(text, ProgressListener.NONE);
+	}
+
+	/**
+	 * Builds the vocabulary and code for the text, reporting progress in chars
+	 * read while cutting it into tokens, which is most of the work.
+	 */
+	public WordHuffmanCoding(String text, ProgressListener progress) {
+		// Handle obvious errors
+		if (text == null || text.length() == 0) {throw new IllegalArgumentException("Empty / null string.");}
+
+		Vocabulary words = new Vocabulary(text, progress);
+		tokenCount = words.tokenCount;
+		textLength = text.length();
+		vocabulary = words.strings();
+		lengths = CodeLengths.huffman(Arrays.copyOf(words.counts, words.size), ARITY);
+
+		firstCode = new long[MAX_DIGITS + 1];
+		lengthCount = new int[MAX_DIGITS + 1];
+		firstIndex = new int[MAX_DIGITS + 1];
+		symbols = new int[vocabulary.length];
+		codes = new long[vocabulary.length];
+		assignCodes();
+
+		// Encode the tokens
+		byte[][] codewords = new byte[vocabulary.length][];
+		int size = 0;
+		for (int t = 0; t < vocabulary.length; t++) {
+			codewords[t] = codeword(t);
+			size += words.counts[t] * codewords[t].length;
+		}
+		body = new byte[size];
+		int pos = 0;
+		for (int i = 0; i < tokenCount; i++) {
+			byte[] codeword = codewords[words.tokens[i]];
+			System.arraycopy(codeword, 0, body, pos, codeword.length);
+			pos += codeword.length;
+		}
+	}
+
+	/**
+	 * Builds a decoder from a vocabulary and its codeword lengths.
+	 */
+	private WordHuffmanCoding(String[] vocabulary, int[] lengths) {
+		this.vocabulary = vocabulary;
+		this.lengths = lengths;
+		firstCode = new long[MAX_DIGITS + 1];
+		lengthCount = new int[MAX_DIGITS + 1];
+		firstIndex = new int[MAX_DIGITS + 1];
+		symbols = new int[vocabulary.length];
+		codes = new long[vocabulary.length];
+		assignCodes();
+	}
+
+	/**
+	 * Hands out canonical codes: tokens in order of length then number get
+	 * consecutive codes, appending digits whenever the length goes up.
+	 */
+	private void assignCodes() {
+		for (int length : lengths) {
+			if (length < 1 || length > MAX_DIGITS) {
+				throw new IllegalArgumentException("Invalid codeword length: " + length);
+			}
+			lengthCount[length]++;
+		}
+		int index = 0;
+		for (int length = 1; length <= MAX_DIGITS; length++) {
+			firstIndex[length] = index;
+			index += lengthCount[length];
+		}
+		int[] next = firstIndex.clone();
+		for (int t = 0; t < lengths.length; t++) {
+			symbols[next[lengths[t]]++] = t;
+		}
+
+		long code = 0;
+		int previous = 1;
+		for (int i = 0; i < symbols.length; i++) {
+			int length = lengths[symbols[i]];
+			for (; previous < length; previous++) {
+				code *= ARITY;
+			}
+			if (i == firstIndex[length]) {
+				firstCode[length] = code;
+			}
+			codes[symbols[i]] = code++;
+		}
+
+		// Lengths that over-subscribe the code space can't form a prefix code
+		if (code > power(ARITY, previous)) {
+			throw new IllegalArgumentException("Codeword lengths do not form a prefix code.");
+		}
+	}
+
+	private static long power(int base, int exponent) {
+		long result = 1;
+		for (int i = 0; i < exponent; i++) {
+			result *= base;
+		}
+		return result;
+	}
+
+	/**
+	 * The bytes of a token's codeword, the first one tagged.
+	 */
+	byte[] codeword(int token) {
+		byte[] bytes = new byte[lengths[token]];
+		long code = codes[token];
+		for (int i = bytes.length - 1; i >= 0; i--) {
+			bytes[i] = (byte) (code % ARITY);
+			code /= ARITY;
+		}
+		bytes[0] |= TAG;
+		return bytes;
+	}
+
+	/**
+	 * Writes the text to out: a header holding the vocabulary and codeword
+	 * lengths, a checksum, then the codewords. The text must be the one the
+	 * coding was built from, it is only used for the length and checksum.
+	 */
+	public void write(String text, OutputStream out) throws IOException {
+		// Header
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(FORMAT_VERSION);
+		VarInt.write(data, text.length());
+		VarInt.write(data, vocabulary.length);
+		for (int t = 0; t < vocabulary.length; t++) {
+			String token = vocabulary[t];
+			VarInt.write(data, token.length());
+			for (int i = 0; i < token.length(); i++) {
+				VarInt.write(data, token.charAt(i));
+			}
+			data.writeByte(lengths[t]);
+		}
+		data.writeInt(HuffmanCoding.checksum(text));
+
+		// Codewords
+		VarInt.write(data, body.length);
+		data.write(body);
+		data.flush();
+	}
+
+	/**
+	 * Reads a file written by write, keeping the codewords compressed so they can
+	 * be searched or decoded.
+	 *
+	 * @throws IOException if the file is not a word Huffman file or is corrupt
+	 */
+	public static WordHuffmanCoding read(InputStream in) throws IOException {
+		WordHuffmanCoding coding = readUnchecked(in);
+		coding.check(coding.decode());
+		return coding;
+	}
+
+	/**
+	 * Reads a file written by write and decodes the text.
+	 *
+	 * @throws IOException if the file is not a word Huffman file or is corrupt
+	 */
+	public static String decode(InputStream in) throws IOException {
+		WordHuffmanCoding coding = readUnchecked(in);
+		String text = coding.decode();
+		coding.check(text);
+		return text;
+	}
+
+	/**
+	 * Reads a file written by write, without checking the codewords against the
+	 * checksum.
+	 */
+	private static WordHuffmanCoding readUnchecked(InputStream in) throws IOException {
+		try {
+			return readHeaderAndBody(new DataInputStream(in));
+		} catch (EOFException e) {
+			// DataInputStream's own end of stream has no message
+			throw (EOFException) new EOFException("Truncated word Huffman file.").initCause(e);
+		}
+	}
+
+	private static WordHuffmanCoding readHeaderAndBody(DataInputStream data) throws IOException {
+		// Header
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a word Huffman coded file.");
+		}
+		int version = data.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported word Huffman file version: " + version);
+		}
+		int textLength = VarInt.readInt(data);
+
+		// Every token is in the text, so the tokens can't add up to more chars
+		// than it has. The arrays grow as tokens are actually read, rather than
+		// trusting a size that may be corrupt.
+		int vocabularySize = VarInt.readInt(data);
+		if (vocabularySize > textLength) {
+			throw new IOException("Invalid word Huffman vocabulary size: " + vocabularySize);
+		}
+		int capacity = Math.min(vocabularySize, 1024);
+		String[] vocabulary = new String[capacity];
+		int[] lengths = new int[capacity];
+		long totalChars = 0;
+		int longest = 0;
+		for (int t = 0; t < vocabularySize; t++) {
+			if (t == capacity) {
+				capacity = (int) Math.min(vocabularySize, 2L * capacity);
+				vocabulary = Arrays.copyOf(vocabulary, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+			}
+			int tokenLength = VarInt.readInt(data);
+			totalChars += tokenLength;
+			if (tokenLength < 1 || totalChars > textLength) {
+				throw new IOException("Invalid word Huffman token length: " + tokenLength);
+			}
+			StringBuilder token = new StringBuilder(Math.min(tokenLength, 1024));
+			for (int i = 0; i < tokenLength; i++) {
+				int c = VarInt.readInt(data);
+				if (c > Character.MAX_VALUE) {
+					throw new IOException("Invalid char in word Huffman vocabulary: " + c);
+				}
+				token.append((char) c);
+			}
+			vocabulary[t] = token.toString();
+			lengths[t] = data.readUnsignedByte();
+			longest = Math.max(longest, tokenLength);
+		}
+		int checksum = data.readInt();
+
+		// Codewords
+		byte[] body = HuffmanCoding.readBytes(data, VarInt.readInt(data));
+
+		WordHuffmanCoding coding;
+		try {
+			coding = new WordHuffmanCoding(vocabulary, lengths);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt word Huffman header.", e);
+		}
+		coding.body = body;
+		coding.checksum = checksum;
+		for (byte b : body) {
+			if ((b & TAG) != 0) {
+				coding.tokenCount++;
+			}
+		}
+
+		// Each codeword gives a token and at most a space, so a longer text is
+		// corrupt, and is refused before decode makes room for it
+		if (textLength > (long) coding.tokenCount * (longest + 1)) {
+			throw new IOException("Invalid word Huffman text length: " + textLength);
+		}
+		coding.textLength = textLength;
+		return coding;
+	}
+
+	/**
+	 * Checks text decoded from a file against the checksum that was in it.
+	 */
+	private void check(String text) throws IOException {
+		if (HuffmanCoding.checksum(text) != checksum) {
+			throw new IOException("Checksum mismatch, the word Huffman file is corrupt.");
+		}
+	}
+
+	/**
+	 * Decodes the codewords back into the text, a byte at a time, putting back
+	 * the spaces left out between words.
+	 */
+	public String decode() throws IOException {
+		StringBuilder text = new StringBuilder(textLength);
+		boolean[] isWord = new boolean[vocabulary.length];
+		for (int t = 0; t < vocabulary.length; t++) {
+			isWord[t] = isWordChar(vocabulary[t].charAt(0));
+		}
+
+		boolean lastWasWord = false;
+		int pos = 0;
+		while (pos < body.length) {
+			if ((body[pos] & TAG) == 0) {
+				throw new IOException("Corrupt word Huffman data: codeword without a tag.");
+			}
+
+			// Add digits until the value so far is a codeword of that length
+			long value = body[pos++] & ~TAG & 0xFF;
+			int length = 1;
+			while (value - firstCode[length] >= lengthCount[length] || value < firstCode[length]) {
+				if (pos == body.length || length == MAX_DIGITS) {
+					throw new IOException("Corrupt word Huffman data: truncated codeword.");
+				}
+				value = value * ARITY + (body[pos++] & 0xFF);
+				length++;
+			}
+			int token = symbols[firstIndex[length] + (int) (value - firstCode[length])];
+
+			if (lastWasWord && isWord[token]) {
+				text.append(' ');
+			}
+			text.append(vocabulary[token]);
+			lastWasWord = isWord[token];
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Counts the occurrences of a whole word in the compressed data, without
+	 * decoding it: the word's codeword bytes are searched for directly.
+	 */
+	public int count(String word) {
+		int token = -1;
+		for (int t = 0; t < vocabulary.length; t++) {
+			if (vocabulary[t].equals(word)) {
+				token = t;
+				break;
+			}
+		}
+		if (token < 0) {
+			return 0;
+		}
+
+		byte[] pattern = codeword(token);
+		int count = 0;
+		int from = 0;
+		int match;
+		while ((match = KMP.search(pattern, body, from, body.length)) >= 0) {
+			count++;
+			from = match + pattern.length;
+		}
+		return count;
+	}
+
+	/**
+	 * Some statistics about the vocabulary and code.
+	 */
+	public String getInformation() {
+		int longest = 0;
+		for (int length : lengths) {
+			longest = Math.max(longest, length);
+		}
+		StringBuilder info = new StringBuilder();
+		info.append("distinct tokens: " + vocabulary.length + "\n");
+		info.append("tokens coded: " + tokenCount + "\n");
+		info.append("coded size: " + body.length + " bytes\n");
+		info.append("longest codeword: " + longest + " bytes\n");
+		return info.toString();
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c);
+	}
+
+	/**
+	 * Splits a text into tokens and numbers the distinct ones. Tokens are kept as
+	 * their position in the text, and looked up in an open addressed table by
+	 * hash, so no String is made for a token until the vocabulary is written out.
+	 */
+	private static class Vocabulary {
+		final String text;
+
+		// Token numbers, in text order
+		int[] tokens;
+		int tokenCount;
+
+		// Per distinct token: where it first appears, its length, hash and count
+		int[] starts = new int[1024];
+		int[] lengths = new int[1024];
+		int[] hashes = new int[1024];
+		int[] counts = new int[1024];
+		int size;
+
+		// Hash table of token number + 1, 0 for an empty slot
+		int[] table = new int[2048];
+
+		Vocabulary(String text, ProgressListener progress) {
+			this.text = text;
+			this.tokens = new int[Math.max(16, text.length() / 4)];
+
+			int pos = 0;
+			int length = text.length();
+			int nextReport = REPORT_INTERVAL;
+			while (pos < length) {
+				if (pos >= nextReport) {
+					progress.progress(pos, length);
+					nextReport = pos + REPORT_INTERVAL;
+				}
+				boolean word = isWordChar(text.charAt(pos));
+				int end = pos + 1;
+				while (end < length && isWordChar(text.charAt(end)) == word) {
+					end++;
+				}
+
+				// A lone space between two words is left for the decoder to put back
+				boolean impliedSpace = !word && end - pos == 1 && text.charAt(pos) == ' ' && pos > 0 && end < length;
+				if (!impliedSpace) {
+					addToken(pos, end);
+				}
+				pos = end;
+			}
+		}
+
+		/**
+		 * Adds the token text[start, end) to the token list, numbering it if it is
+		 * new.
+		 */
+		private void addToken(int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + text.charAt(i);
+			}
+			if ((size + 1) * 2 > table.length) {
+				growTable();
+			}
+			int mask = table.length - 1;
+			int slot = slot(hash);
+			int token;
+			while (true) {
+				int entry = table[slot];
+				if (entry == 0) {
+					token = newToken(start, end - start, hash);
+					table[slot] = token + 1;
+					break;
+				}
+				if (hashes[entry - 1] == hash && matches(entry - 1, start, end)) {
+					token = entry - 1;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			counts[token]++;
+
+			if (tokenCount == tokens.length) {
+				tokens = Arrays.copyOf(tokens, tokens.length * 2);
+			}
+			tokens[tokenCount++] = token;
+		}
+
+		private boolean matches(int token, int start, int end) {
+			return lengths[token] == end - start && text.regionMatches(starts[token], text, start, end - start);
+		}
+
+		private int newToken(int start, int length, int hash) {
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+				hashes = Arrays.copyOf(hashes, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			starts[size] = start;
+			lengths[size] = length;
+			hashes[size] = hash;
+			return size++;
+		}
+
+		/**
+		 * The slot a hash starts looking in: the top bits of the hash times the
+		 * golden ratio (Fibonacci hashing), as many as index the whole table.
+		 */
+		private int slot(int hash) {
+			return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(table.length));
+		}
+
+		/**
+		 * Doubles the hash table, re-adding every token.
+		 */
+		private void growTable() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int t = 0; t < size; t++) {
+				int slot = slot(hashes[t]);
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = t + 1;
+			}
+		}
+
+		String[] strings() {
+			String[] strings = new String[size];
+			for (int t = 0; t < size; t++) {
+				strings[t] = text.substring(starts[t], starts[t] + lengths[t]);
+			}
+			return strings;
+		}
+	}
+}
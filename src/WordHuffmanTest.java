@@ -0,0 +1,95 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class WordHuffmanTest {
+    public static void main(String[] args) throws IOException {
+        // Test cases, words, a double space, punctuation and a word that only
+        // appears inside another
+        String text = "the cat sat on the mat,  then the other cat sat there.\nthe end";
+        String[] words = { "the", "cat", "then", "he", "dog" };
+        int[] expectedCounts = { 4, 2, 1, 0, 0 };
+
+        // Write the text out and read it back
+        WordHuffmanCoding coding = new WordHuffmanCoding(text);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        coding.write(text, out);
+        WordHuffmanCoding read = WordHuffmanCoding.read(new ByteArrayInputStream(out.toByteArray()));
+
+        System.out.println("Input length: " + text.length() + " chars");
+        System.out.println("Output length: " + out.size() + " bytes");
+
+        // Judge the correctness of the results
+        if (text.equals(read.decode())) {
+            System.out.println("Decoded text matches the original text.");
+        } else {
+            System.out.println("Decoded text does not match the original text.");
+        }
+        for (int i = 0; i < words.length; i++) {
+            int count = read.count(words[i]);
+            if (count == expectedCounts[i]) {
+                System.out.println("OK!! Found " + words[i] + " " + count + " times");
+            } else {
+                System.out.println("Wrong!! Found " + words[i] + " " + count + " times, expected " + expectedCounts[i]);
+            }
+        }
+
+        // A vocabulary too big for 65536 hash slots, which should still decode
+        // with decode(InputStream) alone
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            big.append("w").append(Integer.toString(i * 7919 % 200000, 36)).append(i % 13 == 0 ? ". " : " ");
+        }
+        String bigText = big.toString();
+        long start = System.nanoTime();
+        out.reset();
+        new WordHuffmanCoding(bigText).write(bigText, out);
+        String decoded = WordHuffmanCoding.decode(new ByteArrayInputStream(out.toByteArray()));
+        System.out.printf("%s 200000 word vocabulary in %.0f ms%n", bigText.equals(decoded) ? "OK!! Decoded a"
+                : "Wrong!! Did not decode a", (System.nanoTime() - start) / 1e6);
+
+        // Damaged files should be refused with an IOException that says why,
+        // before a huge size in the header is allocated
+        out.reset();
+        coding.write(text, out);
+        byte[] file = out.toByteArray();
+        expectFailure("truncated file", Arrays.copyOf(file, file.length - 3));
+        expectFailure("file truncated in the header", Arrays.copyOf(file, 20));
+        expectFailure("huge vocabulary", header(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        expectFailure("huge token", header(Integer.MAX_VALUE, 1, Integer.MAX_VALUE));
+        expectFailure("zero length token", header(10, 1, 0));
+        expectFailure("token longer than the text", header(10, 1, 11));
+        expectFailure("huge text length", header(Integer.MAX_VALUE, 1, 1, 'a', 1, 0, 0, 0, 0, 1, 0x80));
+        expectFailure("huge codeword section", header(1, 1, 1, 'a', 1, 0, 0, 0, 0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * The magic number and version, then the numbers as VarInts. A VarInt
+     * below 128 is one byte, so the same numbers also stand in for the code
+     * lengths, and four zeros for the checksum.
+     */
+    private static byte[] header(int... numbers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x57484600);
+        data.writeByte(1);
+        for (int number : numbers) {
+            VarInt.write(data, number);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void expectFailure(String what, byte[] file) {
+        try {
+            WordHuffmanCoding.decode(new ByteArrayInputStream(file));
+            System.out.println("Wrong!! A " + what + " was decoded");
+        } catch (IOException e) {
+            System.out.println((e.getMessage() != null ? "OK!! A " : "Wrong!! No message for a ") + what
+                    + " refused: " + e.getMessage());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            System.out.println("Wrong!! A " + what + " failed with " + e);
+        }
+    }
+}
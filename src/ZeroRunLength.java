@@ -0,0 +1,117 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Run-length coding of zeros, as bzip2 does after move-to-front, where most of
+ * the output is zeros. A run of n zeros is written as n in bijective base 2,
+ * with RUN_A for a digit worth 1 and RUN_B for a digit worth 2, least
+ * significant first, so a run of any length takes about log2(n) bytes. Every
+ * other value moves up one to make room, with the top two values escaped since
+ * they would no longer fit in a byte.
+ */
+public class ZeroRunLength implements BlockTransform {
+
+	static final int ID = 3;
+
+	private static final int RUN_A = 0;
+	private static final int RUN_B = 1;
+
+	// Values 254 and 255 are written as ESCAPE followed by 0 or 1
+	private static final int ESCAPE = 255;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return "Zero run-length";
+	}
+
+	@Override
+	public byte[] forward(byte[] block) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2 + 16);
+		int run = 0;
+		for (byte b : block) {
+			int v = b & 0xFF;
+			if (v == 0) {
+				run++;
+				continue;
+			}
+			writeRun(out, run);
+			run = 0;
+			if (v < ESCAPE - 1) {
+				out.write(v + 1);
+			} else {
+				out.write(ESCAPE);
+				out.write(v - (ESCAPE - 1));
+			}
+		}
+		writeRun(out, run);
+		return out.toByteArray();
+	}
+
+	private static void writeRun(ByteArrayOutputStream out, int run) {
+		while (run > 0) {
+			if ((run & 1) == 1) {
+				out.write(RUN_A);
+				run = (run - 1) >> 1;
+			} else {
+				out.write(RUN_B);
+				run = (run - 2) >> 1;
+			}
+		}
+	}
+
+	@Override
+	public long maxForwardLength(long length) {
+		// Every byte takes at most two, and a run never takes more bytes than zeros
+		return 2 * length;
+	}
+
+	@Override
+	public byte[] inverse(byte[] block) throws IOException {
+		return inverse(block, Integer.MAX_VALUE - 8);
+	}
+
+	/**
+	 * Undoes forward, checking each run against maxLength before writing it out,
+	 * so a corrupt block can't make a run of billions of zeros.
+	 */
+	@Override
+	public byte[] inverse(byte[] block, long maxLength) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(maxLength, block.length * 2L + 16));
+		long run = 0;
+		long weight = 1;
+		for (int i = 0; i < block.length; i++) {
+			int v = block[i] & 0xFF;
+			if (v == RUN_A || v == RUN_B) {
+				run += weight * (v + 1);
+				weight <<= 1;
+				if (out.size() + run > maxLength) {
+					throw new IOException("Zero run too long.");
+				}
+				continue;
+			}
+			for (; run > 0; run--) {
+				out.write(0);
+			}
+			weight = 1;
+			if (out.size() >= maxLength) {
+				throw new IOException("Zero run-length block decoded to more bytes than went in.");
+			}
+			if (v != ESCAPE) {
+				out.write(v - 1);
+			} else if (i + 1 < block.length && (block[i + 1] & 0xFE) == 0) {
+				out.write(ESCAPE - 1 + block[++i]);
+			} else {
+				throw new IOException("Invalid zero run-length escape.");
+			}
+		}
+		for (; run > 0; run--) {
+			out.write(0);
+		}
+		return out.toByteArray();
+	}
+}